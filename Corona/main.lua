@@ -65,7 +65,7 @@ local function recalcLayout()
     L.BOTTOM = L.TOP + L.H
     L.isLandscape = (L.W > L.H)
 
-    local BUTTON_ROWS = 6
+    local BUTTON_ROWS = 7
     L.HEADER_ZONE = L.H * 0.12
     local logFrac = L.isLandscape and 0.35 or 0.38
     L.LOG_ZONE_HEIGHT = L.H * logFrac
@@ -726,6 +726,120 @@ local function startTestSuite()
     timer.performWithDelay(200, runNextTest)
 end
 
+-- ============================================================================
+-- Load Test — publish-to-ack and round-trip latency percentiles
+-- ============================================================================
+
+-- Point LOAD_BROKER at a local broker (e.g. mosquitto on the dev machine)
+-- to measure the plugin without internet latency in the numbers.
+local LOAD_BROKER        = MQTT_BROKER
+local LOAD_PORT          = MQTT_PORT
+local LOAD_TOPIC         = MQTT_TOPIC .. "/load"
+local LOAD_MESSAGES      = 500
+local LOAD_RATE          = 100   -- publishes per second
+local LOAD_PAYLOAD_BYTES = 256
+local LOAD_DRAIN_TIMEOUT = 10    -- seconds to wait for the last messages
+
+local loadTest = nil   -- state of the running load test, nil when idle
+
+local function percentile(sorted, p)
+    if #sorted == 0 then return 0 end
+    return sorted[math.max(1, math.ceil(#sorted * p))]
+end
+
+local function reportLatency(label, samples)
+    table.sort(samples)
+    addLog(string.format("%s n=%d p50=%.1f p99=%.1f p999=%.1f ms", label, #samples,
+        percentile(samples, 0.5), percentile(samples, 0.99), percentile(samples, 0.999)))
+end
+
+local function finishLoadTest()
+    local run = loadTest
+    if not run then return end
+    loadTest = nil
+    if run.publishTimer then timer.cancel(run.publishTimer) end
+    if run.drainTimer then timer.cancel(run.drainTimer) end
+
+    local elapsed = (system.getTimer() - run.startedAt) / 1000
+    addLog(string.format("LOAD qos=%d sent=%d recv=%d in %.1fs (%.0f msg/s)", run.qos,
+        run.sent, #run.roundTrip, elapsed, #run.roundTrip / math.max(elapsed, 0.001)))
+    if #run.ackLatency > 0 then
+        reportLatency("LOAD pub->ack", run.ackLatency)
+    end
+    reportLatency("LOAD round-trip", run.roundTrip)
+
+    mqtt.unsubscribe(LOAD_TOPIC)
+    timer.performWithDelay(500, function() mqtt.disconnect() end)
+end
+
+local function publishDue()
+    local run = loadTest
+    if not run then return end
+    local due = math.min(LOAD_MESSAGES,
+        math.floor((system.getTimer() - run.startedAt) * LOAD_RATE / 1000) + 1)
+    while run.sent < due do
+        run.sent = run.sent + 1
+        -- Payload: "<seq>:<send time in ms>:" padded to LOAD_PAYLOAD_BYTES
+        local header = run.sent .. ":" .. string.format("%.3f", system.getTimer()) .. ":"
+        local payload = header .. string.rep("x", math.max(0, LOAD_PAYLOAD_BYTES - #header))
+        mqtt.publish(LOAD_TOPIC, payload, { qos = run.qos })
+    end
+    if run.sent >= LOAD_MESSAGES then
+        timer.cancel(run.publishTimer)
+        run.publishTimer = nil
+        run.drainTimer = timer.performWithDelay(LOAD_DRAIN_TIMEOUT * 1000, finishLoadTest)
+    end
+end
+
+local function startLoadTest(qos)
+    if loadTest or testState.running then
+        addLog("LOAD: already running")
+        return
+    end
+    loadTest = { qos = qos, sent = 0, ackLatency = {}, roundTrip = {} }
+    addLog(string.format("LOAD: %d x %dB at %d/s, qos=%d", LOAD_MESSAGES, LOAD_PAYLOAD_BYTES, LOAD_RATE, qos))
+    mqtt.connect({
+        broker = LOAD_BROKER,
+        port = LOAD_PORT,
+        clientId = "solarmqtt-load-" .. math.random(1000, 9999),
+        cleanSession = true,
+        keepAlive = 60,
+    })
+end
+
+-- Handles events for a running load test. Returns true for per-message
+-- events it consumed, so they don't flood the log.
+local function loadTestEvent(event)
+    local run = loadTest
+    if not run then return false end
+    local name = event.name
+    if name == "connected" then
+        mqtt.subscribe(LOAD_TOPIC, run.qos)
+    elseif name == "subscribed" and event.topic == LOAD_TOPIC then
+        run.startedAt = system.getTimer()
+        run.publishTimer = timer.performWithDelay(10, publishDue, 0)
+    elseif name == "published" then
+        -- latencyMs is reported by the Android plugin only
+        if event.latencyMs then
+            run.ackLatency[#run.ackLatency + 1] = event.latencyMs
+        end
+        return true
+    elseif name == "message" and event.topic == LOAD_TOPIC then
+        local sentAt = tonumber(event.payload:match("^%d+:([%d%.]+):"))
+        if sentAt then
+            run.roundTrip[#run.roundTrip + 1] = system.getTimer() - sentAt
+        end
+        if #run.roundTrip >= LOAD_MESSAGES then
+            finishLoadTest()
+        end
+        return true
+    elseif name == "error" or name == "disconnected" then
+        addLog("LOAD: aborted")
+        finishLoadTest()
+    end
+    return false
+end
+
 -- ============================================================================
 -- MQTT Event Listener
 -- ============================================================================
@@ -733,6 +847,8 @@ end
 local function mqttListener(event)
     local name = event.name or "unknown"
 
+    if loadTestEvent(event) then return end
+
     -- Always log the event
     if name == "connected" then
         addLog("CONNECTED")
@@ -934,12 +1050,16 @@ end, "red")
 
 makeButton("Run All Tests", 2, 6, startTestSuite, "green")
 
+-- Row 7: Load tests (latency percentiles at LOAD_RATE)
+makeButton("Load QoS 0", 1, 7, function() startLoadTest(0) end)
+makeButton("Load QoS 1", 2, 7, function() startLoadTest(1) end)
+
 -- Topic info
 topicInfo = display.newText({
     parent = menuGroup,
     text = "Topic: " .. MQTT_TOPIC,
     x = L.CX,
-    y = L.TOP + L.HEADER_ZONE + L.BUTTON_SPACING * 6.5,
+    y = L.TOP + L.HEADER_ZONE + L.BUTTON_SPACING * 7.5,
     fontSize = math.max(7, L.BUTTON_FONT * 0.85),
     font = native.systemFont,
 })
@@ -1085,7 +1205,7 @@ local function relayoutMenu()
     -- Reposition topic info
     if topicInfo then
         topicInfo.x = L.CX
-        topicInfo.y = L.TOP + L.HEADER_ZONE + L.BUTTON_SPACING * 6.5
+        topicInfo.y = L.TOP + L.HEADER_ZONE + L.BUTTON_SPACING * 7.5
         topicInfo.size = math.max(7, L.BUTTON_FONT * 0.85)
     end
 
@@ -0,0 +1,22 @@
+//
+//  CountingListener.java
+//  SolarMQTT Plugin for Solar2D
+//
+//  Copyright (c) 2026 Platopus Systems. All rights reserved.
+//
+
+package plugin.solarmqtt;
+
+import com.naef.jnlua.JavaFunction;
+import com.naef.jnlua.LuaState;
+
+/** Listener that counts the events it is called with. Lua thread only. */
+final class CountingListener implements JavaFunction {
+	long events;
+
+	@Override
+	public int invoke(LuaState L) {
+		events++;
+		return 0;
+	}
+}
@@ -0,0 +1,143 @@
+//
+//  DispatchAllocationBenchmark.java
+//  SolarMQTT Plugin for Solar2D
+//
+//  Copyright (c) 2026 Platopus Systems. All rights reserved.
+//
+
+package plugin.solarmqtt;
+
+import com.ansca.corona.CoronaLua;
+import com.naef.jnlua.LuaState;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Java-side allocation of posting and dispatching one `published` event,
+ * run with -prof gc and read as gc.alloc.rate.norm:
+ *
+ *   taskPerEvent:  the original dispatch, an anonymous task capturing the
+ *                  event's fields, posted to the runtime for every event;
+ *   eventQueue:    an EventRecord claimed from the ring, filled in place and
+ *                  drained by the queue's one task.
+ *
+ * Frames run every 64 events. The Lua state discards what is pushed, so the
+ * Lua tables an event builds on a device (Lua's heap, not Java's) do not
+ * hide the difference; neither path is charged for the node Corona's own
+ * task dispatcher allocates per send.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DispatchAllocationBenchmark {
+	private static final int EVENTS_PER_FRAME = 64;
+
+	/** Lua state that drops every value, so only the plugin's own allocation is measured. */
+	private static final class DiscardingLuaState extends LuaState {
+		@Override public void newTable() { }
+		@Override public void newTable(int arrayCount, int recordCount) { }
+		@Override public void pushString(String value) { }
+		@Override public void pushInteger(int value) { }
+		@Override public void pushNumber(double value) { }
+		@Override public void pushBoolean(boolean value) { }
+		@Override public void pushByteArray(byte[] value) { }
+		@Override public void setField(int index, String key) { }
+		@Override public void pop(int count) { }
+		@Override public LuaState.Table toTable(int index) { return null; }
+	}
+
+	/** Runs posted tasks in frames on the benchmark thread; ArrayDeque, so sending allocates nothing once warm. */
+	private static final class FrameBridge implements RuntimeBridge {
+		final ArrayDeque<RuntimeTask> tasks = new ArrayDeque<RuntimeTask>();
+		final LuaState L = new DiscardingLuaState();
+
+		@Override
+		public boolean isAvailable() {
+			return true;
+		}
+
+		@Override
+		public boolean send(RuntimeTask task) {
+			tasks.addLast(task);
+			return true;
+		}
+
+		@Override
+		public File storageDir() {
+			return new File(System.getProperty("java.io.tmpdir"));
+		}
+
+		void runFrame() {
+			for (int n = tasks.size(); n > 0; n--) {
+				tasks.pollFirst().run(L);
+			}
+		}
+	}
+
+	private FrameBridge bridge;
+	private MqttClientHandle client;
+	private EventQueue queue;
+	private int mid;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		bridge = new FrameBridge();
+		// No listener: dispatch looks up the ref and finds nothing to call
+		client = new MqttClientHandle("bench", CoronaLua.REFNIL, bridge, new StubEngine.Factory(null));
+		queue = new EventQueue(client);
+	}
+
+	@Benchmark
+	public int taskPerEvent() {
+		final int eventMid = ++mid;
+		final double latencyMs = 1.5;
+		bridge.send(new RuntimeTask() {
+			@Override
+			public void run(LuaState L) {
+				client.newEvent(L, "published");
+				L.pushInteger(eventMid);
+				L.setField(-2, "mid");
+				L.pushNumber(latencyMs);
+				L.setField(-2, "latencyMs");
+				try {
+					CoronaLua.dispatchEvent(L, client.getListener(), 0);
+				} catch (Exception e) {
+					throw new IllegalStateException(e);
+				}
+			}
+		});
+		return frame(eventMid);
+	}
+
+	@Benchmark
+	public int eventQueue() {
+		int eventMid = ++mid;
+		queue.publish(queue.claim(EventRecord.KIND_FIELDS, "published", CoronaLua.REFNIL, false)
+				.integer("mid", eventMid).number("latencyMs", 1.5));
+		return frame(eventMid);
+	}
+
+	private int frame(int eventMid) {
+		if (eventMid % EVENTS_PER_FRAME == 0) {
+			bridge.runFrame();
+		}
+		return eventMid;
+	}
+}
@@ -0,0 +1,68 @@
+//
+//  DispatchQueueBenchmark.java
+//  SolarMQTT Plugin for Solar2D
+//
+//  Copyright (c) 2026 Platopus Systems. All rights reserved.
+//
+
+package plugin.solarmqtt;
+
+import com.ansca.corona.CoronaLua;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The event queue on its own: claiming, filling and publishing `perFrame`
+ * records, then draining them to the listener in one frame. Past 512 events
+ * a frame the ring overflows into allocated records.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DispatchQueueBenchmark {
+	@Param({ "1", "16", "256", "2048" })
+	int perFrame;
+
+	private StubClient stub;
+	private CountingListener listener;
+	private EventQueue queue;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		listener = new CountingListener();
+		stub = new StubClient(listener);
+		queue = new EventQueue(stub.client);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		stub.close();
+	}
+
+	@Benchmark
+	public long frame() {
+		for (int i = 0; i < perFrame; i++) {
+			EventRecord record = queue.claim(EventRecord.KIND_FIELDS, "published", CoronaLua.REFNIL, false);
+			queue.publish(record.integer("mid", i).number("latencyMs", 1.5));
+		}
+		stub.runFrame();
+		return listener.events;
+	}
+}
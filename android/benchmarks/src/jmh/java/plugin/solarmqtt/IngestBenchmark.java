@@ -0,0 +1,79 @@
+//
+//  IngestBenchmark.java
+//  SolarMQTT Plugin for Solar2D
+//
+//  Copyright (c) 2026 Platopus Systems. All rights reserved.
+//
+
+package plugin.solarmqtt;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Inbound path: messages arriving from the engine are routed, queued and
+ * dispatched to the listener in one frame. One operation is one frame
+ * carrying `perFrame` messages, so the score divided by perFrame is the
+ * cost per message at that arrival rate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IngestBenchmark {
+	@Param({ "16", "256", "4096" })
+	int payloadSize;
+
+	@Param({ "1", "64", "512" })
+	int perFrame;
+
+	@Param({ "text", "binary" })
+	String payloadType;
+
+	private StubClient stub;
+	private CountingListener listener;
+	private StubEngine engine;
+	private byte[] payload;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		listener = new CountingListener();
+		stub = new StubClient(listener);
+		stub.connect();
+		stub.subscribe("sensors/#", 0, "payloadType", payloadType);
+		stub.runFrame();
+		engine = stub.engine();
+		payload = new byte[payloadSize];
+		Arrays.fill(payload, (byte)'x');
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		stub.close();
+	}
+
+	@Benchmark
+	public long frame() {
+		for (int i = 0; i < perFrame; i++) {
+			engine.arrive("sensors/temp", payload, 0);
+		}
+		stub.runFrame();
+		return listener.events;
+	}
+}
@@ -0,0 +1,110 @@
+//
+//  PayloadCodecBenchmark.java
+//  SolarMQTT Plugin for Solar2D
+//
+//  Copyright (c) 2026 Platopus Systems. All rights reserved.
+//
+
+package plugin.solarmqtt;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Payload compression on its own: encode at the "fast" and "deflate" levels
+ * and decode of the resulting frame, for JSON telemetry payloads. The codec
+ * has no size threshold here, so the 200 byte case is compressed too (by
+ * default payloads under compressMinBytes are sent as they are).
+ *
+ * encode reports the bytes on the wire as the `wireBytes` counter, next to
+ * `payloadBytes`, so the compression ratio comes out of the same run. JMH
+ * sums the counters over the measured iterations; their ratio is the one
+ * to read.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PayloadCodecBenchmark {
+	@Param({ "fast", "deflate" })
+	String level;
+
+	@Param({ "200", "1024", "4096", "16384", "65536" })
+	int payloadSize;
+
+	/** Sizes of the last frame encode produced; read by JMH at the end of each iteration. */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class Sizes {
+		public long payloadBytes;
+		public long wireBytes;
+	}
+
+	private PayloadCodec codec;
+	private int deflaterLevel;
+	private byte[] payload;
+	private byte[] frame;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		codec = new PayloadCodec(0);
+		deflaterLevel = "fast".equals(level) ? PayloadCodec.LEVEL_FAST : PayloadCodec.LEVEL_DEFAULT;
+		payload = telemetry(payloadSize);
+		frame = codec.encode(payload, deflaterLevel);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		codec.close();
+	}
+
+	@Benchmark
+	public byte[] encode(Sizes sizes) {
+		byte[] out = codec.encode(payload, deflaterLevel);
+		sizes.payloadBytes = payload.length;
+		sizes.wireBytes = out.length;
+		return out;
+	}
+
+	@Benchmark
+	public byte[] decode() {
+		return codec.decode(frame);
+	}
+
+	/** A JSON array of sensor readings, cut to exactly size bytes of ASCII. */
+	static byte[] telemetry(int size) {
+		Random random = new Random(42);
+		StringBuilder sb = new StringBuilder(size + 160);
+		sb.append('[');
+		for (int i = 0; sb.length() < size; i++) {
+			if (i > 0) sb.append(',');
+			sb.append("{\"device\":\"kds-").append(random.nextInt(32))
+					.append("\",\"ts\":").append(1760600000000L + i * 250L + random.nextInt(50))
+					.append(",\"temperature\":").append(18 + random.nextInt(10)).append('.').append(random.nextInt(10))
+					.append(",\"humidity\":").append(40 + random.nextInt(30))
+					.append(",\"status\":\"").append(random.nextInt(20) == 0 ? "warn" : "ok").append("\"}");
+		}
+		byte[] out = new byte[size];
+		for (int i = 0; i < size; i++) {
+			out[i] = (byte)sb.charAt(i);
+		}
+		return out;
+	}
+}
@@ -0,0 +1,128 @@
+//
+//  PayloadPathBenchmark.java
+//  SolarMQTT Plugin for Solar2D
+//
+//  Copyright (c) 2026 Platopus Systems. All rights reserved.
+//
+
+package plugin.solarmqtt;
+
+import com.naef.jnlua.LuaState;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Payload conversion between Paho's byte[] and a Lua string, per message.
+ *
+ *   inboundBefore:  the original path: new String(payload) once for the
+ *                   debug log and again for the event, then pushString;
+ *   inboundText:    payloadType="text": one UTF-8 decode, then pushString;
+ *   inboundBinary:  payloadType="binary": the byte[] is pushed as-is;
+ *   outboundBefore / outboundText / outboundBinary: the same for publish,
+ *                   toString(...).getBytes() against toByteArray().
+ *
+ * The stub LuaState encodes and decodes strings like JNLua, so the String
+ * paths pay the same conversions they do on a device. Run with -prof gc
+ * for the allocation per message.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PayloadPathBenchmark {
+	@Param({ "64", "1024", "16384" })
+	int payloadSize;
+
+	private final LuaState L = new LuaState();
+	private byte[] payload;
+	private InboundMessage text;
+	private InboundMessage binary;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		// ASCII, so the String paths can round-trip it; binary payloads would be corrupted by them
+		payload = new byte[payloadSize];
+		Random random = new Random(42);
+		for (int i = 0; i < payload.length; i++) {
+			payload[i] = (byte)('a' + random.nextInt(26));
+		}
+		text = message(false);
+		binary = message(true);
+	}
+
+	private InboundMessage message(boolean isBinary) {
+		return new InboundMessage("sensors/temp", payload, 0, false, isBinary, false, null, 0, null, null, false, null);
+	}
+
+	@Benchmark
+	@SuppressWarnings("unused")
+	public int inboundBefore() {
+		String logged = new String(payload); // Log.d("... " + new String(payload))
+		L.newTable();
+		L.pushString("sensors/temp");
+		L.setField(-2, "topic");
+		L.pushString(new String(payload));
+		L.setField(-2, "payload");
+		return pop();
+	}
+
+	@Benchmark
+	public int inboundText() {
+		L.newTable();
+		text.pushFields(L);
+		return pop();
+	}
+
+	@Benchmark
+	public int inboundBinary() {
+		L.newTable();
+		binary.pushFields(L);
+		return pop();
+	}
+
+	@Benchmark
+	public byte[] outboundBefore() {
+		L.pushByteArray(payload);
+		byte[] out = L.toString(-1).getBytes();
+		L.setTop(0);
+		return out;
+	}
+
+	@Benchmark
+	public byte[] outboundText() {
+		L.pushByteArray(payload);
+		byte[] out = L.toString(-1).getBytes(InboundMessage.UTF8);
+		L.setTop(0);
+		return out;
+	}
+
+	@Benchmark
+	public byte[] outboundBinary() {
+		L.pushByteArray(payload);
+		byte[] out = L.toByteArray(-1);
+		L.setTop(0);
+		return out;
+	}
+
+	private int pop() {
+		int top = L.getTop();
+		L.setTop(0);
+		return top;
+	}
+}
@@ -0,0 +1,97 @@
+//
+//  PublishEncodingBenchmark.java
+//  SolarMQTT Plugin for Solar2D
+//
+//  Copyright (c) 2026 Platopus Systems. All rights reserved.
+//
+
+package plugin.solarmqtt;
+
+import com.naef.jnlua.LuaState;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Outbound path of client.publish(): reading the Lua arguments and turning
+ * the payload into bytes (String, binary, a JSON-encoded table, or deflated),
+ * then handing it to an engine that acks inline. The `published` events are
+ * drained every operation so the event ring does not overflow.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PublishEncodingBenchmark {
+	@Param({ "text", "binary", "json", "compressed" })
+	String encoding;
+
+	@Param({ "16", "1024", "16384" })
+	int payloadSize;
+
+	private StubClient stub;
+	private Object payload;
+	private Object[] options;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		stub = new StubClient(new CountingListener());
+		stub.connect();
+		stub.runFrame();
+
+		char[] text = new char[payloadSize];
+		Random random = new Random(42);
+		for (int i = 0; i < text.length; i++) {
+			// Letters with some repetition, so deflate has something to find
+			text[i] = (char)('a' + random.nextInt(8));
+		}
+		String s = new String(text);
+		if ("binary".equals(encoding)) {
+			payload = s.getBytes(InboundMessage.UTF8);
+			options = new Object[] { "payloadType", "binary" };
+		} else if ("json".equals(encoding)) {
+			// Roughly payloadSize bytes of JSON: one string field per 64 characters
+			LuaState.Table t = new LuaState.Table();
+			for (int i = 0; i < s.length(); i += 64) {
+				t.put("k" + i, s.substring(i, Math.min(s.length(), i + 64)));
+			}
+			payload = t;
+			options = new Object[0];
+		} else if ("compressed".equals(encoding)) {
+			payload = s;
+			options = new Object[] { "compress", Boolean.TRUE };
+		} else {
+			payload = s;
+			options = new Object[0];
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		stub.close();
+	}
+
+	@Benchmark
+	public String publish() {
+		String status = stub.publish("bench/out", payload, options);
+		stub.runFrame();
+		return status;
+	}
+}
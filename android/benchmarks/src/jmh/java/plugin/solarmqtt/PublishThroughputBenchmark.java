@@ -0,0 +1,101 @@
+//
+//  PublishThroughputBenchmark.java
+//  SolarMQTT Plugin for Solar2D
+//
+//  Copyright (c) 2026 Platopus Systems. All rights reserved.
+//
+
+package plugin.solarmqtt;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sustained QoS 1 publish rate through the in-flight window and send queue.
+ * The stub engine acks each publish after `ackDelayMicros`, standing in for
+ * the broker round trip, and enforces maxInflight like Paho, so once the
+ * queue fills the score is the rate the window lets through: roughly
+ * maxInflight / round trip. A `rejected` publish is retried after a frame,
+ * as a Lua caller waiting for `drain` would.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PublishThroughputBenchmark {
+	@Param({ "10", "64", "256" })
+	int maxInflight;
+
+	@Param({ "0", "1000" })
+	int ackDelayMicros;
+
+	private ScheduledExecutorService broker;
+	private StubClient stub;
+	private byte[] payload;
+	private long published;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		broker = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "stub-broker");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		Executor acks = new Executor() {
+			@Override
+			public void execute(Runnable ack) {
+				if (ackDelayMicros > 0) {
+					broker.schedule(ack, ackDelayMicros, TimeUnit.MICROSECONDS);
+				} else {
+					broker.execute(ack);
+				}
+			}
+		};
+		stub = new StubClient(acks, new CountingListener());
+		stub.connect("maxInflight", maxInflight, "maxQueued", 1000);
+		stub.runFrame();
+		payload = new byte[64];
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		stub.close();
+		broker.shutdownNow();
+	}
+
+	@Benchmark
+	public String publish() {
+		String status;
+		while ("rejected".equals(status = stub.publish("bench/out", payload, "qos", 1, "payloadType", "binary"))) {
+			stub.runFrame();
+			Thread.yield();
+		}
+		// Drain the published events now and then, as frames would
+		if ((++published & 63) == 0) {
+			stub.runFrame();
+		}
+		return status;
+	}
+}
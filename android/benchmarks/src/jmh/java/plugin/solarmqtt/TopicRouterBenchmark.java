@@ -0,0 +1,101 @@
+//
+//  TopicRouterBenchmark.java
+//  SolarMQTT Plugin for Solar2D
+//
+//  Copyright (c) 2026 Platopus Systems. All rights reserved.
+//
+
+package plugin.solarmqtt;
+
+import com.ansca.corona.CoronaLua;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Matching one inbound topic against `filters` subscriptions: the trie walk
+ * of TopicRouter.match() against testing every filter in turn with
+ * TopicRouter.matches(), as a Lua handler table or a plain list would.
+ *
+ * The filters mix exact topics, '+' and '#', about one in four with a
+ * wildcard, over a device/fleet topic space. Topics are drawn from the same
+ * space, so some match several filters and some none.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TopicRouterBenchmark {
+	private static final int TOPICS = 1024; // power of two
+
+	@Param({ "10", "100", "1000", "5000" })
+	int filters;
+
+	private TopicRouter router;
+	private String[] filterList;
+	private String[] topics;
+	private int next;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		Random random = new Random(42);
+		int devices = Math.max(1, filters / 2);
+		router = new TopicRouter();
+		filterList = new String[filters];
+		for (int i = 0; i < filters; i++) {
+			int device = random.nextInt(devices);
+			String filter;
+			switch (i % 8) {
+				case 0:
+					filter = "fleet/" + (device % 32) + "/#";
+					break;
+				case 1:
+					filter = "devices/" + device + "/+/status";
+					break;
+				default:
+					filter = "devices/" + device + "/sensor" + (i % 5) + "/value";
+					break;
+			}
+			filterList[i] = filter;
+			router.put(new Subscription(filter, 0, false, false, false, false, false, 0, false, null, CoronaLua.REFNIL));
+		}
+		topics = new String[TOPICS];
+		for (int i = 0; i < TOPICS; i++) {
+			int device = random.nextInt(devices);
+			topics[i] = i % 4 == 0
+				? "fleet/" + (device % 32) + "/devices/" + device + "/location"
+				: "devices/" + device + "/sensor" + random.nextInt(5) + (i % 3 == 0 ? "/status" : "/value");
+		}
+	}
+
+	@Benchmark
+	public List<Subscription> trie() {
+		return router.match(topics[next++ & (TOPICS - 1)]);
+	}
+
+	@Benchmark
+	public int linear() {
+		String topic = topics[next++ & (TOPICS - 1)];
+		int matched = 0;
+		for (String filter : filterList) {
+			if (TopicRouter.matches(filter, topic)) matched++;
+		}
+		return matched;
+	}
+}
@@ -0,0 +1,21 @@
+//
+//  Context.java
+//  SolarMQTT Plugin for Solar2D
+//
+//  Copyright (c) 2026 Platopus Systems. All rights reserved.
+//
+
+package android.content;
+
+import java.io.File;
+
+/** JVM stand-in for the Context methods the plugin uses; files go under java.io.tmpdir. */
+public class Context {
+	public File getFilesDir() {
+		return new File(System.getProperty("java.io.tmpdir"));
+	}
+
+	public Context getApplicationContext() {
+		return this;
+	}
+}
@@ -0,0 +1,50 @@
+//
+//  Log.java
+//  SolarMQTT Plugin for Solar2D
+//
+//  Copyright (c) 2026 Platopus Systems. All rights reserved.
+//
+
+package android.util;
+
+/**
+ * JVM stand-in for android.util.Log: the plugin's log lines go to stderr.
+ */
+public final class Log {
+	public static final int VERBOSE = 2;
+	public static final int DEBUG = 3;
+	public static final int INFO = 4;
+	public static final int WARN = 5;
+	public static final int ERROR = 6;
+
+	private Log() {
+	}
+
+	public static int d(String tag, String msg) {
+		return print("D", tag, msg, null);
+	}
+
+	public static int i(String tag, String msg) {
+		return print("I", tag, msg, null);
+	}
+
+	public static int w(String tag, String msg) {
+		return print("W", tag, msg, null);
+	}
+
+	public static int e(String tag, String msg) {
+		return print("E", tag, msg, null);
+	}
+
+	public static int e(String tag, String msg, Throwable t) {
+		return print("E", tag, msg, t);
+	}
+
+	private static int print(String level, String tag, String msg, Throwable t) {
+		System.err.println(level + "/" + tag + ": " + msg);
+		if (t != null) {
+			t.printStackTrace();
+		}
+		return 0;
+	}
+}
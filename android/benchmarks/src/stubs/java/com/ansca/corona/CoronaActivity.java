@@ -0,0 +1,17 @@
+//
+//  CoronaActivity.java
+//  SolarMQTT Plugin for Solar2D
+//
+//  Copyright (c) 2026 Platopus Systems. All rights reserved.
+//
+
+package com.ansca.corona;
+
+import android.content.Context;
+
+/** JVM stand-in; there is never an activity, so CoronaBridge reports no runtime. */
+public class CoronaActivity extends Context {
+	public CoronaRuntimeTaskDispatcher getRuntimeTaskDispatcher() {
+		return null;
+	}
+}
@@ -0,0 +1,27 @@
+//
+//  CoronaEnvironment.java
+//  SolarMQTT Plugin for Solar2D
+//
+//  Copyright (c) 2026 Platopus Systems. All rights reserved.
+//
+
+package com.ansca.corona;
+
+import android.content.Context;
+
+/** JVM stand-in: no activity, and runtime listeners are never called. */
+public final class CoronaEnvironment {
+	private CoronaEnvironment() {
+	}
+
+	public static CoronaActivity getCoronaActivity() {
+		return null;
+	}
+
+	public static Context getApplicationContext() {
+		return new Context();
+	}
+
+	public static void addRuntimeListener(CoronaRuntimeListener listener) {
+	}
+}
@@ -0,0 +1,74 @@
+//
+//  CoronaLua.java
+//  SolarMQTT Plugin for Solar2D
+//
+//  Copyright (c) 2026 Platopus Systems. All rights reserved.
+//
+
+package com.ansca.corona;
+
+import com.naef.jnlua.JavaFunction;
+import com.naef.jnlua.LuaState;
+
+import java.util.HashMap;
+
+/**
+ * JVM stand-in for the CoronaLua helpers the plugin uses. References live in
+ * a Java map, and dispatchEvent() calls a JavaFunction listener with the
+ * event table as its only argument, in a fresh LuaState like a Lua call frame.
+ */
+public final class CoronaLua {
+	public static final int REFNIL = -1;
+
+	private static final HashMap<Integer, Object> registry = new HashMap<Integer, Object>();
+	private static int nextRef = 1;
+
+	private CoronaLua() {
+	}
+
+	public static synchronized int newRef(LuaState L, int index) {
+		Object value = L.toObject(index);
+		if (value == null) return REFNIL;
+		int ref = nextRef++;
+		registry.put(ref, value);
+		return ref;
+	}
+
+	public static synchronized void deleteRef(LuaState L, int ref) {
+		registry.remove(ref);
+	}
+
+	/** Stub only: references not yet deleted, to check for leaks. */
+	public static synchronized int liveRefs() {
+		return registry.size();
+	}
+
+	public static boolean isListener(LuaState L, int index, String eventName) {
+		if (L.isFunction(index)) return true;
+		if (!L.isTable(index)) return false;
+		L.getField(index, eventName);
+		boolean found = L.isFunction(-1);
+		L.pop(1);
+		return found;
+	}
+
+	public static void newEvent(LuaState L, String eventName) {
+		L.newTable();
+		L.pushString(eventName);
+		L.setField(-2, "name");
+	}
+
+	/** Pops the event table and calls the listener with it. */
+	public static void dispatchEvent(LuaState L, int ref, int resultCount) throws Exception {
+		Object event = L.toTable(-1);
+		L.pop(1);
+		Object listener;
+		synchronized (CoronaLua.class) {
+			listener = registry.get(ref);
+		}
+		if (!(listener instanceof JavaFunction)) return;
+		LuaState frame = new LuaState();
+		frame.pushObject(event);
+		((JavaFunction)listener).invoke(frame);
+	}
+}
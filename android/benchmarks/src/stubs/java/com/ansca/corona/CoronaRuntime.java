@@ -0,0 +1,19 @@
+//
+//  CoronaRuntime.java
+//  SolarMQTT Plugin for Solar2D
+//
+//  Copyright (c) 2026 Platopus Systems. All rights reserved.
+//
+
+package com.ansca.corona;
+
+import com.naef.jnlua.LuaState;
+
+/** JVM stand-in for a Corona runtime and its Lua state. */
+public class CoronaRuntime {
+	private final LuaState L = new LuaState();
+
+	public LuaState getLuaState() {
+		return L;
+	}
+}
@@ -0,0 +1,21 @@
+//
+//  CoronaRuntimeListener.java
+//  SolarMQTT Plugin for Solar2D
+//
+//  Copyright (c) 2026 Platopus Systems. All rights reserved.
+//
+
+package com.ansca.corona;
+
+/** Corona runtime lifecycle callbacks. */
+public interface CoronaRuntimeListener {
+	void onLoaded(CoronaRuntime runtime);
+
+	void onStarted(CoronaRuntime runtime);
+
+	void onSuspended(CoronaRuntime runtime);
+
+	void onResumed(CoronaRuntime runtime);
+
+	void onExiting(CoronaRuntime runtime);
+}
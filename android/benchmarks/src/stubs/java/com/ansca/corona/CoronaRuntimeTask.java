@@ -0,0 +1,13 @@
+//
+//  CoronaRuntimeTask.java
+//  SolarMQTT Plugin for Solar2D
+//
+//  Copyright (c) 2026 Platopus Systems. All rights reserved.
+//
+
+package com.ansca.corona;
+
+/** Work for the Corona runtime thread. */
+public interface CoronaRuntimeTask {
+	void executeUsing(CoronaRuntime runtime);
+}
@@ -0,0 +1,17 @@
+//
+//  CoronaRuntimeTaskDispatcher.java
+//  SolarMQTT Plugin for Solar2D
+//
+//  Copyright (c) 2026 Platopus Systems. All rights reserved.
+//
+
+package com.ansca.corona;
+
+/** JVM stand-in; tasks sent here are run at once on the caller's thread. */
+public class CoronaRuntimeTaskDispatcher {
+	private final CoronaRuntime runtime = new CoronaRuntime();
+
+	public void send(CoronaRuntimeTask task) {
+		task.executeUsing(runtime);
+	}
+}
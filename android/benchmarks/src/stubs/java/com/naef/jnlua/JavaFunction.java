@@ -0,0 +1,15 @@
+//
+//  JavaFunction.java
+//  SolarMQTT Plugin for Solar2D
+//
+//  Copyright (c) 2026 Platopus Systems. All rights reserved.
+//
+
+package com.naef.jnlua;
+
+/**
+ * JVM stand-in for JNLua's JavaFunction.
+ */
+public interface JavaFunction {
+	int invoke(LuaState L);
+}
@@ -0,0 +1,338 @@
+//
+//  LuaState.java
+//  SolarMQTT Plugin for Solar2D
+//
+//  Copyright (c) 2026 Platopus Systems. All rights reserved.
+//
+
+package com.naef.jnlua;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * JVM stand-in for the part of JNLua's LuaState the plugin uses: a value
+ * stack over plain Java objects, so connect options can be read, payloads
+ * pushed and events built without a Lua VM. Values are null (nil), Boolean,
+ * Double, byte[] (a Lua string), Table and JavaFunction. Like JNLua,
+ * pushString() encodes to UTF-8 and toString() decodes, so the string and
+ * byte paths cost what they would on a device; tables built in Java may
+ * also hold a String where Lua would have a string. Not thread-safe, like a
+ * real Lua state.
+ */
+public class LuaState {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/** A Lua table; number keys are stored as Double, as Lua does. */
+	public static final class Table extends LinkedHashMap<Object, Object> {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public Object put(Object key, Object value) {
+			key = normalize(key);
+			if (value == null) {
+				return remove(key);
+			}
+			return super.put(key, value);
+		}
+
+		@Override
+		public Object get(Object key) {
+			return super.get(normalize(key));
+		}
+
+		/** The string value at key, decoded from UTF-8, or null. */
+		public String string(Object key) {
+			Object v = get(key);
+			if (v instanceof byte[]) return new String((byte[])v, UTF8);
+			return v instanceof String ? (String)v : null;
+		}
+
+		private static Object normalize(Object key) {
+			if (key instanceof Number && !(key instanceof Double)) {
+				return ((Number)key).doubleValue();
+			}
+			if (key instanceof byte[]) {
+				return new String((byte[])key, UTF8);
+			}
+			return key;
+		}
+	}
+
+	private final ArrayList<Object> stack = new ArrayList<Object>();
+
+	// The traversal in progress, so next() does not rescan the table each step
+	private Table iterating;
+	private Iterator<Map.Entry<Object, Object>> iterator;
+	private Object iteratedKey;
+
+	// ========================================================================
+	// Stack
+	// ========================================================================
+
+	public int getTop() {
+		return stack.size();
+	}
+
+	public void setTop(int index) {
+		while (stack.size() > index) {
+			stack.remove(stack.size() - 1);
+		}
+		while (stack.size() < index) {
+			stack.add(null);
+		}
+	}
+
+	public int absIndex(int index) {
+		return index > 0 ? index : stack.size() + index + 1;
+	}
+
+	public void pop(int count) {
+		setTop(stack.size() - count);
+	}
+
+	public void pushValue(int index) {
+		stack.add(value(index));
+	}
+
+	public void pushNil() {
+		stack.add(null);
+	}
+
+	public void pushBoolean(boolean value) {
+		stack.add(value);
+	}
+
+	public void pushNumber(double value) {
+		stack.add(value);
+	}
+
+	public void pushInteger(int value) {
+		stack.add((double)value);
+	}
+
+	public void pushString(String value) {
+		stack.add(value != null ? value.getBytes(UTF8) : null);
+	}
+
+	public void pushByteArray(byte[] value) {
+		stack.add(value);
+	}
+
+	public void pushJavaFunction(JavaFunction function) {
+		stack.add(function);
+	}
+
+	/** Stub only: pushes any value the stub understands, such as a Table built in Java. */
+	public void pushObject(Object value) {
+		stack.add(value instanceof Number ? (Object)((Number)value).doubleValue() : value);
+	}
+
+	// ========================================================================
+	// Type checks and conversions
+	// ========================================================================
+
+	public LuaType type(int index) {
+		int abs = absIndex(index);
+		if (abs < 1 || abs > stack.size()) return null;
+		Object v = stack.get(abs - 1);
+		if (v == null) return LuaType.NIL;
+		if (v instanceof Boolean) return LuaType.BOOLEAN;
+		if (v instanceof Double) return LuaType.NUMBER;
+		if (v instanceof String || v instanceof byte[]) return LuaType.STRING;
+		if (v instanceof Table) return LuaType.TABLE;
+		if (v instanceof JavaFunction) return LuaType.FUNCTION;
+		return LuaType.USERDATA;
+	}
+
+	public boolean isNil(int index) {
+		return value(index) == null;
+	}
+
+	public boolean isBoolean(int index) {
+		return value(index) instanceof Boolean;
+	}
+
+	public boolean isNumber(int index) {
+		return value(index) instanceof Double;
+	}
+
+	public boolean isString(int index) {
+		Object v = value(index);
+		return v instanceof String || v instanceof byte[] || v instanceof Double;
+	}
+
+	public boolean isTable(int index) {
+		return value(index) instanceof Table;
+	}
+
+	public boolean isFunction(int index) {
+		return value(index) instanceof JavaFunction;
+	}
+
+	public boolean toBoolean(int index) {
+		Object v = value(index);
+		return v != null && !Boolean.FALSE.equals(v);
+	}
+
+	public double toNumber(int index) {
+		Object v = value(index);
+		if (v instanceof Double) return (Double)v;
+		if (v instanceof String) {
+			try {
+				return Double.parseDouble((String)v);
+			} catch (NumberFormatException e) {
+				return 0;
+			}
+		}
+		return 0;
+	}
+
+	public int toInteger(int index) {
+		return (int)toNumber(index);
+	}
+
+	public String toString(int index) {
+		Object v = value(index);
+		if (v instanceof String) return (String)v;
+		if (v instanceof byte[]) return new String((byte[])v, UTF8);
+		if (v instanceof Double) {
+			double d = (Double)v;
+			return d == Math.rint(d) && Math.abs(d) < 1e15 ? Long.toString((long)d) : Double.toString(d);
+		}
+		return null;
+	}
+
+	public byte[] toByteArray(int index) {
+		Object v = value(index);
+		if (v instanceof byte[]) return (byte[])v;
+		String s = toString(index);
+		return s != null ? s.getBytes(UTF8) : null;
+	}
+
+	public String checkString(int index) {
+		String s = isString(index) ? toString(index) : null;
+		if (s == null) {
+			throw new IllegalArgumentException("bad argument #" + index + " (string expected)");
+		}
+		return s;
+	}
+
+	/** Stub only: the raw value at index (see the class comment for the types). */
+	public Object toObject(int index) {
+		return value(index);
+	}
+
+	/** Stub only: the table at index, or null. */
+	public Table toTable(int index) {
+		Object v = value(index);
+		return v instanceof Table ? (Table)v : null;
+	}
+
+	// ========================================================================
+	// Tables
+	// ========================================================================
+
+	public void newTable() {
+		stack.add(new Table());
+	}
+
+	public void newTable(int arrayCount, int recordCount) {
+		stack.add(new Table());
+	}
+
+	public void getField(int index, String key) {
+		Object t = value(index);
+		stack.add(t instanceof Table ? ((Table)t).get(key) : null);
+	}
+
+	public void setField(int index, String key) {
+		Table t = table(index);
+		Object v = stack.remove(stack.size() - 1);
+		t.put(key, v);
+	}
+
+	public void rawGet(int index, int key) {
+		stack.add(table(index).get(key));
+	}
+
+	public void rawSet(int index, int key) {
+		Table t = table(index);
+		Object v = stack.remove(stack.size() - 1);
+		t.put(key, v);
+	}
+
+	/** Pushes a new module table holding the functions by name; the stub keeps no globals. */
+	public void register(String moduleName, NamedJavaFunction[] functions) {
+		Table module = new Table();
+		for (NamedJavaFunction function : functions) {
+			module.put(function.getName(), function);
+		}
+		stack.add(module);
+	}
+
+	public int length(int index) {
+		Object v = value(index);
+		if (v instanceof Table) {
+			Table t = (Table)v;
+			int n = 0;
+			while (t.get(n + 1) != null) n++;
+			return n;
+		}
+		byte[] bytes = toByteArray(index);
+		return bytes != null ? bytes.length : 0;
+	}
+
+	/** Pops a key and pushes the next key and value of the table at index; false at the end. */
+	public boolean next(int index) {
+		Table t = table(index);
+		Object key = stack.remove(stack.size() - 1);
+		Iterator<Map.Entry<Object, Object>> it;
+		if (key != null && t == iterating && key.equals(iteratedKey)) {
+			// The usual traversal: carry on from the last key returned
+			it = iterator;
+		} else {
+			it = t.entrySet().iterator();
+			if (key != null) {
+				Object normalized = key instanceof Number ? (Object)((Number)key).doubleValue() : key;
+				while (it.hasNext()) {
+					if (it.next().getKey().equals(normalized)) break;
+				}
+			}
+		}
+		if (!it.hasNext()) {
+			iterating = null;
+			iterator = null;
+			iteratedKey = null;
+			return false;
+		}
+		Map.Entry<Object, Object> entry = it.next();
+		iterating = t;
+		iterator = it;
+		iteratedKey = entry.getKey();
+		stack.add(entry.getKey());
+		stack.add(entry.getValue());
+		return true;
+	}
+
+	// ========================================================================
+	// Internal helpers
+	// ========================================================================
+
+	private Object value(int index) {
+		int abs = absIndex(index);
+		if (abs < 1 || abs > stack.size()) return null;
+		return stack.get(abs - 1);
+	}
+
+	private Table table(int index) {
+		Object t = value(index);
+		if (!(t instanceof Table)) {
+			throw new IllegalArgumentException("table expected at index " + index);
+		}
+		return (Table)t;
+	}
+}
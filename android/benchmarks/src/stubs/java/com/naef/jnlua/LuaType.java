@@ -0,0 +1,15 @@
+//
+//  LuaType.java
+//  SolarMQTT Plugin for Solar2D
+//
+//  Copyright (c) 2026 Platopus Systems. All rights reserved.
+//
+
+package com.naef.jnlua;
+
+/**
+ * JVM stand-in for JNLua's LuaType.
+ */
+public enum LuaType {
+	NIL, BOOLEAN, LIGHTUSERDATA, NUMBER, STRING, TABLE, FUNCTION, USERDATA, THREAD
+}
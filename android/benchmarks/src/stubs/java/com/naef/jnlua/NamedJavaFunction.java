@@ -0,0 +1,13 @@
+//
+//  NamedJavaFunction.java
+//  SolarMQTT Plugin for Solar2D
+//
+//  Copyright (c) 2026 Platopus Systems. All rights reserved.
+//
+
+package com.naef.jnlua;
+
+/** A JavaFunction registered under a name in a module table. */
+public interface NamedJavaFunction extends JavaFunction {
+	String getName();
+}
@@ -0,0 +1,91 @@
+//
+//  StubBridge.java
+//  SolarMQTT Plugin for Solar2D
+//
+//  Copyright (c) 2026 Platopus Systems. All rights reserved.
+//
+
+package plugin.solarmqtt;
+
+import com.naef.jnlua.LuaState;
+
+import java.io.File;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * RuntimeBridge for a plain JVM. Tasks queue up like on Corona's dispatcher
+ * and run when the owner calls runFrame(), so a benchmark or test plays the
+ * part of the Lua thread and decides when a frame happens.
+ */
+final class StubBridge implements RuntimeBridge {
+	private final ConcurrentLinkedQueue<RuntimeTask> tasks = new ConcurrentLinkedQueue<RuntimeTask>();
+	private final LuaState L = new LuaState();
+	private final File storageDir;
+	private volatile boolean available = true;
+
+	StubBridge(File storageDir) {
+		this.storageDir = storageDir;
+	}
+
+	/** A bridge with a fresh temporary storage directory. */
+	static StubBridge create() {
+		try {
+			File dir = File.createTempFile("solarmqtt", "");
+			if (!dir.delete() || !dir.mkdir()) {
+				throw new IllegalStateException("Could not create " + dir);
+			}
+			dir.deleteOnExit();
+			return new StubBridge(dir);
+		} catch (java.io.IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/** Whether send() accepts tasks; false stands for a runtime that has gone away. */
+	void setAvailable(boolean available) {
+		this.available = available;
+	}
+
+	@Override
+	public boolean isAvailable() {
+		return available;
+	}
+
+	@Override
+	public boolean send(RuntimeTask task) {
+		if (!available) return false;
+		tasks.add(task);
+		return true;
+	}
+
+	@Override
+	public File storageDir() {
+		return storageDir;
+	}
+
+	/**
+	 * Runs the tasks queued before the call, as one frame of the Lua thread.
+	 * Tasks they queue wait for the next frame. Returns the number run.
+	 */
+	int runFrame() {
+		int count = tasks.size();
+		int ran = 0;
+		RuntimeTask task;
+		while (ran < count && (task = tasks.poll()) != null) {
+			task.run(L);
+			L.setTop(0);
+			ran++;
+		}
+		return ran;
+	}
+
+	/** Tasks waiting for a frame. */
+	int pending() {
+		return tasks.size();
+	}
+
+	/** The LuaState tasks run with, for calling the client API between frames. */
+	LuaState luaState() {
+		return L;
+	}
+}
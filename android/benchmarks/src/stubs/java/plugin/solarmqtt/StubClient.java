@@ -0,0 +1,119 @@
+//
+//  StubClient.java
+//  SolarMQTT Plugin for Solar2D
+//
+//  Copyright (c) 2026 Platopus Systems. All rights reserved.
+//
+
+package plugin.solarmqtt;
+
+import com.ansca.corona.CoronaLua;
+import com.naef.jnlua.JavaFunction;
+import com.naef.jnlua.LuaState;
+
+import java.util.concurrent.Executor;
+
+/**
+ * An MqttClientHandle on a StubBridge, driven through the same Lua entry
+ * points as in an app: options are LuaState tables built from key/value
+ * pairs, and events reach a JavaFunction listener when runFrame() is called.
+ * The caller's thread is the Lua thread.
+ */
+final class StubClient {
+	final StubBridge bridge;
+	final MqttClientHandle client;
+	private final MqttEngine.Factory engines;
+
+	/** A client on stub engines that ack publishes inline. */
+	StubClient(JavaFunction listener) {
+		this(new StubEngine.Factory(null), listener);
+	}
+
+	/** A client on stub engines that ack publishes on `acks`, with the in-flight window enforced. */
+	StubClient(Executor acks, JavaFunction listener) {
+		this(new StubEngine.Factory(acks), listener);
+	}
+
+	StubClient(MqttEngine.Factory engines, JavaFunction listener) {
+		this.bridge = StubBridge.create();
+		this.engines = engines;
+		LuaState L = bridge.luaState();
+		L.pushJavaFunction(listener);
+		int listenerRef = CoronaLua.newRef(L, -1);
+		L.setTop(0);
+		this.client = new MqttClientHandle("stub", listenerRef, bridge, engines);
+	}
+
+	/** A Lua table of the given key/value pairs. */
+	static LuaState.Table table(Object... pairs) {
+		LuaState.Table t = new LuaState.Table();
+		for (int i = 0; i + 1 < pairs.length; i += 2) {
+			t.put(pairs[i], pairs[i + 1] instanceof Number ? (Object)((Number)pairs[i + 1]).doubleValue() : pairs[i + 1]);
+		}
+		return t;
+	}
+
+	/** client.connect(options); broker defaults to "stub". */
+	void connect(Object... options) {
+		LuaState.Table t = table(options);
+		if (t.get("broker") == null) t.put("broker", "stub");
+		call(t);
+		client.connect(bridge.luaState(), 1);
+		done();
+	}
+
+	/** client.subscribe(filter, qos, options) */
+	void subscribe(String filter, int qos, Object... options) {
+		call(filter, qos, table(options));
+		client.subscribe(bridge.luaState(), 1);
+		done();
+	}
+
+	/** client.publish(topic, payload, options); returns the status. payload is a String, byte[] or Table. */
+	String publish(String topic, Object payload, Object... options) {
+		call(topic, payload, table(options));
+		LuaState L = bridge.luaState();
+		client.publish(L, 1);
+		String status = L.toString(4);
+		done();
+		return status;
+	}
+
+	/** client.publish(topic, payload, options, callback); returns the status. */
+	String publish(String topic, Object payload, JavaFunction callback, Object... options) {
+		call(topic, payload, table(options), callback);
+		LuaState L = bridge.luaState();
+		client.publish(L, 1);
+		String status = L.toString(5);
+		done();
+		return status;
+	}
+
+	/** The stub engine of the current connection. */
+	StubEngine engine() {
+		return ((StubEngine.Factory)engines).last;
+	}
+
+	/** Runs one frame of queued runtime tasks; returns the number run. */
+	int runFrame() {
+		return bridge.runFrame();
+	}
+
+	void close() {
+		client.release(bridge.luaState());
+		bridge.luaState().setTop(0);
+		bridge.runFrame();
+	}
+
+	private void call(Object... args) {
+		LuaState L = bridge.luaState();
+		L.setTop(0);
+		for (Object arg : args) {
+			L.pushObject(arg);
+		}
+	}
+
+	private void done() {
+		bridge.luaState().setTop(0);
+	}
+}
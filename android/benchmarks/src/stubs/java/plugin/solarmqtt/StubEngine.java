@@ -0,0 +1,178 @@
+//
+//  StubEngine.java
+//  SolarMQTT Plugin for Solar2D
+//
+//  Copyright (c) 2026 Platopus Systems. All rights reserved.
+//
+
+package plugin.solarmqtt;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * MqttEngine without a network, for benchmarks. Connecting succeeds at once,
+ * subscriptions are granted the requested QoS, and publishes are acked
+ * either inline or on an executor standing in for the broker round trip.
+ * With an executor the in-flight window of EngineOptions.maxInflight is
+ * enforced like Paho does, so the client's send queue and drain path run.
+ * Inbound messages are injected with arrive(), as if on Paho's thread, and
+ * drop() loses the connection so the client's reconnect path runs.
+ */
+final class StubEngine implements MqttEngine {
+	/** Factory remembering the last engine it made, so a benchmark can reach it after connect(). */
+	static final class Factory implements MqttEngine.Factory {
+		private final Executor acks;
+		volatile StubEngine last;
+
+		/** acks runs publish acknowledgements; null acks inline, without a window. */
+		Factory(Executor acks) {
+			this.acks = acks;
+		}
+
+		@Override
+		public MqttEngine newEngine(EngineOptions options, File storageDir, Callback callback) {
+			StubEngine engine = new StubEngine(options, callback, acks);
+			last = engine;
+			return engine;
+		}
+	}
+
+	private final EngineOptions options;
+	private final Callback callback;
+	private final Executor acks;
+	private final AtomicInteger inflight = new AtomicInteger();
+	private final AtomicInteger nextId = new AtomicInteger();
+	private volatile boolean connected;
+
+	/** Every filter subscribed to, in order. */
+	final List<String> subscribed = new CopyOnWriteArrayList<String>();
+
+	StubEngine(EngineOptions options, Callback callback, Executor acks) {
+		this.options = options;
+		this.callback = callback;
+		this.acks = acks;
+	}
+
+	/** Delivers an inbound message to the client, as Paho's callback thread would. */
+	void arrive(String topic, byte[] payload, int qos) {
+		callback.messageArrived(topic, payload, qos, false, qos > 0 ? packetId() : 0, false);
+	}
+
+	/** Delivers a message with the given packet id and DUP flag, as a broker redelivery would. */
+	void arrive(String topic, byte[] payload, int qos, int packetId, boolean duplicate) {
+		callback.messageArrived(topic, payload, qos, false, packetId, duplicate);
+	}
+
+	/** Drops the connection, as a network failure would. */
+	void drop() {
+		connected = false;
+		callback.connectionLost("Stub connection dropped");
+	}
+
+	@Override
+	public int protocolVersion() {
+		return options.protocolVersion;
+	}
+
+	@Override
+	public String serverUri() {
+		return options.serverUri();
+	}
+
+	@Override
+	public boolean isConnected() {
+		return connected;
+	}
+
+	@Override
+	public void connect(Listener listener) {
+		connected = true;
+		listener.onSuccess(new StubToken(0, null, null));
+		callback.connectComplete(false, serverUri());
+	}
+
+	@Override
+	public void disconnect(Listener listener) {
+		connected = false;
+		if (listener != null) listener.onSuccess(new StubToken(0, null, null));
+	}
+
+	@Override
+	public void subscribe(String[] filters, int[] qos, Listener listener) {
+		subscribed.addAll(Arrays.asList(filters));
+		listener.onSuccess(new StubToken(packetId(), qos.clone(), null));
+	}
+
+	@Override
+	public void unsubscribe(String[] filters, Listener listener) {
+		if (listener != null) listener.onSuccess(new StubToken(packetId(), null, null));
+	}
+
+	@Override
+	public void publish(String topic, byte[] payload, int qos, boolean retain, long expirySeconds, Object context,
+			final Listener listener) throws EngineException {
+		final StubToken token = new StubToken(qos > 0 ? packetId() : 0, null, context);
+		if (acks == null) {
+			listener.onSuccess(token);
+			return;
+		}
+		if (inflight.incrementAndGet() > options.maxInflight) {
+			inflight.decrementAndGet();
+			throw new EngineException(new IllegalStateException("Too many publishes in progress"), true);
+		}
+		acks.execute(new Runnable() {
+			@Override
+			public void run() {
+				inflight.decrementAndGet();
+				if (listener != null) listener.onSuccess(token);
+				callback.deliveryComplete();
+			}
+		});
+	}
+
+	@Override
+	public void close() {
+		connected = false;
+	}
+
+	private int packetId() {
+		return (nextId.getAndIncrement() & 0xffff) + 1;
+	}
+
+	private static final class StubToken implements Token {
+		private final int messageId;
+		private final int[] grantedQos;
+		private final Object context;
+
+		StubToken(int messageId, int[] grantedQos, Object context) {
+			this.messageId = messageId;
+			this.grantedQos = grantedQos;
+			this.context = context;
+		}
+
+		@Override
+		public int getMessageId() {
+			return messageId;
+		}
+
+		@Override
+		public int[] getGrantedQos() {
+			return grantedQos;
+		}
+
+		@Override
+		public boolean getSessionPresent() {
+			return false;
+		}
+
+		@Override
+		public Object getUserContext() {
+			return context;
+		}
+	}
+}
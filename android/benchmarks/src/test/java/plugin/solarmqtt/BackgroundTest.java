@@ -0,0 +1,90 @@
+//
+//  BackgroundTest.java
+//  SolarMQTT Plugin for Solar2D
+//
+//  Copyright (c) 2026 Platopus Systems. All rights reserved.
+//
+
+package plugin.solarmqtt;
+
+import com.naef.jnlua.JavaFunction;
+import com.naef.jnlua.LuaState;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BackgroundTest {
+	private static final class Messages implements JavaFunction {
+		final ArrayList<String> topics = new ArrayList<String>();
+
+		@Override
+		public int invoke(LuaState L) {
+			LuaState.Table event = L.toTable(1);
+			if ("message".equals(event.string("name"))) {
+				topics.add(event.string("topic"));
+			}
+			return 0;
+		}
+	}
+
+	@Test
+	public void releasesHeldMessagesOverSeveralFramesInOrder() {
+		Messages listener = new Messages();
+		StubClient stub = new StubClient(listener);
+		stub.connect("background", StubClient.table("mode", "buffer", "maxMessages", 500));
+		stub.subscribe("t/#", 0);
+		stub.runFrame();
+
+		stub.client.suspend();
+		for (int i = 0; i < 120; i++) {
+			stub.engine().arrive("t/" + i, new byte[] { 1 }, 0);
+		}
+		stub.client.resume();
+
+		stub.runFrame();
+		assertEquals(50, listener.topics.size());
+		stub.engine().arrive("t/late", new byte[] { 2 }, 0);
+		stub.runFrame();
+		assertEquals(100, listener.topics.size());
+		stub.runFrame();
+		assertEquals(121, listener.topics.size());
+		assertEquals("t/119", listener.topics.get(119));
+		assertEquals("t/late", listener.topics.get(120));
+
+		// Drained: later messages go straight to Lua
+		stub.engine().arrive("t/next", new byte[] { 3 }, 0);
+		stub.runFrame();
+		assertEquals("t/next", listener.topics.get(121));
+		stub.close();
+	}
+
+	@Test
+	public void reconnectWhileSuspendedLeavesSuspendedFiltersForResume() throws InterruptedException {
+		StubClient stub = new StubClient(new Messages());
+		stub.connect(
+				"autoReconnect", StubClient.table("minDelayMs", 1, "maxDelayMs", 1, "jitter", 0),
+				"background", StubClient.table("unsubscribe", StubClient.table(1, "fast/#")));
+		stub.subscribe("fast/#", 0);
+		stub.subscribe("slow/#", 0);
+		stub.runFrame();
+
+		stub.client.suspend();
+		StubEngine engine = stub.engine();
+		engine.subscribed.clear();
+		engine.drop();
+		for (int i = 0; i < 200 && !engine.isConnected(); i++) {
+			Thread.sleep(10);
+		}
+		assertTrue(engine.isConnected());
+		assertEquals(1, engine.subscribed.size());
+		assertEquals("slow/#", engine.subscribed.get(0));
+
+		stub.client.resume();
+		assertTrue(engine.subscribed.contains("fast/#"));
+		stub.close();
+	}
+}
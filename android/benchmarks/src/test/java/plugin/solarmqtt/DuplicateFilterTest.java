@@ -0,0 +1,64 @@
+//
+//  DuplicateFilterTest.java
+//  SolarMQTT Plugin for Solar2D
+//
+//  Copyright (c) 2026 Platopus Systems. All rights reserved.
+//
+
+package plugin.solarmqtt;
+
+import com.naef.jnlua.JavaFunction;
+import com.naef.jnlua.LuaState;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+
+public class DuplicateFilterTest {
+	private static final class Messages implements JavaFunction {
+		final ArrayList<String> payloads = new ArrayList<String>();
+
+		@Override
+		public int invoke(LuaState L) {
+			LuaState.Table event = L.toTable(1);
+			if ("message".equals(event.string("name"))) {
+				payloads.add(event.string("payload"));
+			}
+			return 0;
+		}
+	}
+
+	@Test
+	public void dropsARedeliveryOfTheSameMessage() {
+		Messages listener = new Messages();
+		StubClient stub = new StubClient(listener);
+		stub.connect();
+		stub.subscribe("t/#", 1, "dedup", true);
+		stub.runFrame();
+
+		stub.engine().arrive("t/a", "21.5".getBytes(InboundMessage.UTF8), 1, 7, false);
+		stub.engine().arrive("t/a", "21.5".getBytes(InboundMessage.UTF8), 1, 7, true);
+		stub.runFrame();
+		assertEquals(1, listener.payloads.size());
+		stub.close();
+	}
+
+	@Test
+	public void deliversADifferentMessageResentWithAReusedPacketId() {
+		Messages listener = new Messages();
+		StubClient stub = new StubClient(listener);
+		stub.connect();
+		stub.subscribe("t/#", 1, "dedup", true);
+		stub.runFrame();
+
+		// Same topic, packet id and length; the broker reused the id after the first ack
+		stub.engine().arrive("t/a", "21.5".getBytes(InboundMessage.UTF8), 1, 7, false);
+		stub.engine().arrive("t/a", "22.0".getBytes(InboundMessage.UTF8), 1, 7, true);
+		stub.runFrame();
+		assertEquals(2, listener.payloads.size());
+		assertEquals("22.0", listener.payloads.get(1));
+		stub.close();
+	}
+}
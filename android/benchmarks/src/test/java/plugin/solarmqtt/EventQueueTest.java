@@ -0,0 +1,69 @@
+//
+//  EventQueueTest.java
+//  SolarMQTT Plugin for Solar2D
+//
+//  Copyright (c) 2026 Platopus Systems. All rights reserved.
+//
+
+package plugin.solarmqtt;
+
+import com.ansca.corona.CoronaLua;
+import com.naef.jnlua.JavaFunction;
+import com.naef.jnlua.LuaState;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class EventQueueTest {
+	private static final class Counter implements JavaFunction {
+		int events;
+
+		@Override
+		public int invoke(LuaState L) {
+			events++;
+			return 0;
+		}
+	}
+
+	private static void post(EventQueue queue, int mid) {
+		queue.publish(queue.claim(EventRecord.KIND_FIELDS, "published", CoronaLua.REFNIL, false).integer("mid", mid));
+	}
+
+	@Test
+	public void recoversWhenTheRuntimeRefusedTheTask() {
+		Counter listener = new Counter();
+		StubClient stub = new StubClient(listener);
+		EventQueue queue = new EventQueue(stub.client);
+
+		stub.bridge.setAvailable(false);
+		post(queue, 1);
+		assertEquals(0, stub.bridge.pending());
+
+		// The next event posts the drain task again, and it picks up both
+		stub.bridge.setAvailable(true);
+		post(queue, 2);
+		stub.runFrame();
+		assertEquals(2, listener.events);
+	}
+
+	@Test
+	public void overflowAndUrgentRecordsAreReused() {
+		Counter listener = new Counter();
+		StubClient stub = new StubClient(listener);
+		EventQueue queue = new EventQueue(stub.client);
+
+		for (int round = 0; round < 3; round++) {
+			for (int i = 0; i < 600; i++) {
+				post(queue, i);
+			}
+			queue.publish(queue.claimUrgent(EventRecord.KIND_FIELDS, "error", CoronaLua.REFNIL, false)
+					.string("errorMessage", "urgent"));
+			while (stub.runFrame() > 0) {
+				// drain
+			}
+		}
+		assertEquals(3 * 601, listener.events);
+		assertEquals(0, queue.size());
+	}
+}
@@ -0,0 +1,48 @@
+//
+//  JsonCodecTest.java
+//  SolarMQTT Plugin for Solar2D
+//
+//  Copyright (c) 2026 Platopus Systems. All rights reserved.
+//
+
+package plugin.solarmqtt;
+
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+import java.text.ParseException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class JsonCodecTest {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static Object parse(String json) throws ParseException {
+		return JsonCodec.parse(json.getBytes(UTF8));
+	}
+
+	@Test
+	public void acceptsNumbersInTheJsonGrammar() throws ParseException {
+		assertEquals(0.0, parse("0"));
+		assertEquals(-0.0, parse("-0"));
+		assertEquals(120.0, parse("120"));
+		assertEquals(-1.5, parse("-1.5"));
+		assertEquals(0.25, parse("0.25"));
+		assertEquals(1e3, parse("1e3"));
+		assertEquals(2.5e-2, parse("2.5E-2"));
+		assertEquals(4e+1, parse("4e+1"));
+	}
+
+	@Test
+	public void rejectsNumbersOutsideTheJsonGrammar() {
+		String[] bad = { "01", "-01", "00", "-", "1.", "1.e5", ".5", "1e", "1e+", "+1", "1-2", "1.2.3", "1e5e5", "--1" };
+		for (String json : bad) {
+			try {
+				parse(json);
+				fail(json + " parsed");
+			} catch (ParseException expected) {
+			}
+		}
+	}
+}
@@ -0,0 +1,97 @@
+//
+//  LoadGenerator.java
+//  SolarMQTT Plugin for Solar2D
+//
+//  Copyright (c) 2026 Platopus Systems. All rights reserved.
+//
+
+package plugin.solarmqtt;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Plays the Lua side of a load test on the calling thread: every frame it
+ * publishes the messages due at `rate` per second, then runs the frame's
+ * runtime tasks, until `messages` have been sent and `done` says the
+ * results are in (or the timeout passes).
+ *
+ * Settings come from system properties, so a run can be sized from the
+ * command line: loadtest.messages, loadtest.rate, loadtest.qos,
+ * loadtest.payloadBytes and loadtest.frameMs.
+ */
+final class LoadGenerator {
+	final int messages;
+	final int rate;
+	final int qos;
+	final int payloadBytes;
+	final int frameMs;
+
+	/** Ends the run once it returns true. */
+	interface Condition {
+		boolean met();
+	}
+
+	LoadGenerator(int messages, int rate, int qos, int payloadBytes, int frameMs) {
+		this.messages = messages;
+		this.rate = rate;
+		this.qos = qos;
+		this.payloadBytes = payloadBytes;
+		this.frameMs = frameMs;
+	}
+
+	/** Settings from the loadtest.* system properties, with the given defaults. */
+	static LoadGenerator fromProperties(int messages, int rate, int qos, int payloadBytes, int frameMs) {
+		return new LoadGenerator(
+				Integer.getInteger("loadtest.messages", messages),
+				Integer.getInteger("loadtest.rate", rate),
+				Integer.getInteger("loadtest.qos", qos),
+				Integer.getInteger("loadtest.payloadBytes", payloadBytes),
+				Integer.getInteger("loadtest.frameMs", frameMs));
+	}
+
+	/** The payload of message `seq`: its number, then padding up to payloadBytes. */
+	byte[] payload(int seq) {
+		byte[] prefix = (seq + ":").getBytes(InboundMessage.UTF8);
+		byte[] payload = Arrays.copyOf(prefix, Math.max(prefix.length, payloadBytes));
+		Arrays.fill(payload, prefix.length, payload.length, (byte)'x');
+		return payload;
+	}
+
+	/** The sequence number at the start of a payload, or -1. */
+	static int sequenceOf(byte[] payload) {
+		int seq = 0;
+		for (int i = 0; i < payload.length; i++) {
+			byte b = payload[i];
+			if (b == ':') return i > 0 ? seq : -1;
+			if (b < '0' || b > '9') return -1;
+			seq = seq * 10 + (b - '0');
+		}
+		return -1;
+	}
+
+	/** Publishes on `topic` through the client and pumps frames; returns false on timeout. */
+	boolean run(StubClient stub, String topic, Condition done, long timeoutMs) throws InterruptedException {
+		long start = System.nanoTime();
+		long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+		long frameNanos = TimeUnit.MILLISECONDS.toNanos(frameMs);
+		long nextFrame = start;
+		int sent = 0;
+		while (true) {
+			long now = System.nanoTime();
+			long due = Math.min(messages, (now - start) * rate / 1000000000L + 1);
+			while (sent < due) {
+				stub.publish(topic, payload(sent), "qos", qos);
+				sent++;
+			}
+			stub.runFrame();
+			if (sent >= messages && done.met()) return true;
+			if (now - deadline > 0) return false;
+			nextFrame += frameNanos;
+			long sleep = nextFrame - System.nanoTime();
+			if (sleep > 0) {
+				TimeUnit.NANOSECONDS.sleep(sleep);
+			}
+		}
+	}
+}
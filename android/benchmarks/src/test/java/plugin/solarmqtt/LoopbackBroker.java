@@ -0,0 +1,361 @@
+//
+//  LoopbackBroker.java
+//  SolarMQTT Plugin for Solar2D
+//
+//  Copyright (c) 2026 Platopus Systems. All rights reserved.
+//
+
+package plugin.solarmqtt;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Minimal MQTT 3.1.1 broker on 127.0.0.1 for tests: one NIO selector thread,
+ * no persistence, no retained messages, no authentication. Enough of the
+ * protocol for a Paho client to connect, subscribe, publish and receive at
+ * QoS 0, 1 and 2, so latency can be measured without a network or an
+ * external broker.
+ */
+final class LoopbackBroker implements Runnable {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final int CONNECT = 1;
+	private static final int PUBLISH = 3;
+	private static final int PUBACK = 4;
+	private static final int PUBREC = 5;
+	private static final int PUBREL = 6;
+	private static final int PUBCOMP = 7;
+	private static final int SUBSCRIBE = 8;
+	private static final int UNSUBSCRIBE = 10;
+	private static final int PINGREQ = 12;
+	private static final int DISCONNECT = 14;
+
+	/** Called on the broker thread just before a PUBLISH to a subscriber is written to its socket. */
+	interface SendHook {
+		void sent(String topic, byte[] payload);
+	}
+
+	private final Selector selector;
+	private final ServerSocketChannel server;
+	private final Thread thread;
+	private final ArrayList<Session> sessions = new ArrayList<Session>();
+	private volatile SendHook sendHook;
+	private volatile boolean running = true;
+
+	LoopbackBroker() throws IOException {
+		selector = Selector.open();
+		server = ServerSocketChannel.open();
+		server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+		server.configureBlocking(false);
+		server.register(selector, SelectionKey.OP_ACCEPT);
+		thread = new Thread(this, "loopback-broker");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	int port() {
+		return server.socket().getLocalPort();
+	}
+
+	void setSendHook(SendHook hook) {
+		sendHook = hook;
+	}
+
+	void close() throws IOException {
+		running = false;
+		selector.wakeup();
+		try {
+			thread.join(2000);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		server.close();
+		selector.close();
+	}
+
+	@Override
+	public void run() {
+		try {
+			while (running) {
+				selector.select(100);
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					if (!key.isValid()) continue;
+					if (key.isAcceptable()) {
+						accept();
+						continue;
+					}
+					Session session = (Session)key.attachment();
+					try {
+						if (key.isReadable()) session.read();
+						if (key.isValid() && key.isWritable()) session.flush();
+					} catch (IOException e) {
+						session.close();
+					}
+				}
+			}
+		} catch (IOException e) {
+			if (running) throw new IllegalStateException(e);
+		} finally {
+			for (Session session : new ArrayList<Session>(sessions)) {
+				session.close();
+			}
+		}
+	}
+
+	private void accept() throws IOException {
+		SocketChannel channel = server.accept();
+		if (channel == null) return;
+		channel.configureBlocking(false);
+		channel.socket().setTcpNoDelay(true);
+		Session session = new Session(channel);
+		session.key = channel.register(selector, SelectionKey.OP_READ, session);
+		sessions.add(session);
+	}
+
+	/** Forwards a PUBLISH to every session with a matching filter, at the lower of the two QoS. */
+	private void route(String topic, byte[] payload, int qos) {
+		for (Session session : new ArrayList<Session>(sessions)) {
+			int granted = session.match(topic);
+			if (granted < 0) continue;
+			try {
+				session.sendPublish(topic, payload, Math.min(qos, granted));
+			} catch (IOException e) {
+				session.close();
+			}
+		}
+	}
+
+	/** MQTT topic matching with + and # wildcards. */
+	static boolean matches(String filter, String topic) {
+		String[] f = filter.split("/", -1);
+		String[] t = topic.split("/", -1);
+		for (int i = 0; i < f.length; i++) {
+			if (f[i].equals("#")) return true;
+			if (i >= t.length) return false;
+			if (!f[i].equals("+") && !f[i].equals(t[i])) return false;
+		}
+		return f.length == t.length;
+	}
+
+	// ========================================================================
+	// Connections
+	// ========================================================================
+
+	private final class Session {
+		final SocketChannel channel;
+		SelectionKey key;
+		final LinkedHashMap<String, Integer> filters = new LinkedHashMap<String, Integer>();
+		final ArrayDeque<ByteBuffer> outgoing = new ArrayDeque<ByteBuffer>();
+		ByteBuffer in = ByteBuffer.allocate(64 * 1024);
+		int nextPacketId = 1;
+
+		Session(SocketChannel channel) {
+			this.channel = channel;
+		}
+
+		int match(String topic) {
+			int best = -1;
+			for (Map.Entry<String, Integer> e : filters.entrySet()) {
+				if (matches(e.getKey(), topic)) best = Math.max(best, e.getValue());
+			}
+			return best;
+		}
+
+		void read() throws IOException {
+			if (channel.read(in) < 0) {
+				close();
+				return;
+			}
+			in.flip();
+			while (true) {
+				in.mark();
+				if (in.remaining() < 2) break;
+				int header = in.get() & 0xff;
+				int length = readRemainingLength();
+				if (length < 0 || in.remaining() < length) {
+					in.reset();
+					if (length > in.capacity() - 5) {
+						// Grow for a packet larger than the buffer
+						ByteBuffer bigger = ByteBuffer.allocate(length + 5);
+						bigger.put(in);
+						in = bigger;
+						return;
+					}
+					break;
+				}
+				byte[] body = new byte[length];
+				in.get(body);
+				handle(header >> 4, header & 0x0f, ByteBuffer.wrap(body));
+				if (!channel.isOpen()) return;
+			}
+			in.compact();
+		}
+
+		/** The remaining length, or -1 if its bytes have not all arrived. */
+		private int readRemainingLength() {
+			int value = 0;
+			int shift = 0;
+			while (in.hasRemaining()) {
+				int b = in.get() & 0xff;
+				value |= (b & 0x7f) << shift;
+				if ((b & 0x80) == 0) return value;
+				shift += 7;
+			}
+			return -1;
+		}
+
+		private void handle(int type, int flags, ByteBuffer body) throws IOException {
+			switch (type) {
+				case CONNECT:
+					send(new byte[] { 0x20, 0x02, 0x00, 0x00 });
+					break;
+				case PUBLISH: {
+					int qos = (flags >> 1) & 0x03;
+					String topic = readString(body);
+					int packetId = qos > 0 ? body.getShort() & 0xffff : 0;
+					byte[] payload = new byte[body.remaining()];
+					body.get(payload);
+					if (qos == 1) {
+						send(ack(PUBACK << 4, packetId));
+					} else if (qos == 2) {
+						send(ack(PUBREC << 4, packetId));
+					}
+					route(topic, payload, qos);
+					break;
+				}
+				case PUBREL:
+					send(ack(PUBCOMP << 4, body.getShort() & 0xffff));
+					break;
+				case PUBREC:
+					send(ack((PUBREL << 4) | 0x02, body.getShort() & 0xffff));
+					break;
+				case PUBACK:
+				case PUBCOMP:
+					break;
+				case SUBSCRIBE: {
+					int packetId = body.getShort() & 0xffff;
+					ArrayList<Integer> granted = new ArrayList<Integer>();
+					while (body.hasRemaining()) {
+						String filter = readString(body);
+						int qos = Math.min(2, body.get() & 0x03);
+						filters.put(filter, qos);
+						granted.add(qos);
+					}
+					byte[] suback = new byte[4 + granted.size()];
+					suback[0] = (byte)0x90;
+					suback[1] = (byte)(2 + granted.size());
+					suback[2] = (byte)(packetId >> 8);
+					suback[3] = (byte)packetId;
+					for (int i = 0; i < granted.size(); i++) {
+						suback[4 + i] = (byte)(int)granted.get(i);
+					}
+					send(suback);
+					break;
+				}
+				case UNSUBSCRIBE: {
+					int packetId = body.getShort() & 0xffff;
+					while (body.hasRemaining()) {
+						filters.remove(readString(body));
+					}
+					send(ack(0xb0, packetId));
+					break;
+				}
+				case PINGREQ:
+					send(new byte[] { (byte)0xd0, 0x00 });
+					break;
+				case DISCONNECT:
+					close();
+					break;
+				default:
+					close();
+					break;
+			}
+		}
+
+		void sendPublish(String topic, byte[] payload, int qos) throws IOException {
+			byte[] topicBytes = topic.getBytes(UTF8);
+			int length = 2 + topicBytes.length + (qos > 0 ? 2 : 0) + payload.length;
+			ByteBuffer packet = ByteBuffer.allocate(5 + length);
+			packet.put((byte)((PUBLISH << 4) | (qos << 1)));
+			writeRemainingLength(packet, length);
+			packet.putShort((short)topicBytes.length);
+			packet.put(topicBytes);
+			if (qos > 0) {
+				packet.putShort((short)nextPacketId);
+				nextPacketId = nextPacketId == 0xffff ? 1 : nextPacketId + 1;
+			}
+			packet.put(payload);
+			packet.flip();
+			// Before the write, so the client cannot dispatch the message before it is timestamped
+			SendHook hook = sendHook;
+			if (hook != null) hook.sent(topic, payload);
+			send(packet);
+		}
+
+		private void send(byte[] packet) throws IOException {
+			send(ByteBuffer.wrap(packet));
+		}
+
+		private void send(ByteBuffer packet) throws IOException {
+			outgoing.addLast(packet);
+			flush();
+		}
+
+		void flush() throws IOException {
+			ByteBuffer head;
+			while ((head = outgoing.peekFirst()) != null) {
+				channel.write(head);
+				if (head.hasRemaining()) break;
+				outgoing.pollFirst();
+			}
+			if (key != null && key.isValid()) {
+				key.interestOps(outgoing.isEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+			}
+		}
+
+		void close() {
+			sessions.remove(this);
+			if (key != null) key.cancel();
+			try {
+				channel.close();
+			} catch (IOException e) {
+				// already gone
+			}
+		}
+	}
+
+	private static byte[] ack(int header, int packetId) {
+		return new byte[] { (byte)header, 0x02, (byte)(packetId >> 8), (byte)packetId };
+	}
+
+	private static String readString(ByteBuffer body) {
+		int length = body.getShort() & 0xffff;
+		byte[] bytes = new byte[length];
+		body.get(bytes);
+		return new String(bytes, UTF8);
+	}
+
+	private static void writeRemainingLength(ByteBuffer packet, int length) {
+		do {
+			int b = length & 0x7f;
+			length >>>= 7;
+			packet.put((byte)(length > 0 ? b | 0x80 : b));
+		} while (length > 0);
+	}
+}
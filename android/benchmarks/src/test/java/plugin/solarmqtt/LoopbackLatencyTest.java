@@ -0,0 +1,164 @@
+//
+//  LoopbackLatencyTest.java
+//  SolarMQTT Plugin for Solar2D
+//
+//  Copyright (c) 2026 Platopus Systems. All rights reserved.
+//
+
+package plugin.solarmqtt;
+
+import com.naef.jnlua.JavaFunction;
+import com.naef.jnlua.LuaState;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * End-to-end latency through a real Paho client and the plugin's queueing
+ * and dispatch, against LoopbackBroker on 127.0.0.1. The client publishes
+ * to a topic it is subscribed to, and the test reports:
+ *
+ *   publish-to-ack:    client.publish() to the broker's acknowledgement, as
+ *                      the `published` event's latencyMs;
+ *   send-to-dispatch:  the broker writing the PUBLISH to the socket to the
+ *                      `message` event reaching the listener on the Lua
+ *                      thread, frame wait included.
+ *
+ * Size the run with the loadtest.* system properties (see LoadGenerator),
+ * and loadtest.maxInflight for the client's in-flight window, e.g.
+ * gradle test -Dloadtest.rate=5000 -Dloadtest.qos=2.
+ */
+public class LoopbackLatencyTest {
+	private static final long TIMEOUT_MS = 60000;
+
+	private LoopbackBroker broker;
+	private StubClient stub;
+	private Recorder recorder;
+
+	/** Listener on the Lua thread that timestamps events as they are dispatched. */
+	private static final class Recorder implements JavaFunction {
+		final LatencyHistogram publishToAck = new LatencyHistogram();
+		final LatencyHistogram sendToDispatch = new LatencyHistogram();
+		AtomicLongArray sentAt;
+		boolean connected;
+		boolean subscribed;
+		int received;
+		int acked;
+		int errors;
+
+		@Override
+		public int invoke(LuaState L) {
+			long now = System.nanoTime();
+			LuaState.Table event = L.toTable(1);
+			String name = event.string("name");
+			if ("connected".equals(name)) {
+				connected = true;
+			} else if ("subscribed".equals(name)) {
+				subscribed = true;
+			} else if ("published".equals(name)) {
+				acked++;
+				publishToAck.record((long)((Double)event.get("latencyMs") * 1e6));
+			} else if ("message".equals(name)) {
+				int seq = LoadGenerator.sequenceOf((byte[])event.get("payload"));
+				if (seq >= 0 && seq < sentAt.length()) {
+					received++;
+					sendToDispatch.record(now - sentAt.get(seq));
+				}
+			} else if ("error".equals(name)) {
+				errors++;
+			}
+			return 0;
+		}
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		broker = new LoopbackBroker();
+		recorder = new Recorder();
+		stub = new StubClient(EngineOptions.PAHO, recorder);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		stub.close();
+		broker.close();
+	}
+
+	@Test
+	public void qos1() throws Exception {
+		measure(LoadGenerator.fromProperties(5000, 2000, 1, 64, 16));
+	}
+
+	@Test
+	public void qos0() throws Exception {
+		measure(LoadGenerator.fromProperties(5000, 2000, 0, 64, 16));
+	}
+
+	private void measure(final LoadGenerator load) throws Exception {
+		final AtomicLongArray sentAt = new AtomicLongArray(load.messages);
+		recorder.sentAt = sentAt;
+		broker.setSendHook(new LoopbackBroker.SendHook() {
+			@Override
+			public void sent(String topic, byte[] payload) {
+				int seq = LoadGenerator.sequenceOf(payload);
+				if (seq >= 0 && seq < sentAt.length()) {
+					sentAt.set(seq, System.nanoTime());
+				}
+			}
+		});
+
+		stub.connect("broker", "127.0.0.1", "port", broker.port(), "clientId", "loopback",
+				"maxInflight", Integer.getInteger("loadtest.maxInflight", 64));
+		pumpUntil(new LoadGenerator.Condition() {
+			@Override
+			public boolean met() {
+				return recorder.connected;
+			}
+		});
+		stub.subscribe("load/#", load.qos);
+		pumpUntil(new LoadGenerator.Condition() {
+			@Override
+			public boolean met() {
+				return recorder.subscribed;
+			}
+		});
+
+		boolean finished = load.run(stub, "load/data", new LoadGenerator.Condition() {
+			@Override
+			public boolean met() {
+				return recorder.received >= load.messages && recorder.acked >= load.messages;
+			}
+		}, TIMEOUT_MS);
+
+		System.out.println(String.format("loopback qos=%d messages=%d rate=%d/s payload=%d B frame=%d ms maxInflight=%d",
+				load.qos, load.messages, load.rate, load.payloadBytes, load.frameMs,
+				Integer.getInteger("loadtest.maxInflight", 64)));
+		report("publish-to-ack", recorder.publishToAck);
+		report("send-to-dispatch", recorder.sendToDispatch);
+
+		assertTrue("timed out with " + recorder.received + " received and " + recorder.acked + " acked", finished);
+		assertEquals(0, recorder.errors);
+		assertEquals(load.messages, recorder.sendToDispatch.count());
+	}
+
+	private void pumpUntil(LoadGenerator.Condition condition) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+		while (!condition.met()) {
+			assertTrue("timed out", System.currentTimeMillis() < deadline);
+			stub.runFrame();
+			Thread.sleep(5);
+		}
+	}
+
+	private static void report(String label, LatencyHistogram h) {
+		System.out.println(String.format("  %-17s n=%d p50=%.3f ms p99=%.3f ms p999=%.3f ms",
+				label, h.count(), h.percentileMicros(0.5) / 1000.0, h.percentileMicros(0.99) / 1000.0,
+				h.percentileMicros(0.999) / 1000.0));
+	}
+}
@@ -0,0 +1,92 @@
+//
+//  MappedLogTest.java
+//  SolarMQTT Plugin for Solar2D
+//
+//  Copyright (c) 2026 Platopus Systems. All rights reserved.
+//
+
+package plugin.solarmqtt;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MappedLogTest {
+	@Test
+	public void compactionKeepsUnreadRecordsAcrossReopen() throws IOException {
+		File file = File.createTempFile("log", ".bin");
+		file.delete();
+		MappedLog log = new MappedLog(file, 256);
+		byte[] record = new byte[60];
+		int appended = 0;
+		while (log.append(record(record, appended))) {
+			appended++;
+		}
+		log.peek();
+		log.advance();
+
+		// Appending past the end compacts into a new file
+		assertTrue(log.append(record(record, appended)));
+		assertEquals(appended, log.size());
+		assertFalse(new File(file.getPath() + ".tmp").exists());
+		log.close();
+
+		MappedLog reopened = new MappedLog(file, 256);
+		assertEquals(appended, reopened.size());
+		for (int i = 1; i <= appended; i++) {
+			assertArrayEquals(record(record, i), reopened.peek());
+			reopened.advance();
+		}
+		assertTrue(reopened.isEmpty());
+		reopened.close();
+		file.delete();
+	}
+
+	@Test
+	public void smallerCapacityKeepsALargerFile() throws IOException {
+		File file = File.createTempFile("log", ".bin");
+		file.delete();
+		MappedLog log = new MappedLog(file, 4096);
+		for (int i = 0; i < 20; i++) {
+			assertTrue(log.append(record(new byte[100], i)));
+		}
+		log.close();
+
+		MappedLog reopened = new MappedLog(file, 256);
+		assertEquals(20, reopened.size());
+		assertEquals(4096, file.length());
+		reopened.close();
+		file.delete();
+	}
+
+	@Test
+	public void rewriteReplacesTheUnreadRecords() throws IOException {
+		File file = File.createTempFile("log", ".bin");
+		file.delete();
+		MappedLog log = new MappedLog(file, 256);
+		log.append(new byte[] { 1 });
+		log.append(new byte[] { 2 });
+		assertTrue(log.rewrite(Arrays.asList(new byte[] { 3 })));
+		assertEquals(1, log.size());
+		assertArrayEquals(new byte[] { 3 }, log.peek());
+
+		// Too large to fit: the log is left as it was
+		assertFalse(log.rewrite(Arrays.asList(new byte[300])));
+		assertArrayEquals(new byte[] { 3 }, log.peek());
+		log.close();
+		file.delete();
+	}
+
+	private static byte[] record(byte[] template, int index) {
+		byte[] copy = template.clone();
+		copy[0] = (byte)index;
+		return copy;
+	}
+}
@@ -0,0 +1,47 @@
+//
+//  MessageBatcherTest.java
+//  SolarMQTT Plugin for Solar2D
+//
+//  Copyright (c) 2026 Platopus Systems. All rights reserved.
+//
+
+package plugin.solarmqtt;
+
+import com.naef.jnlua.JavaFunction;
+import com.naef.jnlua.LuaState;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class MessageBatcherTest {
+	private static final class Batches implements JavaFunction {
+		int messages;
+
+		@Override
+		public int invoke(LuaState L) {
+			LuaState.Table event = L.toTable(1);
+			if ("messages".equals(event.string("name"))) {
+				messages += ((Double)event.get("coalesced")).intValue();
+			}
+			return 0;
+		}
+	}
+
+	@Test
+	public void drainsAfterTheRuntimeRefusedTheTask() {
+		Batches listener = new Batches();
+		StubClient stub = new StubClient(listener);
+		stub.connect("batchMessages", StubClient.table("maxCount", 64));
+		stub.subscribe("t/#", 0);
+		stub.runFrame();
+
+		stub.bridge.setAvailable(false);
+		stub.engine().arrive("t/a", new byte[] { 1 }, 0);
+		stub.bridge.setAvailable(true);
+		stub.engine().arrive("t/b", new byte[] { 2 }, 0);
+		stub.runFrame();
+
+		assertEquals(2, listener.messages);
+	}
+}
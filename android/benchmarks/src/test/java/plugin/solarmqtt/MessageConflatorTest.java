@@ -0,0 +1,44 @@
+//
+//  MessageConflatorTest.java
+//  SolarMQTT Plugin for Solar2D
+//
+//  Copyright (c) 2026 Platopus Systems. All rights reserved.
+//
+
+package plugin.solarmqtt;
+
+import com.naef.jnlua.JavaFunction;
+import com.naef.jnlua.LuaState;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class MessageConflatorTest {
+	private static final class Messages implements JavaFunction {
+		int count;
+
+		@Override
+		public int invoke(LuaState L) {
+			if ("message".equals(L.toTable(1).string("name"))) count++;
+			return 0;
+		}
+	}
+
+	@Test
+	public void flushesAfterTheRuntimeRefusedTheTask() {
+		Messages listener = new Messages();
+		StubClient stub = new StubClient(listener);
+		stub.connect();
+		stub.subscribe("t/#", 0, "conflate", Boolean.TRUE);
+		stub.runFrame();
+
+		stub.bridge.setAvailable(false);
+		stub.engine().arrive("t/a", new byte[] { 1 }, 0);
+		stub.bridge.setAvailable(true);
+		stub.engine().arrive("t/b", new byte[] { 2 }, 0);
+		stub.runFrame();
+
+		assertEquals(2, listener.count);
+	}
+}
@@ -0,0 +1,87 @@
+//
+//  PayloadCodecTest.java
+//  SolarMQTT Plugin for Solar2D
+//
+//  Copyright (c) 2026 Platopus Systems. All rights reserved.
+//
+
+package plugin.solarmqtt;
+
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PayloadCodecTest {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static byte[] json(int fields) {
+		StringBuilder b = new StringBuilder("{");
+		for (int i = 0; i < fields; i++) {
+			if (i > 0) b.append(',');
+			b.append("\"sensor").append(i).append("\":{\"value\":").append(i * 7).append(",\"unit\":\"celsius\"}");
+		}
+		return b.append('}').toString().getBytes(UTF8);
+	}
+
+	@Test
+	public void roundTripsCompressedAndStoredPayloads() {
+		PayloadCodec codec = new PayloadCodec(16);
+		byte[] payload = json(40);
+		byte[] frame = codec.encode(payload, PayloadCodec.LEVEL_DEFAULT);
+		assertTrue(frame.length < payload.length);
+		assertArrayEquals(payload, codec.decode(frame));
+
+		byte[] small = "tiny".getBytes(UTF8);
+		assertArrayEquals(small, codec.encode(small, PayloadCodec.LEVEL_DEFAULT));
+		assertArrayEquals(small, codec.decode(small));
+		codec.close();
+	}
+
+	@Test
+	public void leavesBinaryPayloadsWithoutTheMagicAlone() {
+		PayloadCodec codec = new PayloadCodec(1024);
+		byte[] binary = { 0x00, 0x01, 0x02, 0x03 };
+		assertArrayEquals(binary, codec.decode(binary));
+		byte[] marker = { 0x01, 0x05, 0x00 };
+		assertArrayEquals(marker, codec.decode(marker));
+
+		// A payload that happens to start with the magic survives the round trip
+		byte[] lookalike = { (byte)0xF5, 'M', 'Q', 'Z', 0x01, 0x09 };
+		byte[] framed = codec.encode(lookalike, PayloadCodec.LEVEL_DEFAULT);
+		assertEquals(lookalike.length + 5, framed.length);
+		assertArrayEquals(lookalike, codec.decode(framed));
+		codec.close();
+	}
+
+	@Test
+	public void decodesOnSeveralThreadsAtOnce() throws InterruptedException {
+		final PayloadCodec codec = new PayloadCodec(16);
+		final byte[] payload = json(200);
+		final byte[] frame = codec.encode(payload, PayloadCodec.LEVEL_FAST);
+		final AtomicInteger mismatches = new AtomicInteger();
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			threads[t] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int i = 0; i < 2000; i++) {
+						if (!Arrays.equals(payload, codec.decode(frame))) mismatches.incrementAndGet();
+					}
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(0, mismatches.get());
+		codec.close();
+		assertArrayEquals(frame, codec.decode(frame));
+	}
+}
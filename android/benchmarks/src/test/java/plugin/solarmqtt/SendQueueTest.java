@@ -0,0 +1,60 @@
+//
+//  SendQueueTest.java
+//  SolarMQTT Plugin for Solar2D
+//
+//  Copyright (c) 2026 Platopus Systems. All rights reserved.
+//
+
+package plugin.solarmqtt;
+
+import com.ansca.corona.CoronaLua;
+import com.naef.jnlua.JavaFunction;
+import com.naef.jnlua.LuaState;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+
+public class SendQueueTest {
+	private static final class Errors implements JavaFunction {
+		final ArrayList<String> messages = new ArrayList<String>();
+
+		@Override
+		public int invoke(LuaState L) {
+			LuaState.Table event = L.toTable(1);
+			if (Boolean.TRUE.equals(event.get("isError"))) {
+				messages.add(event.string("errorMessage"));
+			}
+			return 0;
+		}
+	}
+
+	@Test
+	public void closeReleasesTheCallbacksOfQueuedPublishes() {
+		// Acks that never come, so everything past the window stays queued
+		Executor never = new Executor() {
+			@Override
+			public void execute(Runnable command) {
+			}
+		};
+		StubClient stub = new StubClient(never, new Errors());
+		stub.connect("maxInflight", 1);
+		stub.runFrame();
+
+		Errors callbacks = new Errors();
+		stub.publish("t/a", "1", callbacks, "qos", 1);
+		assertEquals("queued", stub.publish("t/a", "2", callbacks, "qos", 1));
+		assertEquals("queued", stub.publish("t/a", "3", callbacks, "qos", 1));
+		int refs = CoronaLua.liveRefs();
+
+		stub.close();
+
+		assertEquals(2, callbacks.messages.size());
+		assertEquals("Client closed", callbacks.messages.get(0));
+		// The two queued callbacks and the client listener
+		assertEquals(refs - 3, CoronaLua.liveRefs());
+	}
+}
@@ -0,0 +1,48 @@
+//
+//  SessionStoreTest.java
+//  SolarMQTT Plugin for Solar2D
+//
+//  Copyright (c) 2026 Platopus Systems. All rights reserved.
+//
+
+package plugin.solarmqtt;
+
+import com.naef.jnlua.JavaFunction;
+import com.naef.jnlua.LuaState;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+
+public class SessionStoreTest {
+	private static final JavaFunction IGNORE = new JavaFunction() {
+		@Override
+		public int invoke(LuaState L) {
+			return 0;
+		}
+	};
+
+	@Test
+	public void keysFiltersByRequestedQosAndWritesOnFlush() throws IOException {
+		File file = File.createTempFile("session", ".properties");
+		file.delete();
+		StubClient stub = new StubClient(IGNORE);
+		SessionStore store = SessionStore.open(file, "solar-test", "tcp://stub:1883", stub.client);
+
+		// The broker downgraded QoS 2 to 1
+		store.put(new String[] { "a/b", "c/d" }, new int[] { 2, 0 }, new int[] { 1, 0x80 });
+		assertEquals(2, store.requestedQosOf("a/b"));
+		assertEquals(1, store.grantedQosOf("a/b"));
+		assertEquals(-1, store.requestedQosOf("c/d"));
+
+		store.flush();
+		SessionStore reopened = SessionStore.open(file, "solar-test", "tcp://stub:1883", stub.client);
+		assertEquals(2, reopened.requestedQosOf("a/b"));
+		assertEquals(1, reopened.size());
+		stub.close();
+		file.delete();
+	}
+}
@@ -0,0 +1,120 @@
+//
+//  BackgroundBuffer.java
+//  SolarMQTT Plugin for Solar2D
+//
+//  Copyright (c) 2026 Platopus Systems. All rights reserved.
+//
+
+package plugin.solarmqtt;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Inbound messages held while the app is suspended, instead of piling up
+ * runtime tasks that cannot run. Bounded in both modes: the oldest message
+ * (or the least recently updated topic, when conflating) is dropped first.
+ *
+ * On resume the buffer is released a slice per frame with take(); messages
+ * arriving meanwhile still queue behind the held ones, so order is kept,
+ * until a take() empties it and closes it.
+ */
+final class BackgroundBuffer {
+	private final boolean conflate;
+	private final int capacity;
+	private final LinkedHashMap<String, InboundMessage> latest = new LinkedHashMap<String, InboundMessage>();
+	private final ArrayDeque<InboundMessage> ring = new ArrayDeque<InboundMessage>();
+	private boolean releasing;
+	private boolean closed;
+
+	final long suspendedAt = System.nanoTime();
+	private int received;
+	private int dropped;
+
+	BackgroundBuffer(SuspendPolicy policy) {
+		this.conflate = policy.conflate;
+		this.capacity = policy.maxMessages;
+	}
+
+	/** Holds a message. Returns false once the buffer has been drained, so the caller delivers it itself. */
+	synchronized boolean add(InboundMessage message) {
+		if (closed) return false;
+		received++;
+		if (conflate) {
+			// Re-insert so iteration order follows the latest update
+			if (latest.remove(message.topic) != null) {
+				dropped++;
+			} else if (latest.size() >= capacity) {
+				Iterator<String> oldest = latest.keySet().iterator();
+				oldest.next();
+				oldest.remove();
+				dropped++;
+			}
+			latest.put(message.topic, message);
+		} else {
+			if (ring.size() >= capacity) {
+				ring.pollFirst();
+				dropped++;
+			}
+			ring.addLast(message);
+		}
+		return true;
+	}
+
+	/** Marks the buffer as being released; false if it already is. */
+	synchronized boolean startRelease() {
+		if (releasing) return false;
+		releasing = true;
+		return true;
+	}
+
+	/** Removes up to max held messages, oldest first; closes the buffer once it is empty. */
+	synchronized List<InboundMessage> take(int max) {
+		int n = Math.min(max, size());
+		List<InboundMessage> slice = new ArrayList<InboundMessage>(n);
+		if (conflate) {
+			Iterator<InboundMessage> it = latest.values().iterator();
+			while (slice.size() < n) {
+				slice.add(it.next());
+				it.remove();
+			}
+		} else {
+			while (slice.size() < n) {
+				slice.add(ring.pollFirst());
+			}
+		}
+		if (size() == 0) {
+			closed = true;
+		}
+		return slice;
+	}
+
+	synchronized boolean isClosed() {
+		return closed;
+	}
+
+	/** Messages held now. */
+	synchronized int size() {
+		return conflate ? latest.size() : ring.size();
+	}
+
+	/** Stops holding messages and returns those still held, oldest first. */
+	synchronized List<InboundMessage> drain() {
+		closed = true;
+		List<InboundMessage> held = new ArrayList<InboundMessage>(conflate ? latest.values() : ring);
+		latest.clear();
+		ring.clear();
+		return held;
+	}
+
+	synchronized int received() {
+		return received;
+	}
+
+	synchronized int dropped() {
+		return dropped;
+	}
+}
@@ -0,0 +1,165 @@
+//
+//  ClientStats.java
+//  SolarMQTT Plugin for Solar2D
+//
+//  Copyright (c) 2026 Platopus Systems. All rights reserved.
+//
+
+package plugin.solarmqtt;
+
+import com.naef.jnlua.LuaState;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters and latency histograms for one client, updated from the Paho and
+ * runtime threads without locking. Only allocated when the `stats` connect
+ * option is set, so a disabled client pays a single null check per event.
+ */
+final class ClientStats {
+	final AtomicLong messagesReceived = new AtomicLong();
+	final AtomicLong bytesReceived = new AtomicLong();
+	final AtomicLong messagesConflated = new AtomicLong();
+	final AtomicLong messagesPrioritized = new AtomicLong();
+	final AtomicLong messagesRateLimited = new AtomicLong();
+	final AtomicLong publishesSent = new AtomicLong();
+	final AtomicLong publishesCompressed = new AtomicLong();
+	final AtomicLong bytesSavedByCompression = new AtomicLong();
+	final AtomicLong bytesPublished = new AtomicLong();
+	final AtomicLong publishesBatched = new AtomicLong();
+	final AtomicLong batchesSent = new AtomicLong();
+	final AtomicLong publishesAcked = new AtomicLong();
+	final AtomicLong publishesQueued = new AtomicLong();
+	final AtomicLong publishesRejected = new AtomicLong();
+	final AtomicLong publishesFailed = new AtomicLong();
+	final AtomicLong offlineQueued = new AtomicLong();
+	final AtomicLong offlineDropped = new AtomicLong();
+	final AtomicLong connectionsLost = new AtomicLong();
+	final AtomicLong reconnects = new AtomicLong();
+
+	/** Messages and bytes received through each shared subscription group. */
+	private final ConcurrentHashMap<String, GroupCounters> groups = new ConcurrentHashMap<String, GroupCounters>();
+
+	private static final class GroupCounters {
+		final AtomicLong messages = new AtomicLong();
+		final AtomicLong bytes = new AtomicLong();
+	}
+
+	/** Runtime tasks posted but not yet run. */
+	final AtomicInteger tasksPending = new AtomicInteger();
+
+	/** Publish call to PUBACK/PUBCOMP (or network write for QoS 0). */
+	final LatencyHistogram ackLatency = new LatencyHistogram();
+	/** Message arrival on the Paho thread to dispatch into Lua. */
+	final LatencyHistogram deliveryLatency = new LatencyHistogram();
+	/** Time an event or runtime task waits for the runtime thread before it runs. */
+	final LatencyHistogram dispatchWait = new LatencyHistogram();
+
+	final long startedAt = System.nanoTime();
+	final int intervalMs;
+
+	ClientStats(int intervalMs) {
+		this.intervalMs = intervalMs;
+	}
+
+	/**
+	 * Reads the stats field of the options table at index: true, or
+	 * { intervalMs= } to also get periodic `stats` events. Returns null when
+	 * stats are disabled.
+	 */
+	static ClientStats fromLua(LuaState L, int index) {
+		ClientStats stats = null;
+		L.getField(index, "stats");
+		if (L.isTable(-1)) {
+			L.getField(-1, "intervalMs");
+			int intervalMs = L.isNumber(-1) ? Math.max(0, (int)L.toNumber(-1)) : 0;
+			L.pop(1);
+			stats = new ClientStats(intervalMs);
+		} else if (L.isBoolean(-1) && L.toBoolean(-1)) {
+			stats = new ClientStats(0);
+		}
+		L.pop(1);
+		return stats;
+	}
+
+	/** Wraps a runtime task so its wait in the dispatcher queue is measured. */
+	RuntimeTask timed(final RuntimeTask task) {
+		final long queuedAt = System.nanoTime();
+		tasksPending.incrementAndGet();
+		return new RuntimeTask() {
+			@Override
+			public void run(LuaState L) {
+				tasksPending.decrementAndGet();
+				dispatchWait.record(System.nanoTime() - queuedAt);
+				task.run(L);
+			}
+		};
+	}
+
+	/** Counts a message matched by a subscription in a shared subscription group. Paho thread or a worker lane. */
+	void countGroup(String group, int bytes) {
+		GroupCounters counters = groups.get(group);
+		if (counters == null) {
+			GroupCounters created = new GroupCounters();
+			counters = groups.putIfAbsent(group, created);
+			if (counters == null) counters = created;
+		}
+		counters.messages.incrementAndGet();
+		counters.bytes.addAndGet(bytes);
+	}
+
+	/**
+	 * Sets the counters and histograms on the table at the top of the stack.
+	 * queuedEvents is the client's EventQueue backlog, added to the posted tasks.
+	 */
+	void pushFields(LuaState L, int queuedEvents) {
+		L.pushNumber((System.nanoTime() - startedAt) / 1e6);
+		L.setField(-2, "uptimeMs");
+		setCount(L, "messagesReceived", messagesReceived);
+		setCount(L, "bytesReceived", bytesReceived);
+		setCount(L, "messagesConflated", messagesConflated);
+		setCount(L, "messagesPrioritized", messagesPrioritized);
+		setCount(L, "messagesRateLimited", messagesRateLimited);
+		setCount(L, "publishesSent", publishesSent);
+		setCount(L, "publishesCompressed", publishesCompressed);
+		setCount(L, "bytesSavedByCompression", bytesSavedByCompression);
+		setCount(L, "bytesPublished", bytesPublished);
+		setCount(L, "publishesBatched", publishesBatched);
+		setCount(L, "batchesSent", batchesSent);
+		setCount(L, "publishesAcked", publishesAcked);
+		setCount(L, "publishesQueued", publishesQueued);
+		setCount(L, "publishesRejected", publishesRejected);
+		setCount(L, "publishesFailed", publishesFailed);
+		setCount(L, "offlineQueued", offlineQueued);
+		setCount(L, "offlineDropped", offlineDropped);
+		setCount(L, "connectionsLost", connectionsLost);
+		setCount(L, "reconnects", reconnects);
+		L.pushInteger(tasksPending.get() + queuedEvents);
+		L.setField(-2, "dispatchQueueDepth");
+
+		ackLatency.push(L);
+		L.setField(-2, "ackLatency");
+		deliveryLatency.push(L);
+		L.setField(-2, "deliveryLatency");
+		dispatchWait.push(L);
+		L.setField(-2, "dispatchWait");
+
+		L.newTable(0, groups.size());
+		for (Map.Entry<String, GroupCounters> entry : groups.entrySet()) {
+			L.newTable(0, 2);
+			setCount(L, "messages", entry.getValue().messages);
+			setCount(L, "bytes", entry.getValue().bytes);
+			L.setField(-2, entry.getKey());
+		}
+		L.setField(-2, "groups");
+	}
+
+	private static void setCount(LuaState L, String name, AtomicLong counter) {
+		// Lua numbers are doubles; counts stay exact up to 2^53
+		L.pushNumber(counter.get());
+		L.setField(-2, name);
+	}
+}
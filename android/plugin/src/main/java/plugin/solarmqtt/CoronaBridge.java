@@ -0,0 +1,48 @@
+//
+//  CoronaBridge.java
+//  SolarMQTT Plugin for Solar2D
+//
+//  Copyright (c) 2026 Platopus Systems. All rights reserved.
+//
+
+package plugin.solarmqtt;
+
+import com.ansca.corona.CoronaActivity;
+import com.ansca.corona.CoronaEnvironment;
+import com.ansca.corona.CoronaRuntime;
+import com.ansca.corona.CoronaRuntimeTask;
+
+import java.io.File;
+
+/**
+ * RuntimeBridge backed by the Corona activity's runtime task dispatcher.
+ */
+final class CoronaBridge implements RuntimeBridge {
+	static final CoronaBridge INSTANCE = new CoronaBridge();
+
+	private CoronaBridge() {
+	}
+
+	@Override
+	public boolean isAvailable() {
+		return CoronaEnvironment.getCoronaActivity() != null;
+	}
+
+	@Override
+	public boolean send(final RuntimeTask task) {
+		CoronaActivity activity = CoronaEnvironment.getCoronaActivity();
+		if (activity == null) return false;
+		activity.getRuntimeTaskDispatcher().send(new CoronaRuntimeTask() {
+			@Override
+			public void executeUsing(CoronaRuntime runtime) {
+				task.run(runtime.getLuaState());
+			}
+		});
+		return true;
+	}
+
+	@Override
+	public File storageDir() {
+		return new File(CoronaEnvironment.getApplicationContext().getFilesDir(), "solarmqtt");
+	}
+}
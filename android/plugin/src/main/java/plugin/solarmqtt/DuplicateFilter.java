@@ -0,0 +1,72 @@
+//
+//  DuplicateFilter.java
+//  SolarMQTT Plugin for Solar2D
+//
+//  Copyright (c) 2026 Platopus Systems. All rights reserved.
+//
+
+package plugin.solarmqtt;
+
+/**
+ * Recently received QoS 1/2 messages on subscriptions with the dedup option,
+ * so a broker's redelivery of one (DUP flag set, typically after a reconnect)
+ * can be dropped before it reaches Lua a second time.
+ *
+ * Each message is remembered by a 64-bit key of its topic, packet id and an
+ * FNV-1a hash of its payload, with an expiry time, in a fixed ring of
+ * primitive arrays: no allocation per message, and the oldest entry is
+ * overwritten when the ring is full. A redelivery carries the same packet id,
+ * topic and payload as the original, so it has the same key. Brokers reuse a
+ * packet id once it is acknowledged, so the payload hash keeps a resend of a
+ * different message from matching. Only redeliveries are looked up, so the
+ * scan stays off the common path. Called on the Paho thread or the worker
+ * lanes.
+ */
+final class DuplicateFilter {
+	static final int DEFAULT_WINDOW_MS = 60000;
+	static final int CAPACITY = 1024;
+
+	// Guarded by `this`
+	private final long[] keys = new long[CAPACITY];
+	private final long[] expiresAt = new long[CAPACITY];
+	private int next;
+	private long suppressed;
+
+	/**
+	 * Whether the message is a redelivery of one seen within its window. A
+	 * message that is not is remembered for windowMs.
+	 */
+	boolean isDuplicate(String topic, int packetId, byte[] payload, boolean redelivered, int windowMs) {
+		long key = key(topic, packetId, payload);
+		long now = System.nanoTime();
+		synchronized (this) {
+			if (redelivered) {
+				for (int i = 0; i < CAPACITY; i++) {
+					if (keys[i] == key && expiresAt[i] - now > 0) {
+						suppressed++;
+						return true;
+					}
+				}
+			}
+			keys[next] = key;
+			expiresAt[next] = now + windowMs * 1000000L;
+			next = (next + 1) % CAPACITY;
+			return false;
+		}
+	}
+
+	/** Redeliveries dropped so far. */
+	synchronized long suppressed() {
+		return suppressed;
+	}
+
+	/** Topic hash ^ payload hash in the high word, payload length and packet id in the low word. */
+	private static long key(String topic, int packetId, byte[] payload) {
+		int hash = 0x811c9dc5;
+		for (byte b : payload) {
+			hash = (hash ^ (b & 0xff)) * 0x01000193;
+		}
+		long high = (topic.hashCode() ^ hash) & 0xffffffffL;
+		return (high << 32) | ((long)(payload.length & 0xffff) << 16) | (packetId & 0xffff);
+	}
+}
@@ -0,0 +1,23 @@
+//
+//  EngineException.java
+//  SolarMQTT Plugin for Solar2D
+//
+//  Copyright (c) 2026 Platopus Systems. All rights reserved.
+//
+
+package plugin.solarmqtt;
+
+/**
+ * A failed MqttEngine call, wrapping the client library's own exception.
+ */
+final class EngineException extends Exception {
+	private static final long serialVersionUID = 1L;
+
+	/** The in-flight window was full; the call can be retried once a delivery completes. */
+	final boolean windowFull;
+
+	EngineException(Throwable cause, boolean windowFull) {
+		super(cause.getMessage(), cause);
+		this.windowFull = windowFull;
+	}
+}
@@ -0,0 +1,146 @@
+//
+//  EngineOptions.java
+//  SolarMQTT Plugin for Solar2D
+//
+//  Copyright (c) 2026 Platopus Systems. All rights reserved.
+//
+
+package plugin.solarmqtt;
+
+import com.naef.jnlua.LuaState;
+
+import java.io.File;
+
+/**
+ * Transport settings read from the connect options table, and the factory
+ * for the engine that implements the requested protocol version.
+ */
+final class EngineOptions {
+	static final int PERSISTENCE_BYTES = 1024 * 1024;
+	private static final int DEFAULT_MAX_INFLIGHT = 10;
+
+	String broker = "localhost";
+	int port = 1883;
+	boolean useTLS;
+	/** Null to generate one. */
+	String clientId;
+	String username;
+	String password;
+	boolean cleanSession = true;
+	int keepAlive = 60;
+	int maxInflight = DEFAULT_MAX_INFLIGHT;
+	boolean filePersistence;
+
+	/** 3 or 4 for MQTT 3.1 / 3.1.1, 5 for MQTT 5; 0 lets the v3 engine negotiate. */
+	int protocolVersion;
+	/** MQTT 5 session expiry in seconds, or -1 for the default. */
+	long sessionExpiry = -1;
+	/** MQTT 5 receive maximum: QoS 1/2 messages the broker may have in flight to us (0 for the default). */
+	int receiveMaximum;
+	/** MQTT 5 topic aliases the broker may use towards us (0 for none). */
+	int topicAliasMaximum;
+
+	// Last Will and Testament (LWT)
+	String willTopic;
+	String willPayload = "";
+	int willQos;
+	boolean willRetain;
+
+	/** Reads the transport fields of the connect options table at index. */
+	static EngineOptions fromLua(LuaState L, int index) {
+		EngineOptions o = new EngineOptions();
+
+		L.getField(index, "broker");
+		o.broker = L.isString(-1) ? L.toString(-1) : o.broker;
+		L.pop(1);
+
+		L.getField(index, "port");
+		o.port = L.isNumber(-1) ? (int)L.toNumber(-1) : o.port;
+		L.pop(1);
+
+		L.getField(index, "useTLS");
+		o.useTLS = L.isBoolean(-1) ? L.toBoolean(-1) : (o.port == 8883);
+		L.pop(1);
+
+		L.getField(index, "clientId");
+		o.clientId = L.isString(-1) ? L.toString(-1) : null;
+		L.pop(1);
+
+		L.getField(index, "username");
+		o.username = L.isString(-1) ? L.toString(-1) : null;
+		L.pop(1);
+
+		L.getField(index, "password");
+		o.password = L.isString(-1) ? L.toString(-1) : null;
+		L.pop(1);
+
+		L.getField(index, "cleanSession");
+		o.cleanSession = !L.isBoolean(-1) || L.toBoolean(-1);
+		L.pop(1);
+
+		L.getField(index, "keepAlive");
+		o.keepAlive = L.isNumber(-1) ? (int)L.toNumber(-1) : o.keepAlive;
+		L.pop(1);
+
+		L.getField(index, "maxInflight");
+		o.maxInflight = L.isNumber(-1) ? Math.max(1, (int)L.toNumber(-1)) : o.maxInflight;
+		L.pop(1);
+
+		L.getField(index, "persistence");
+		o.filePersistence = L.isString(-1) && "file".equals(L.toString(-1));
+		L.pop(1);
+
+		L.getField(index, "protocolVersion");
+		o.protocolVersion = L.isNumber(-1) ? (int)L.toNumber(-1) : 0;
+		L.pop(1);
+
+		L.getField(index, "sessionExpiry");
+		o.sessionExpiry = L.isNumber(-1) ? Math.max(0, (long)L.toNumber(-1)) : -1;
+		L.pop(1);
+
+		L.getField(index, "receiveMaximum");
+		o.receiveMaximum = L.isNumber(-1) ? Math.max(0, (int)L.toNumber(-1)) : 0;
+		L.pop(1);
+
+		L.getField(index, "topicAliasMaximum");
+		o.topicAliasMaximum = L.isNumber(-1) ? Math.max(0, (int)L.toNumber(-1)) : 0;
+		L.pop(1);
+
+		L.getField(index, "will");
+		if (L.isTable(-1)) {
+			L.getField(-1, "topic");
+			o.willTopic = L.isString(-1) ? L.toString(-1) : null;
+			L.pop(1);
+
+			L.getField(-1, "payload");
+			o.willPayload = L.isString(-1) ? L.toString(-1) : "";
+			L.pop(1);
+
+			L.getField(-1, "qos");
+			o.willQos = L.isNumber(-1) ? (int)L.toNumber(-1) : 0;
+			L.pop(1);
+
+			L.getField(-1, "retain");
+			o.willRetain = L.isBoolean(-1) && L.toBoolean(-1);
+			L.pop(1);
+		}
+		L.pop(1);
+
+		return o;
+	}
+
+	String serverUri() {
+		return (useTLS ? "ssl" : "tcp") + "://" + broker + ":" + port;
+	}
+
+	/** Creates the Paho engine for the requested protocol version. */
+	static final MqttEngine.Factory PAHO = new MqttEngine.Factory() {
+		@Override
+		public MqttEngine newEngine(EngineOptions o, File storageDir, MqttEngine.Callback callback) throws EngineException {
+			if (o.protocolVersion == 5) {
+				return new PahoV5Engine(o, storageDir, callback);
+			}
+			return new PahoV3Engine(o, storageDir, callback);
+		}
+	};
+}
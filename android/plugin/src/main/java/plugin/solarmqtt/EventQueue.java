@@ -0,0 +1,154 @@
+//
+//  EventQueue.java
+//  SolarMQTT Plugin for Solar2D
+//
+//  Copyright (c) 2026 Platopus Systems. All rights reserved.
+//
+
+package plugin.solarmqtt;
+
+import com.naef.jnlua.LuaState;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Ring of pre-allocated EventRecords with many producers (Paho, timer and
+ * runtime threads) and one consumer: this task, which drains the ring on the
+ * runtime thread. A producer claims the next slot, fills the record in place
+ * and publishes it; the task is only posted when it is not already pending.
+ *
+ * When the ring is full, records are queued behind it, so events are never
+ * dropped and stay in order. Messages on priority="high" subscriptions go to
+ * a separate urgent lane, dispatched before anything still waiting in the
+ * ring, so a command is not stuck behind a burst of telemetry. Records for
+ * both come from a small pool of spares, refilled as they are dispatched.
+ *
+ * Queueing and dispatching an event therefore allocates nothing once the
+ * pool has warmed up. What the event carries still can: a message event
+ * holds the InboundMessage built on the Paho thread, and stats, resume and
+ * handler-release work is posted as its own task, as it is infrequent.
+ */
+final class EventQueue implements RuntimeTask {
+	private static final int CAPACITY = 512; // power of two
+	private static final int MAX_SPARES = 64;
+
+	private final MqttClientHandle client;
+	private final EventRecord[] ring = new EventRecord[CAPACITY];
+	private final ArrayDeque<EventRecord> overflow = new ArrayDeque<EventRecord>();
+	private final ArrayDeque<EventRecord> urgent = new ArrayDeque<EventRecord>();
+	private final ArrayDeque<EventRecord> spares = new ArrayDeque<EventRecord>();
+	private final AtomicBoolean scheduled = new AtomicBoolean();
+
+	// Guarded by `this`
+	private long head; // next slot to consume
+	private long tail; // next slot to claim
+
+	EventQueue(MqttClientHandle client) {
+		this.client = client;
+		for (int i = 0; i < CAPACITY; i++) {
+			ring[i] = new EventRecord();
+		}
+	}
+
+	/** Claims a record for an event; fill it, then pass it to publish(). */
+	EventRecord claim(byte kind, String name, int ref, boolean releaseRef) {
+		EventRecord record;
+		synchronized (this) {
+			if (overflow.isEmpty() && tail - head < CAPACITY) {
+				record = ring[(int)(tail++ & (CAPACITY - 1))];
+			} else {
+				record = spare();
+				overflow.addLast(record);
+			}
+		}
+		record.reset(kind, name, ref, releaseRef);
+		return record;
+	}
+
+	/** Claims a record dispatched ahead of the events already queued in the ring. */
+	EventRecord claimUrgent(byte kind, String name, int ref, boolean releaseRef) {
+		EventRecord record;
+		synchronized (this) {
+			record = spare();
+			urgent.addLast(record);
+		}
+		record.reset(kind, name, ref, releaseRef);
+		return record;
+	}
+
+	void publish(EventRecord record) {
+		record.ready = true;
+		schedule();
+	}
+
+	/** Events claimed but not yet dispatched. */
+	synchronized int size() {
+		return (int)(tail - head) + overflow.size() + urgent.size();
+	}
+
+	// ========================================================================
+	// Runtime thread
+	// ========================================================================
+
+	@Override
+	public void run(LuaState L) {
+		// Dispatch what was queued when the frame started; later events wait for
+		// the next run, so a flood cannot hold up the frame indefinitely
+		int budget = size();
+		while (budget-- > 0) {
+			EventRecord record = next();
+			if (record == null) break;
+			try {
+				client.dispatch(L, record);
+			} finally {
+				consumed(record);
+			}
+		}
+
+		// Let producers schedule again, then pick up anything published meanwhile
+		scheduled.set(false);
+		if (next() != null) {
+			schedule();
+		}
+	}
+
+	/** Posts this task unless it is already pending. */
+	private void schedule() {
+		if (scheduled.compareAndSet(false, true) && !client.bridge.send(this)) {
+			// No runtime took it: the next publish must try again, or the queue would stall for good
+			scheduled.set(false);
+		}
+	}
+
+	/** The oldest published urgent record, else the oldest published record, or null if none is ready. */
+	private synchronized EventRecord next() {
+		EventRecord first = urgent.peekFirst();
+		if (first != null && first.ready) return first;
+		EventRecord record = head < tail ? ring[(int)(head & (CAPACITY - 1))] : overflow.peekFirst();
+		return record != null && record.ready ? record : null;
+	}
+
+	private synchronized void consumed(EventRecord record) {
+		if (head < tail && record == ring[(int)(head & (CAPACITY - 1))]) {
+			record.clear();
+			head++;
+			return;
+		}
+		if (record == urgent.peekFirst()) {
+			urgent.pollFirst();
+		} else {
+			overflow.pollFirst();
+		}
+		record.clear();
+		if (spares.size() < MAX_SPARES) {
+			spares.addLast(record);
+		}
+	}
+
+	/** A free record for the overflow or urgent lane. Holds `this`. */
+	private EventRecord spare() {
+		EventRecord record = spares.pollFirst();
+		return record != null ? record : new EventRecord();
+	}
+}
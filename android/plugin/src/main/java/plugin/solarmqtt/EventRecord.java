@@ -0,0 +1,140 @@
+//
+//  EventRecord.java
+//  SolarMQTT Plugin for Solar2D
+//
+//  Copyright (c) 2026 Platopus Systems. All rights reserved.
+//
+
+package plugin.solarmqtt;
+
+import com.ansca.corona.CoronaLua;
+import com.naef.jnlua.LuaState;
+
+/**
+ * One pending Lua event: a name, the listener to call and a few typed fields.
+ * Records live in EventQueue slots and are refilled in place, so posting an
+ * event does not allocate a task or closure.
+ */
+final class EventRecord {
+	static final byte KIND_FIELDS = 0;
+	static final byte KIND_MESSAGE = 1;
+	static final byte KIND_SUBSCRIBED_MANY = 2;
+	static final byte KIND_UNSUBSCRIBED_MANY = 3;
+
+	private static final int MAX_FIELDS = 6;
+	private static final byte TYPE_STRING = 0;
+	private static final byte TYPE_INTEGER = 1;
+	private static final byte TYPE_NUMBER = 2;
+	private static final byte TYPE_BOOLEAN = 3;
+
+	byte kind;
+	String name;
+	/** Listener ref, or REFNIL for the client listener. */
+	int ref;
+	/** Delete `ref` after dispatch (one-shot per-operation callbacks). */
+	boolean releaseRef;
+	/** The InboundMessage, or the topic array of the *Many kinds. */
+	Object object;
+	int[] grantedQos;
+	/** System.nanoTime() when posted, if stats are on. */
+	long postedAt;
+	volatile boolean ready;
+
+	private final String[] keys = new String[MAX_FIELDS];
+	private final byte[] types = new byte[MAX_FIELDS];
+	private final String[] strings = new String[MAX_FIELDS];
+	private final double[] numbers = new double[MAX_FIELDS];
+	private int fieldCount;
+
+	EventRecord string(String key, String value) {
+		strings[add(key, TYPE_STRING)] = value;
+		return this;
+	}
+
+	EventRecord integer(String key, int value) {
+		numbers[add(key, TYPE_INTEGER)] = value;
+		return this;
+	}
+
+	EventRecord number(String key, double value) {
+		numbers[add(key, TYPE_NUMBER)] = value;
+		return this;
+	}
+
+	EventRecord bool(String key, boolean value) {
+		numbers[add(key, TYPE_BOOLEAN)] = value ? 1 : 0;
+		return this;
+	}
+
+	/** Sets the fields on the event table at the top of the stack. */
+	void pushFields(LuaState L) {
+		for (int i = 0; i < fieldCount; i++) {
+			switch (types[i]) {
+				case TYPE_STRING:
+					L.pushString(strings[i]);
+					break;
+				case TYPE_INTEGER:
+					L.pushInteger((int)numbers[i]);
+					break;
+				case TYPE_NUMBER:
+					L.pushNumber(numbers[i]);
+					break;
+				default:
+					L.pushBoolean(numbers[i] != 0);
+					break;
+			}
+			L.setField(-2, keys[i]);
+		}
+
+		if (kind == KIND_SUBSCRIBED_MANY) {
+			String[] topics = (String[])object;
+			L.newTable(topics.length, 0);
+			for (int i = 0; i < topics.length; i++) {
+				L.newTable(0, 3);
+				L.pushString(topics[i]);
+				L.setField(-2, "topic");
+				L.pushInteger(grantedQos[i]);
+				L.setField(-2, "grantedQos");
+				L.pushBoolean(grantedQos[i] == MqttClientHandle.SUBACK_FAILURE);
+				L.setField(-2, "isError");
+				L.rawSet(-2, i + 1);
+			}
+			L.setField(-2, "results");
+		} else if (kind == KIND_UNSUBSCRIBED_MANY) {
+			String[] topics = (String[])object;
+			L.newTable(topics.length, 0);
+			for (int i = 0; i < topics.length; i++) {
+				L.pushString(topics[i]);
+				L.rawSet(-2, i + 1);
+			}
+			L.setField(-2, "topics");
+		}
+	}
+
+	void reset(byte kind, String name, int ref, boolean releaseRef) {
+		this.kind = kind;
+		this.name = name;
+		this.ref = ref;
+		this.releaseRef = releaseRef;
+	}
+
+	/** Drops references so a recycled slot does not keep payloads alive. */
+	void clear() {
+		ready = false;
+		name = null;
+		ref = CoronaLua.REFNIL;
+		object = null;
+		grantedQos = null;
+		for (int i = 0; i < fieldCount; i++) {
+			strings[i] = null;
+		}
+		fieldCount = 0;
+	}
+
+	private int add(String key, byte type) {
+		int i = fieldCount++;
+		keys[i] = key;
+		types[i] = type;
+		return i;
+	}
+}
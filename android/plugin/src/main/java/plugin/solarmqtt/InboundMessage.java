@@ -0,0 +1,78 @@
+//
+//  InboundMessage.java
+//  SolarMQTT Plugin for Solar2D
+//
+//  Copyright (c) 2026 Platopus Systems. All rights reserved.
+//
+
+package plugin.solarmqtt;
+
+import com.naef.jnlua.LuaState;
+
+import java.nio.charset.Charset;
+import java.util.List;
+
+/**
+ * A message received from the broker, captured on the Paho callback thread (or
+ * a worker lane) and converted to Lua values on the Corona runtime thread.
+ */
+final class InboundMessage {
+	static final Charset UTF8 = Charset.forName("UTF-8");
+
+	final String topic;
+	final byte[] payload;
+	final int qos;
+	final boolean retained;
+	final boolean binary;
+	final boolean conflate; // only the newest message per topic needs delivering
+	final List<Subscription> handlers; // matching subscriptions with an onMessage handler, or null
+	final long receivedAt; // System.nanoTime() on arrival when stats are on, else 0
+	final Object decoded; // JsonCodec tree for decode="json" subscriptions, or null
+	final String decodeError; // why a decode="json" payload could not be parsed, or null
+	final boolean highPriority; // dispatched ahead of queued normal events
+	final RateLimiter rateLimit; // bucket of a matching rateLimit subscription, or null
+
+	InboundMessage(String topic, byte[] payload, int qos, boolean retained, boolean binary,
+			boolean conflate, List<Subscription> handlers, long receivedAt, Object decoded, String decodeError,
+			boolean highPriority, RateLimiter rateLimit) {
+		this.topic = topic;
+		this.payload = payload;
+		this.qos = qos;
+		this.retained = retained;
+		this.binary = binary;
+		this.conflate = conflate;
+		this.handlers = handlers;
+		this.receivedAt = receivedAt;
+		this.decoded = decoded;
+		this.decodeError = decodeError;
+		this.highPriority = highPriority;
+		this.rateLimit = rateLimit;
+	}
+
+	/**
+	 * Sets topic/payload/qos/retained on the table at the top of the stack.
+	 * A decoded JSON payload is built straight into a Lua table; one that
+	 * failed to parse is delivered as a string alongside decodeError.
+	 */
+	void pushFields(LuaState L) {
+		L.pushString(topic);
+		L.setField(-2, "topic");
+		if (decoded != null) {
+			JsonCodec.push(L, decoded);
+		} else if (binary) {
+			// Raw bytes become a Lua string as-is, no charset decoding
+			L.pushByteArray(payload);
+		} else {
+			L.pushString(new String(payload, UTF8));
+		}
+		L.setField(-2, "payload");
+		if (decodeError != null) {
+			L.pushString(decodeError);
+			L.setField(-2, "decodeError");
+		}
+		L.pushInteger(qos);
+		L.setField(-2, "qos");
+		L.pushBoolean(retained);
+		L.setField(-2, "retained");
+	}
+}
@@ -0,0 +1,402 @@
+//
+//  JsonCodec.java
+//  SolarMQTT Plugin for Solar2D
+//
+//  Copyright (c) 2026 Platopus Systems. All rights reserved.
+//
+
+package plugin.solarmqtt;
+
+import com.naef.jnlua.LuaState;
+import com.naef.jnlua.LuaType;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+
+/**
+ * JSON payloads to and from Lua tables without going through a Lua string.
+ *
+ * parse() reads UTF-8 bytes in one pass on the Paho thread into a light tree
+ * (Double, String, Boolean, NULL, ArrayList for arrays, JsonObject for
+ * objects); push() turns that tree into Lua tables on the runtime thread.
+ * encode() serializes a Lua table for publishing.
+ *
+ * JSON null becomes nil, so it drops out of objects and leaves a hole in
+ * arrays. Numbers are Lua numbers (doubles).
+ */
+final class JsonCodec {
+	/** JSON null in a parsed tree. */
+	static final Object NULL = new Object();
+
+	private static final int MAX_DEPTH = 128;
+
+	/** A parsed JSON object: keys and values, alternating. */
+	static final class JsonObject extends ArrayList<Object> {
+		private static final long serialVersionUID = 1L;
+
+		int fieldCount() {
+			return size() / 2;
+		}
+	}
+
+	private JsonCodec() {
+	}
+
+	// ========================================================================
+	// Decoding
+	// ========================================================================
+
+	/** Parses a UTF-8 JSON document. */
+	static Object parse(byte[] json) throws ParseException {
+		Parser p = new Parser(json);
+		p.skipSpace();
+		Object value = p.value(0);
+		p.skipSpace();
+		if (p.pos != json.length) {
+			throw new ParseException("Unexpected data after JSON value", p.pos);
+		}
+		return value;
+	}
+
+	/** Pushes a parsed value onto the Lua stack. */
+	static void push(LuaState L, Object value) {
+		if (value instanceof Double) {
+			L.pushNumber((Double)value);
+		} else if (value instanceof String) {
+			L.pushString((String)value);
+		} else if (value instanceof Boolean) {
+			L.pushBoolean((Boolean)value);
+		} else if (value instanceof JsonObject) {
+			JsonObject object = (JsonObject)value;
+			L.newTable(0, object.fieldCount());
+			for (int i = 0; i < object.size(); i += 2) {
+				Object field = object.get(i + 1);
+				if (field == NULL) continue;
+				push(L, field);
+				L.setField(-2, (String)object.get(i));
+			}
+		} else if (value instanceof ArrayList) {
+			ArrayList<?> array = (ArrayList<?>)value;
+			L.newTable(array.size(), 0);
+			for (int i = 0; i < array.size(); i++) {
+				Object element = array.get(i);
+				if (element == NULL) continue;
+				push(L, element);
+				L.rawSet(-2, i + 1);
+			}
+		} else {
+			L.pushNil();
+		}
+	}
+
+	private static final class Parser {
+		final byte[] in;
+		int pos;
+
+		Parser(byte[] in) {
+			this.in = in;
+		}
+
+		Object value(int depth) throws ParseException {
+			if (depth > MAX_DEPTH) throw new ParseException("JSON nested too deeply", pos);
+			if (pos >= in.length) throw new ParseException("Unexpected end of JSON", pos);
+			switch (in[pos]) {
+				case '{': return object(depth);
+				case '[': return array(depth);
+				case '"': return string();
+				case 't': literal("true"); return Boolean.TRUE;
+				case 'f': literal("false"); return Boolean.FALSE;
+				case 'n': literal("null"); return NULL;
+				default: return number();
+			}
+		}
+
+		JsonObject object(int depth) throws ParseException {
+			JsonObject object = new JsonObject();
+			pos++;
+			skipSpace();
+			if (peek() == '}') {
+				pos++;
+				return object;
+			}
+			while (true) {
+				skipSpace();
+				if (peek() != '"') throw new ParseException("Expected object key", pos);
+				object.add(string());
+				skipSpace();
+				expect(':');
+				skipSpace();
+				object.add(value(depth + 1));
+				skipSpace();
+				if (peek() == ',') {
+					pos++;
+				} else {
+					expect('}');
+					return object;
+				}
+			}
+		}
+
+		ArrayList<Object> array(int depth) throws ParseException {
+			ArrayList<Object> array = new ArrayList<Object>();
+			pos++;
+			skipSpace();
+			if (peek() == ']') {
+				pos++;
+				return array;
+			}
+			while (true) {
+				skipSpace();
+				array.add(value(depth + 1));
+				skipSpace();
+				if (peek() == ',') {
+					pos++;
+				} else {
+					expect(']');
+					return array;
+				}
+			}
+		}
+
+		String string() throws ParseException {
+			int start = ++pos;
+			// Fast path: no escapes, decode the UTF-8 run directly
+			while (pos < in.length && in[pos] != '"' && in[pos] != '\\') pos++;
+			if (pos < in.length && in[pos] == '"') {
+				return new String(in, start, pos++ - start, InboundMessage.UTF8);
+			}
+
+			StringBuilder sb = new StringBuilder(new String(in, start, pos - start, InboundMessage.UTF8));
+			int run = pos;
+			while (true) {
+				if (pos >= in.length) throw new ParseException("Unterminated string", start);
+				byte b = in[pos];
+				if (b == '"') {
+					sb.append(new String(in, run, pos++ - run, InboundMessage.UTF8));
+					return sb.toString();
+				}
+				if (b != '\\') {
+					pos++;
+					continue;
+				}
+				sb.append(new String(in, run, pos - run, InboundMessage.UTF8));
+				if (++pos >= in.length) throw new ParseException("Unterminated string", start);
+				char c = (char)in[pos++];
+				switch (c) {
+					case '"': case '\\': case '/': sb.append(c); break;
+					case 'b': sb.append('\b'); break;
+					case 'f': sb.append('\f'); break;
+					case 'n': sb.append('\n'); break;
+					case 'r': sb.append('\r'); break;
+					case 't': sb.append('\t'); break;
+					case 'u':
+						if (pos + 4 > in.length) throw new ParseException("Bad unicode escape", pos);
+						try {
+							sb.append((char)Integer.parseInt(new String(in, pos, 4, InboundMessage.UTF8), 16));
+						} catch (NumberFormatException e) {
+							throw new ParseException("Bad unicode escape", pos);
+						}
+						pos += 4;
+						break;
+					default:
+						throw new ParseException("Bad escape \\" + c, pos - 1);
+				}
+				run = pos;
+			}
+		}
+
+		/** A number per the JSON grammar: -?(0|[1-9][0-9]*)(.[0-9]+)?([eE][+-]?[0-9]+)? */
+		Double number() throws ParseException {
+			int start = pos;
+			if (peek() == '-') pos++;
+			long whole = 0;
+			int digits = 0;
+			if (peek() == '0') {
+				pos++;
+				digits = 1;
+				if (isDigit(peek())) throw new ParseException("Bad number: leading zero", start);
+			} else {
+				while (isDigit(peek())) {
+					whole = whole * 10 + (in[pos++] - '0');
+					digits++;
+				}
+			}
+			if (digits == 0) {
+				throw new ParseException(pos > start ? "Bad number: no digits after '-'" : "Unexpected character", start);
+			}
+			boolean integral = true;
+			if (peek() == '.') {
+				integral = false;
+				pos++;
+				if (skipDigits() == 0) throw new ParseException("Bad number: no digits after '.'", start);
+			}
+			if (peek() == 'e' || peek() == 'E') {
+				integral = false;
+				pos++;
+				if (peek() == '+' || peek() == '-') pos++;
+				if (skipDigits() == 0) throw new ParseException("Bad number: no digits in exponent", start);
+			}
+			if (integral && digits <= 15) {
+				return Double.valueOf(in[start] == '-' ? -(double)whole : whole);
+			}
+			try {
+				return Double.valueOf(new String(in, start, pos - start, InboundMessage.UTF8));
+			} catch (NumberFormatException e) {
+				throw new ParseException("Bad number", start);
+			}
+		}
+
+		/** Skips a run of digits; returns how many. */
+		int skipDigits() {
+			int from = pos;
+			while (isDigit(peek())) pos++;
+			return pos - from;
+		}
+
+		static boolean isDigit(int c) {
+			return c >= '0' && c <= '9';
+		}
+
+		void literal(String word) throws ParseException {
+			for (int i = 0; i < word.length(); i++) {
+				if (pos + i >= in.length || in[pos + i] != word.charAt(i)) {
+					throw new ParseException("Unexpected character", pos);
+				}
+			}
+			pos += word.length();
+		}
+
+		void expect(char c) throws ParseException {
+			if (peek() != c) throw new ParseException("Expected '" + c + "'", pos);
+			pos++;
+		}
+
+		int peek() {
+			return pos < in.length ? in[pos] : -1;
+		}
+
+		void skipSpace() {
+			while (pos < in.length) {
+				byte b = in[pos];
+				if (b != ' ' && b != '\t' && b != '\n' && b != '\r') return;
+				pos++;
+			}
+		}
+	}
+
+	// ========================================================================
+	// Encoding
+	// ========================================================================
+
+	/**
+	 * Serializes the Lua value at index as UTF-8 JSON. Tables with keys 1..n
+	 * become arrays (an empty table becomes []), other tables objects. Throws
+	 * IllegalArgumentException for values JSON cannot hold.
+	 */
+	static byte[] encode(LuaState L, int index) {
+		StringBuilder sb = new StringBuilder(256);
+		write(L, L.absIndex(index), sb, 0);
+		return sb.toString().getBytes(InboundMessage.UTF8);
+	}
+
+	private static void write(LuaState L, int index, StringBuilder sb, int depth) {
+		LuaType type = L.type(index);
+		if (type == LuaType.NIL) {
+			sb.append("null");
+		} else if (type == LuaType.BOOLEAN) {
+			sb.append(L.toBoolean(index));
+		} else if (type == LuaType.NUMBER) {
+			writeNumber(L.toNumber(index), sb);
+		} else if (type == LuaType.STRING) {
+			writeString(L.toString(index), sb);
+		} else if (type == LuaType.TABLE) {
+			if (depth > MAX_DEPTH) throw new IllegalArgumentException("table nested too deeply (or contains a cycle) for JSON");
+			int length = L.length(index);
+			if (isArray(L, index, length)) {
+				sb.append('[');
+				for (int i = 1; i <= length; i++) {
+					if (i > 1) sb.append(',');
+					L.rawGet(index, i);
+					write(L, L.getTop(), sb, depth + 1);
+					L.pop(1);
+				}
+				sb.append(']');
+			} else {
+				sb.append('{');
+				boolean first = true;
+				L.pushNil();
+				while (L.next(index)) {
+					// Copy the key so converting a number key does not confuse next()
+					L.pushValue(-2);
+					String key = keyString(L, -1);
+					L.pop(1);
+					if (!first) sb.append(',');
+					first = false;
+					writeString(key, sb);
+					sb.append(':');
+					write(L, L.getTop(), sb, depth + 1);
+					L.pop(1);
+				}
+				sb.append('}');
+			}
+		} else {
+			throw new IllegalArgumentException("cannot encode a " + type + " value as JSON");
+		}
+	}
+
+	/** Whether a table has exactly the keys 1..length. */
+	private static boolean isArray(LuaState L, int index, int length) {
+		int count = 0;
+		L.pushNil();
+		while (L.next(index)) {
+			count++;
+			L.pop(1);
+		}
+		return count == length;
+	}
+
+	private static String keyString(LuaState L, int index) {
+		LuaType type = L.type(index);
+		if (type == LuaType.STRING) return L.toString(index);
+		if (type == LuaType.NUMBER) {
+			StringBuilder sb = new StringBuilder();
+			writeNumber(L.toNumber(index), sb);
+			return sb.toString();
+		}
+		throw new IllegalArgumentException("cannot encode a table with " + type + " keys as JSON");
+	}
+
+	private static void writeNumber(double d, StringBuilder sb) {
+		if (Double.isNaN(d) || Double.isInfinite(d)) {
+			throw new IllegalArgumentException("cannot encode " + d + " as JSON");
+		}
+		if (d == Math.rint(d) && Math.abs(d) < 1e15) {
+			sb.append((long)d);
+		} else {
+			sb.append(d);
+		}
+	}
+
+	private static void writeString(String s, StringBuilder sb) {
+		sb.append('"');
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			switch (c) {
+				case '"': sb.append("\\\""); break;
+				case '\\': sb.append("\\\\"); break;
+				case '\n': sb.append("\\n"); break;
+				case '\r': sb.append("\\r"); break;
+				case '\t': sb.append("\\t"); break;
+				case '\b': sb.append("\\b"); break;
+				case '\f': sb.append("\\f"); break;
+				default:
+					if (c < 0x20) {
+						sb.append(String.format("\\u%04x", (int)c));
+					} else {
+						sb.append(c);
+					}
+			}
+		}
+		sb.append('"');
+	}
+}
@@ -0,0 +1,173 @@
+//
+//  LastValueCache.java
+//  SolarMQTT Plugin for Solar2D
+//
+//  Copyright (c) 2026 Platopus Systems. All rights reserved.
+//
+
+package plugin.solarmqtt;
+
+import com.naef.jnlua.LuaState;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * The newest message per topic, retained or not, so Lua can read the current
+ * state of a topic without waiting for the broker. Bounded by a byte budget;
+ * the least recently read or updated topic is evicted first.
+ *
+ * Messages are stored as routed, so a cached decode="json" payload comes back
+ * as a table. Written on the Paho thread (or a worker lane), read on the
+ * runtime thread.
+ */
+final class LastValueCache {
+	static final int DEFAULT_MAX_BYTES = 1024 * 1024;
+	/** Rough per-entry cost of the map entry, message and topic objects. */
+	private static final int ENTRY_OVERHEAD = 96;
+
+	private final int maxBytes;
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(64, 0.75f, true);
+
+	// Guarded by `this`
+	private long bytes;
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	private static final class Entry {
+		final InboundMessage message;
+		final long cachedAt = System.nanoTime();
+		final int size;
+
+		Entry(InboundMessage message) {
+			this.message = message;
+			// A parsed JSON tree is kept next to its text and takes about twice the
+			// space, so a decoded entry is charged three times its payload
+			int payloadBytes = message.decoded != null ? message.payload.length * 3 : message.payload.length;
+			this.size = ENTRY_OVERHEAD + message.topic.length() * 2 + payloadBytes;
+		}
+	}
+
+	LastValueCache(int maxBytes) {
+		this.maxBytes = Math.max(0, maxBytes);
+	}
+
+	/**
+	 * Reads the cache field of the connect options table at index: true, or
+	 * { maxBytes= }. Returns null when caching is off.
+	 */
+	static LastValueCache fromLua(LuaState L, int index) {
+		LastValueCache cache = null;
+		L.getField(index, "cache");
+		if (L.isTable(-1)) {
+			L.getField(-1, "maxBytes");
+			int maxBytes = L.isNumber(-1) ? (int)L.toNumber(-1) : DEFAULT_MAX_BYTES;
+			L.pop(1);
+			cache = new LastValueCache(maxBytes);
+		} else if (L.isBoolean(-1) && L.toBoolean(-1)) {
+			cache = new LastValueCache(DEFAULT_MAX_BYTES);
+		}
+		L.pop(1);
+		return cache;
+	}
+
+	/** Keeps a message as the newest for its topic, evicting the least recently used topics to fit. */
+	synchronized void put(InboundMessage message) {
+		Entry entry = new Entry(message);
+		Entry previous = entries.remove(message.topic);
+		if (previous != null) {
+			bytes -= previous.size;
+		}
+		if (entry.size > maxBytes) return;
+		entries.put(message.topic, entry);
+		bytes += entry.size;
+
+		Iterator<Entry> eldest = entries.values().iterator();
+		while (bytes > maxBytes && eldest.hasNext()) {
+			bytes -= eldest.next().size;
+			eldest.remove();
+			evictions++;
+		}
+	}
+
+	/**
+	 * Pushes the cached message for a topic, or a (possibly empty) array of
+	 * the messages for all topics matching a filter with wildcards. A topic
+	 * with nothing cached pushes nil. Runtime thread.
+	 */
+	void push(LuaState L, String topicOrFilter) {
+		boolean wildcard = topicOrFilter.indexOf('+') >= 0 || topicOrFilter.indexOf('#') >= 0;
+		long now = System.nanoTime();
+
+		if (!wildcard) {
+			Entry entry;
+			synchronized (this) {
+				entry = entries.get(topicOrFilter);
+				if (entry != null) hits++; else misses++;
+			}
+			if (entry == null) {
+				L.pushNil();
+			} else {
+				pushEntry(L, entry, now);
+			}
+			return;
+		}
+
+		List<Entry> found = new ArrayList<Entry>();
+		synchronized (this) {
+			for (Entry entry : entries.values()) {
+				if (TopicRouter.matches(topicOrFilter, entry.message.topic)) {
+					found.add(entry);
+				}
+			}
+			// Touch the matches so a screen reading a filter keeps its topics cached
+			for (Entry entry : found) {
+				entries.get(entry.message.topic);
+			}
+			if (found.isEmpty()) misses++; else hits++;
+		}
+		L.newTable(found.size(), 0);
+		for (int i = 0; i < found.size(); i++) {
+			pushEntry(L, found.get(i), now);
+			L.rawSet(-2, i + 1);
+		}
+	}
+
+	/** Sets a table of the cache counters at the given field of the table at the top of the stack. */
+	void pushStats(LuaState L, String field) {
+		int count;
+		long size;
+		long hitCount;
+		long missCount;
+		long evictionCount;
+		synchronized (this) {
+			count = entries.size();
+			size = bytes;
+			hitCount = hits;
+			missCount = misses;
+			evictionCount = evictions;
+		}
+		L.newTable(0, 5);
+		L.pushInteger(count);
+		L.setField(-2, "entries");
+		L.pushNumber(size);
+		L.setField(-2, "bytes");
+		L.pushNumber(hitCount);
+		L.setField(-2, "hits");
+		L.pushNumber(missCount);
+		L.setField(-2, "misses");
+		L.pushNumber(evictionCount);
+		L.setField(-2, "evictions");
+		L.setField(-2, field);
+	}
+
+	private static void pushEntry(LuaState L, Entry entry, long now) {
+		L.newTable(0, 5);
+		entry.message.pushFields(L);
+		L.pushNumber((now - entry.cachedAt) / 1e6);
+		L.setField(-2, "ageMs");
+	}
+}
@@ -0,0 +1,104 @@
+//
+//  LatencyHistogram.java
+//  SolarMQTT Plugin for Solar2D
+//
+//  Copyright (c) 2026 Platopus Systems. All rights reserved.
+//
+
+package plugin.solarmqtt;
+
+import com.naef.jnlua.LuaState;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram with log-linear buckets in microseconds, in the
+ * style of HdrHistogram: values below 64 us get one bucket each, and every
+ * power of two above that is split into 32 buckets, so percentiles are
+ * accurate to about 3% from 1 us up to 38 hours. Recording is a couple of
+ * atomic adds and never allocates.
+ */
+final class LatencyHistogram {
+	private static final int SUB_BITS = 6;
+	private static final int SUB_COUNT = 1 << SUB_BITS;
+	private static final int HALF_COUNT = SUB_COUNT / 2;
+	private static final int MAX_BIT = 37;
+	private static final long MAX_VALUE = (1L << MAX_BIT) - 1;
+	private static final int BUCKETS = SUB_COUNT + (MAX_BIT - SUB_BITS) * HALF_COUNT;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong sumMicros = new AtomicLong();
+	private final AtomicLong maxMicros = new AtomicLong();
+
+	/** Records a duration measured with System.nanoTime(). */
+	void record(long nanos) {
+		long micros = Math.min(MAX_VALUE, Math.max(0, nanos / 1000));
+		counts.incrementAndGet(indexFor(micros));
+		count.incrementAndGet();
+		sumMicros.addAndGet(micros);
+		long max;
+		while (micros > (max = maxMicros.get()) && !maxMicros.compareAndSet(max, micros)) {
+			// retry
+		}
+	}
+
+	long count() {
+		return count.get();
+	}
+
+	/** Upper bound in microseconds of the bucket holding the given fraction (0..1) of recorded values. */
+	long percentileMicros(double fraction) {
+		long total = count.get();
+		if (total == 0) return 0;
+		long target = Math.max(1, (long)Math.ceil(fraction * total));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts.get(i);
+			if (seen >= target) {
+				return Math.min(highestValueFor(i), maxMicros.get());
+			}
+		}
+		return maxMicros.get();
+	}
+
+	/** Pushes { count=, mean=, p50=, p90=, p99=, p999=, max= } with times in milliseconds. */
+	void push(LuaState L) {
+		long total = count.get();
+		L.newTable(0, 7);
+		L.pushInteger((int)Math.min(Integer.MAX_VALUE, total));
+		L.setField(-2, "count");
+		L.pushNumber(total > 0 ? sumMicros.get() / 1000.0 / total : 0);
+		L.setField(-2, "mean");
+		L.pushNumber(percentileMicros(0.5) / 1000.0);
+		L.setField(-2, "p50");
+		L.pushNumber(percentileMicros(0.9) / 1000.0);
+		L.setField(-2, "p90");
+		L.pushNumber(percentileMicros(0.99) / 1000.0);
+		L.setField(-2, "p99");
+		L.pushNumber(percentileMicros(0.999) / 1000.0);
+		L.setField(-2, "p999");
+		L.pushNumber(maxMicros.get() / 1000.0);
+		L.setField(-2, "max");
+	}
+
+	// ========================================================================
+	// Bucket layout
+	// ========================================================================
+
+	static int indexFor(long micros) {
+		if (micros < SUB_COUNT) return (int)micros;
+		int shift = (63 - Long.numberOfLeadingZeros(micros)) - SUB_BITS + 1;
+		int top = (int)(micros >>> shift); // HALF_COUNT..SUB_COUNT-1
+		return SUB_COUNT + (shift - 1) * HALF_COUNT + (top - HALF_COUNT);
+	}
+
+	static long highestValueFor(int index) {
+		if (index < SUB_COUNT) return index;
+		int k = index - SUB_COUNT;
+		int shift = k / HALF_COUNT + 1;
+		long top = k % HALF_COUNT + HALF_COUNT;
+		return ((top + 1) << shift) - 1;
+	}
+}
@@ -7,43 +7,34 @@
 
 package plugin.solarmqtt;
 
-import android.util.Log;
-
-import com.ansca.corona.CoronaActivity;
 import com.ansca.corona.CoronaEnvironment;
 import com.ansca.corona.CoronaLua;
 import com.ansca.corona.CoronaRuntime;
 import com.ansca.corona.CoronaRuntimeListener;
-import com.ansca.corona.CoronaRuntimeTask;
 import com.naef.jnlua.JavaFunction;
 import com.naef.jnlua.LuaState;
 import com.naef.jnlua.NamedJavaFunction;
 
-import org.eclipse.paho.client.mqttv3.IMqttActionListener;
-import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
-import org.eclipse.paho.client.mqttv3.IMqttToken;
-import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
-import org.eclipse.paho.client.mqttv3.MqttCallbackExtended;
-import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
-import org.eclipse.paho.client.mqttv3.MqttException;
-import org.eclipse.paho.client.mqttv3.MqttMessage;
-import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import java.util.HashMap;
 
 /**
  * MQTT client plugin for Solar2D using Eclipse Paho Java.
- * Single connection model — one MQTT broker connection at a time.
+ * The module functions drive a default connection; mqtt.newClient() creates
+ * additional independent connections.
  */
 @SuppressWarnings("WeakerAccess")
 public class LuaLoader implements JavaFunction, CoronaRuntimeListener {
-	private static final String TAG = "SolarMQTT";
 	private static final String VERSION = "1.3.1";
 
 	public static int fListener;
 	public static final String EVENT_NAME = "pluginsolarmqtt";
 
-	private MqttAsyncClient mqttClient;
-	private int connectCallbackRef = CoronaLua.REFNIL;
-	private int disconnectCallbackRef = CoronaLua.REFNIL;
+	private static final String DEFAULT_CLIENT_ID = "default";
+
+	private final MqttClientHandle defaultClient = new MqttClientHandle(DEFAULT_CLIENT_ID, CoronaLua.REFNIL,
+			CoronaBridge.INSTANCE, EngineOptions.PAHO);
+	private final HashMap<String, MqttClientHandle> clients = new HashMap<String, MqttClientHandle>();
+	private int nextClientNumber = 1;
 
 	@SuppressWarnings("unused")
 	public LuaLoader() {
@@ -60,6 +51,11 @@ public class LuaLoader implements JavaFunction, CoronaRuntimeListener {
 			new SubscribeWrapper(),
 			new UnsubscribeWrapper(),
 			new PublishWrapper(),
+			new SubscribeManyWrapper(),
+			new UnsubscribeManyWrapper(),
+			new NewClientWrapper(),
+			new GetStatsWrapper(),
+			new GetLastWrapper(),
 		};
 		String libName = L.toString(1);
 		L.register(libName, luaFunctions);
@@ -82,25 +78,30 @@ public class LuaLoader implements JavaFunction, CoronaRuntimeListener {
 	public void onStarted(CoronaRuntime runtime) { }
 
 	@Override
-	public void onSuspended(CoronaRuntime runtime) { }
+	public void onSuspended(CoronaRuntime runtime) {
+		defaultClient.suspend();
+		for (MqttClientHandle client : clients.values()) {
+			client.suspend();
+		}
+	}
 
 	@Override
-	public void onResumed(CoronaRuntime runtime) { }
+	public void onResumed(CoronaRuntime runtime) {
+		defaultClient.resume();
+		for (MqttClientHandle client : clients.values()) {
+			client.resume();
+		}
+	}
 
 	@Override
 	public void onExiting(CoronaRuntime runtime) {
-		Log.i(TAG, "onExiting: cleaning up MQTT connection");
-		if (mqttClient != null) {
-			try {
-				if (mqttClient.isConnected()) {
-					mqttClient.disconnect();
-				}
-				mqttClient.close();
-			} catch (Exception e) {
-				Log.e(TAG, "onExiting: Failed to clean up MQTT client", e);
-			}
-			mqttClient = null;
+		MqttLog.i("onExiting: cleaning up MQTT connections");
+		LuaState L = runtime.getLuaState();
+		defaultClient.release(L);
+		for (MqttClientHandle client : clients.values()) {
+			client.release(L);
 		}
+		clients.clear();
 
 		CoronaLua.deleteRef(runtime.getLuaState(), fListener);
 		fListener = CoronaLua.REFNIL;
@@ -110,645 +111,121 @@ public class LuaLoader implements JavaFunction, CoronaRuntimeListener {
 	// Lua functions
 	// ========================================================================
 
-	/** library.init( listener ) */
+	/** library.init( listener [, { logLevel= }] ) */
 	public int init(LuaState L) {
 		int listenerIndex = 1;
 		if (CoronaLua.isListener(L, listenerIndex, EVENT_NAME)) {
 			fListener = CoronaLua.newRef(L, listenerIndex);
 		}
+		if (L.isTable(2)) {
+			readLogLevel(L, 2);
+		}
 		return 0;
 	}
 
-	/** library.connect({ broker=, port=, clientId=, username=, password=, cleanSession=, keepAlive= }) */
+	/** library.connect({ broker=, port=, clientId=, ... }), see MqttClientHandle.connect */
 	public int connect(LuaState L) {
-		CoronaActivity activity = CoronaEnvironment.getCoronaActivity();
-		if (activity == null) return 0;
-
-		if (!L.isTable(1)) {
-			Log.e(TAG, "connect: requires a table argument");
-			return 0;
-		}
-
-		// Read options from Lua table
-		L.getField(1, "broker");
-		String broker = L.isString(-1) ? L.toString(-1) : "localhost";
-		L.pop(1);
-
-		L.getField(1, "port");
-		int port = L.isNumber(-1) ? (int)L.toNumber(-1) : 1883;
-		L.pop(1);
-
-		L.getField(1, "clientId");
-		String clientId = L.isString(-1) ? L.toString(-1) : MqttAsyncClient.generateClientId();
-		L.pop(1);
-
-		L.getField(1, "username");
-		String username = L.isString(-1) ? L.toString(-1) : null;
-		L.pop(1);
-
-		L.getField(1, "password");
-		String password = L.isString(-1) ? L.toString(-1) : null;
-		L.pop(1);
-
-		L.getField(1, "cleanSession");
-		boolean cleanSession = !L.isBoolean(-1) || L.toBoolean(-1);
-		L.pop(1);
-
-		L.getField(1, "keepAlive");
-		int keepAlive = L.isNumber(-1) ? (int)L.toNumber(-1) : 60;
-		L.pop(1);
-
-		L.getField(1, "useTLS");
-		boolean useTLS = L.isBoolean(-1) ? L.toBoolean(-1) : (port == 8883);
-		L.pop(1);
-
-		// Read optional Last Will and Testament (LWT)
-		String willTopic = null;
-		String willPayload = "";
-		int willQos = 0;
-		boolean willRetain = false;
-
-		// Read optional onConnect callback
-		L.getField(1, "onConnect");
-		if (L.isFunction(-1)) {
-			connectCallbackRef = CoronaLua.newRef(L, -1);
-		}
-		L.pop(1);
-
-		L.getField(1, "will");
-		if (L.isTable(-1)) {
-			L.getField(-1, "topic");
-			willTopic = L.isString(-1) ? L.toString(-1) : null;
-			L.pop(1);
-
-			L.getField(-1, "payload");
-			willPayload = L.isString(-1) ? L.toString(-1) : "";
-			L.pop(1);
-
-			L.getField(-1, "qos");
-			willQos = L.isNumber(-1) ? (int)L.toNumber(-1) : 0;
-			L.pop(1);
-
-			L.getField(-1, "retain");
-			willRetain = L.isBoolean(-1) && L.toBoolean(-1);
-			L.pop(1);
-		}
-		L.pop(1);
-
-		final String protocol = useTLS ? "ssl" : "tcp";
-		final String serverUri = protocol + "://" + broker + ":" + port;
-
-		// Clean up existing client
-		if (mqttClient != null) {
-			try {
-				if (mqttClient.isConnected()) {
-					mqttClient.disconnect();
-				}
-				mqttClient.close();
-			} catch (Exception e) {
-				Log.e(TAG, "connect: Failed to clean up old client", e);
-			}
-			mqttClient = null;
-		}
-
-		try {
-			mqttClient = new MqttAsyncClient(serverUri, clientId, new MemoryPersistence());
-
-			mqttClient.setCallback(new MqttCallbackExtended() {
-				@Override
-				public void connectComplete(boolean reconnect, String serverURI) {
-					Log.i(TAG, "Connected to " + serverURI + " (reconnect=" + reconnect + ")");
-					dispatchConnectedEvent(reconnect);
-					// Fire per-op connect callback
-					if (connectCallbackRef != CoronaLua.REFNIL) {
-						final int ref = connectCallbackRef;
-						connectCallbackRef = CoronaLua.REFNIL;
-						dispatchPerOpCallback(ref, "connected", false, null);
-					}
-				}
-
-				@Override
-				public void connectionLost(Throwable cause) {
-					String msg = cause != null ? cause.getMessage() : "Unknown";
-					Log.w(TAG, "Connection lost: " + msg);
-					dispatchDisconnectedEvent(1, msg);
-				}
-
-				@Override
-				public void messageArrived(String topic, MqttMessage message) {
-					Log.d(TAG, "Message on " + topic + ": " + new String(message.getPayload()));
-					dispatchMessageEvent(topic, new String(message.getPayload()),
-						message.getQos(), message.isRetained());
-				}
-
-				@Override
-				public void deliveryComplete(IMqttDeliveryToken token) {
-					// QoS delivery confirmed
-				}
-			});
-
-			MqttConnectOptions options = new MqttConnectOptions();
-			options.setCleanSession(cleanSession);
-			options.setKeepAliveInterval(keepAlive);
-			options.setAutomaticReconnect(false);
-
-			if (username != null) {
-				options.setUserName(username);
-				if (password != null) {
-					options.setPassword(password.toCharArray());
-				}
-			}
-
-			// Set Last Will and Testament (LWT) if provided
-			if (willTopic != null) {
-				options.setWill(willTopic, willPayload.getBytes(), willQos, willRetain);
-				Log.i(TAG, "Will set on topic '" + willTopic + "' qos=" + willQos + " retain=" + willRetain);
-			}
-
-			Log.i(TAG, "Connecting to " + serverUri);
-			mqttClient.connect(options, null, new IMqttActionListener() {
-				@Override
-				public void onSuccess(IMqttToken asyncActionToken) {
-					// connectComplete callback will fire
-				}
-
-				@Override
-				public void onFailure(IMqttToken asyncActionToken, Throwable exception) {
-					String msg = exception != null ? exception.getMessage() : "Connection failed";
-					Log.e(TAG, "Connect failed: " + msg);
-					dispatchErrorEvent(msg);
-					// Fire per-op connect callback with error
-					if (connectCallbackRef != CoronaLua.REFNIL) {
-						final int ref = connectCallbackRef;
-						connectCallbackRef = CoronaLua.REFNIL;
-						dispatchPerOpCallback(ref, "error", true, msg);
-					}
-				}
-			});
-
-		} catch (MqttException e) {
-			Log.e(TAG, "connect: MqttException", e);
-			dispatchErrorEvent(e.getMessage());
-		}
-
-		return 0;
+		return defaultClient.connect(L, 1);
 	}
 
 	/** library.disconnect( [callback] ) */
 	public int disconnect(LuaState L) {
-		// Optional per-operation callback (1st arg)
-		if (L.isFunction(1)) {
-			disconnectCallbackRef = CoronaLua.newRef(L, 1);
-		}
-
-		if (mqttClient != null && mqttClient.isConnected()) {
-			final int disconnectRef = disconnectCallbackRef;
-			disconnectCallbackRef = CoronaLua.REFNIL;
-			try {
-				mqttClient.disconnect(null, new IMqttActionListener() {
-					@Override
-					public void onSuccess(IMqttToken asyncActionToken) {
-						Log.i(TAG, "Disconnected cleanly");
-						dispatchDisconnectedEvent(0, "Clean disconnect");
-						// Fire per-op disconnect callback
-						if (disconnectRef != CoronaLua.REFNIL) {
-							dispatchPerOpDisconnectCallback(disconnectRef, 0, "Clean disconnect");
-						}
-					}
-
-					@Override
-					public void onFailure(IMqttToken asyncActionToken, Throwable exception) {
-						Log.e(TAG, "Disconnect failed", exception);
-						if (disconnectRef != CoronaLua.REFNIL) {
-							dispatchPerOpDisconnectCallback(disconnectRef, 1, exception != null ? exception.getMessage() : "Disconnect failed");
-						}
-					}
-				});
-			} catch (MqttException e) {
-				Log.e(TAG, "disconnect: MqttException", e);
-			}
-		}
-		return 0;
+		return defaultClient.disconnect(L, 1);
 	}
 
-	/** library.subscribe( topic, qos [, callback] ) */
+	/** library.subscribe( topic, qos [, { payloadType=, onMessage= }] [, callback] ) */
 	public int subscribe(LuaState L) {
-		if (mqttClient == null || !mqttClient.isConnected()) {
-			Log.w(TAG, "subscribe: not connected");
-			return 0;
-		}
-
-		final String topic = L.checkString(1);
-		final int qos = L.isNumber(2) ? (int)L.toNumber(2) : 0;
-
-		// Optional per-operation callback (3rd arg)
-		final int callbackRef = L.isFunction(3) ? CoronaLua.newRef(L, 3) : CoronaLua.REFNIL;
-
-		try {
-			mqttClient.subscribe(topic, qos, null, new IMqttActionListener() {
-				@Override
-				public void onSuccess(IMqttToken asyncActionToken) {
-					Log.i(TAG, "Subscribed to " + topic);
-					dispatchSubscribedEvent(topic, qos);
-					// Fire per-op callback
-					if (callbackRef != CoronaLua.REFNIL) {
-						dispatchPerOpSubscribedCallback(callbackRef, topic, qos);
-					}
-				}
-
-				@Override
-				public void onFailure(IMqttToken asyncActionToken, Throwable exception) {
-					Log.e(TAG, "Subscribe failed for " + topic, exception);
-					dispatchErrorEvent("Subscribe failed: " + (exception != null ? exception.getMessage() : "unknown"));
-					if (callbackRef != CoronaLua.REFNIL) {
-						dispatchPerOpCallback(callbackRef, "error", true, "Subscribe failed");
-					}
-				}
-			});
-		} catch (MqttException e) {
-			Log.e(TAG, "subscribe: MqttException", e);
-		}
-
-		return 0;
+		return defaultClient.subscribe(L, 1);
 	}
 
 	/** library.unsubscribe( topic [, callback] ) */
 	public int unsubscribe(LuaState L) {
-		if (mqttClient == null || !mqttClient.isConnected()) {
-			Log.w(TAG, "unsubscribe: not connected");
-			return 0;
-		}
-
-		final String topic = L.checkString(1);
-
-		// Optional per-operation callback (2nd arg)
-		final int callbackRef = L.isFunction(2) ? CoronaLua.newRef(L, 2) : CoronaLua.REFNIL;
-
-		try {
-			mqttClient.unsubscribe(topic, null, new IMqttActionListener() {
-				@Override
-				public void onSuccess(IMqttToken asyncActionToken) {
-					Log.i(TAG, "Unsubscribed from " + topic);
-					dispatchUnsubscribedEvent(topic);
-					// Fire per-op callback
-					if (callbackRef != CoronaLua.REFNIL) {
-						dispatchPerOpUnsubscribedCallback(callbackRef, topic);
-					}
-				}
-
-				@Override
-				public void onFailure(IMqttToken asyncActionToken, Throwable exception) {
-					Log.e(TAG, "Unsubscribe failed for " + topic, exception);
-					dispatchErrorEvent("Unsubscribe failed: " + (exception != null ? exception.getMessage() : "unknown"));
-					if (callbackRef != CoronaLua.REFNIL) {
-						dispatchPerOpCallback(callbackRef, "error", true, "Unsubscribe failed");
-					}
-				}
-			});
-		} catch (MqttException e) {
-			Log.e(TAG, "unsubscribe: MqttException", e);
-		}
-
-		return 0;
+		return defaultClient.unsubscribe(L, 1);
 	}
 
-	/** library.publish( topic, payload, { qos=, retain= } [, callback] ) */
-	public int publish(LuaState L) {
-		if (mqttClient == null || !mqttClient.isConnected()) {
-			Log.w(TAG, "publish: not connected");
-			return 0;
-		}
-
-		final String topic = L.checkString(1);
-		String payload = L.isString(2) ? L.toString(2) : "";
-
-		int qos = 0;
-		boolean retain = false;
-
-		if (L.isTable(3)) {
-			L.getField(3, "qos");
-			qos = L.isNumber(-1) ? (int)L.toNumber(-1) : 0;
-			L.pop(1);
-
-			L.getField(3, "retain");
-			retain = L.isBoolean(-1) && L.toBoolean(-1);
-			L.pop(1);
-		}
-
-		// Optional per-operation callback (4th arg)
-		final int callbackRef = L.isFunction(4) ? CoronaLua.newRef(L, 4) : CoronaLua.REFNIL;
-
-		try {
-			MqttMessage msg = new MqttMessage(payload.getBytes());
-			msg.setQos(qos);
-			msg.setRetained(retain);
-			mqttClient.publish(topic, msg, null, new IMqttActionListener() {
-				@Override
-				public void onSuccess(IMqttToken asyncActionToken) {
-					int mid = asyncActionToken.getMessageId();
-					Log.i(TAG, "Published to " + topic + " mid=" + mid);
-					dispatchPublishedEvent(mid);
-					// Fire per-op callback
-					if (callbackRef != CoronaLua.REFNIL) {
-						dispatchPerOpPublishedCallback(callbackRef, mid);
-					}
-				}
-
-				@Override
-				public void onFailure(IMqttToken asyncActionToken, Throwable exception) {
-					Log.e(TAG, "Publish failed for " + topic, exception);
-					dispatchErrorEvent("Publish failed: " + (exception != null ? exception.getMessage() : "unknown"));
-					if (callbackRef != CoronaLua.REFNIL) {
-						dispatchPerOpCallback(callbackRef, "error", true, "Publish failed");
-					}
-				}
-			});
-		} catch (MqttException e) {
-			Log.e(TAG, "publish: MqttException", e);
-		}
-
-		return 0;
+	/** library.subscribeMany( { { topic=, qos= [, payloadType=] }, ... } [, callback] ) */
+	public int subscribeMany(LuaState L) {
+		return defaultClient.subscribeMany(L, 1);
 	}
 
-	// ========================================================================
-	// Event dispatch helpers
-	// ========================================================================
-
-	private void dispatchConnectedEvent(final boolean reconnect) {
-		CoronaActivity activity = CoronaEnvironment.getCoronaActivity();
-		if (activity == null) return;
-		activity.getRuntimeTaskDispatcher().send(new CoronaRuntimeTask() {
-			@Override
-			public void executeUsing(CoronaRuntime runtime) {
-				LuaState L = runtime.getLuaState();
-				CoronaLua.newEvent(L, EVENT_NAME);
-				L.pushString("connected");
-				L.setField(-2, "name");
-				L.pushBoolean(reconnect);
-				L.setField(-2, "sessionPresent");
-				try {
-					CoronaLua.dispatchEvent(L, fListener, 0);
-				} catch (Exception e) {
-					Log.e(TAG, "dispatchConnectedEvent failed", e);
-				}
-			}
-		});
+	/** library.unsubscribeMany( { topic, ... } [, callback] ) */
+	public int unsubscribeMany(LuaState L) {
+		return defaultClient.unsubscribeMany(L, 1);
 	}
 
-	private void dispatchDisconnectedEvent(final int code, final String message) {
-		CoronaActivity activity = CoronaEnvironment.getCoronaActivity();
-		if (activity == null) return;
-		activity.getRuntimeTaskDispatcher().send(new CoronaRuntimeTask() {
-			@Override
-			public void executeUsing(CoronaRuntime runtime) {
-				LuaState L = runtime.getLuaState();
-				CoronaLua.newEvent(L, EVENT_NAME);
-				L.pushString("disconnected");
-				L.setField(-2, "name");
-				L.pushInteger(code);
-				L.setField(-2, "errorCode");
-				L.pushString(message != null ? message : "");
-				L.setField(-2, "errorMessage");
-				try {
-					CoronaLua.dispatchEvent(L, fListener, 0);
-				} catch (Exception e) {
-					Log.e(TAG, "dispatchDisconnectedEvent failed", e);
-				}
-			}
-		});
+	/** library.publish( topic, payload, { qos=, retain=, payloadType= } [, callback] ) -> status, queueDepth */
+	public int publish(LuaState L) {
+		return defaultClient.publish(L, 1);
 	}
 
-	private void dispatchMessageEvent(final String topic, final String payload, final int qos, final boolean retained) {
-		CoronaActivity activity = CoronaEnvironment.getCoronaActivity();
-		if (activity == null) return;
-		activity.getRuntimeTaskDispatcher().send(new CoronaRuntimeTask() {
-			@Override
-			public void executeUsing(CoronaRuntime runtime) {
-				LuaState L = runtime.getLuaState();
-				CoronaLua.newEvent(L, EVENT_NAME);
-				L.pushString("message");
-				L.setField(-2, "name");
-				L.pushString(topic);
-				L.setField(-2, "topic");
-				L.pushString(payload);
-				L.setField(-2, "payload");
-				L.pushInteger(qos);
-				L.setField(-2, "qos");
-				L.pushBoolean(retained);
-				L.setField(-2, "retained");
-				try {
-					CoronaLua.dispatchEvent(L, fListener, 0);
-				} catch (Exception e) {
-					Log.e(TAG, "dispatchMessageEvent failed", e);
-				}
-			}
-		});
+	/** library.getStats() -> counters and latency histograms of the default client, or nil */
+	public int getStats(LuaState L) {
+		return defaultClient.getStats(L, 1);
 	}
 
-	private void dispatchSubscribedEvent(final String topic, final int grantedQos) {
-		CoronaActivity activity = CoronaEnvironment.getCoronaActivity();
-		if (activity == null) return;
-		activity.getRuntimeTaskDispatcher().send(new CoronaRuntimeTask() {
-			@Override
-			public void executeUsing(CoronaRuntime runtime) {
-				LuaState L = runtime.getLuaState();
-				CoronaLua.newEvent(L, EVENT_NAME);
-				L.pushString("subscribed");
-				L.setField(-2, "name");
-				L.pushString(topic);
-				L.setField(-2, "topic");
-				L.pushInteger(grantedQos);
-				L.setField(-2, "grantedQos");
-				try {
-					CoronaLua.dispatchEvent(L, fListener, 0);
-				} catch (Exception e) {
-					Log.e(TAG, "dispatchSubscribedEvent failed", e);
-				}
-			}
-		});
+	/** library.getLast( topicOrFilter ) -> cached message of the default client, or an array of them for a filter */
+	public int getLast(LuaState L) {
+		return defaultClient.getLast(L, 1);
 	}
 
-	private void dispatchErrorEvent(final String errorMessage) {
-		CoronaActivity activity = CoronaEnvironment.getCoronaActivity();
-		if (activity == null) return;
-		activity.getRuntimeTaskDispatcher().send(new CoronaRuntimeTask() {
-			@Override
-			public void executeUsing(CoronaRuntime runtime) {
-				LuaState L = runtime.getLuaState();
-				CoronaLua.newEvent(L, EVENT_NAME);
-				L.pushString("error");
-				L.setField(-2, "name");
-				L.pushString(errorMessage != null ? errorMessage : "Unknown error");
-				L.setField(-2, "errorMessage");
-				try {
-					CoronaLua.dispatchEvent(L, fListener, 0);
-				} catch (Exception e) {
-					Log.e(TAG, "dispatchErrorEvent failed", e);
-				}
-			}
-		});
-	}
+	/** library.newClient( [{ id=, listener= }] ) -> client handle with connect/subscribe/publish/... methods */
+	public int newClient(LuaState L) {
+		String id = null;
+		int listenerRef = CoronaLua.REFNIL;
 
-	private void dispatchPublishedEvent(final int mid) {
-		CoronaActivity activity = CoronaEnvironment.getCoronaActivity();
-		if (activity == null) return;
-		activity.getRuntimeTaskDispatcher().send(new CoronaRuntimeTask() {
-			@Override
-			public void executeUsing(CoronaRuntime runtime) {
-				LuaState L = runtime.getLuaState();
-				CoronaLua.newEvent(L, EVENT_NAME);
-				L.pushString("published");
-				L.setField(-2, "name");
-				L.pushInteger(mid);
-				L.setField(-2, "mid");
-				try {
-					CoronaLua.dispatchEvent(L, fListener, 0);
-				} catch (Exception e) {
-					Log.e(TAG, "dispatchPublishedEvent failed", e);
-				}
-			}
-		});
-	}
+		if (L.isTable(1)) {
+			L.getField(1, "id");
+			id = L.isString(-1) ? L.toString(-1) : null;
+			L.pop(1);
 
-	private void dispatchUnsubscribedEvent(final String topic) {
-		CoronaActivity activity = CoronaEnvironment.getCoronaActivity();
-		if (activity == null) return;
-		activity.getRuntimeTaskDispatcher().send(new CoronaRuntimeTask() {
-			@Override
-			public void executeUsing(CoronaRuntime runtime) {
-				LuaState L = runtime.getLuaState();
-				CoronaLua.newEvent(L, EVENT_NAME);
-				L.pushString("unsubscribed");
-				L.setField(-2, "name");
-				L.pushString(topic);
-				L.setField(-2, "topic");
-				try {
-					CoronaLua.dispatchEvent(L, fListener, 0);
-				} catch (Exception e) {
-					Log.e(TAG, "dispatchUnsubscribedEvent failed", e);
-				}
+			L.getField(1, "listener");
+			if (CoronaLua.isListener(L, -1, EVENT_NAME)) {
+				listenerRef = CoronaLua.newRef(L, -1);
 			}
-		});
-	}
+			L.pop(1);
+		}
 
-	// Per-operation callback dispatchers
-
-	private void dispatchPerOpCallback(final int ref, final String eventName, final boolean isError, final String errorMessage) {
-		CoronaActivity activity = CoronaEnvironment.getCoronaActivity();
-		if (activity == null) return;
-		activity.getRuntimeTaskDispatcher().send(new CoronaRuntimeTask() {
-			@Override
-			public void executeUsing(CoronaRuntime runtime) {
-				LuaState L = runtime.getLuaState();
-				CoronaLua.newEvent(L, EVENT_NAME);
-				L.pushString(eventName);
-				L.setField(-2, "name");
-				L.pushBoolean(isError);
-				L.setField(-2, "isError");
-				if (errorMessage != null) {
-					L.pushString(errorMessage);
-					L.setField(-2, "errorMessage");
-				}
-				try {
-					CoronaLua.dispatchEvent(L, ref, 0);
-				} catch (Exception e) {
-					Log.e(TAG, "dispatchPerOpCallback failed", e);
-				}
-				CoronaLua.deleteRef(L, ref);
+		if (id == null) {
+			do {
+				id = "client" + nextClientNumber++;
+			} while (clients.containsKey(id));
+		}
+		if (DEFAULT_CLIENT_ID.equals(id)) {
+			MqttLog.e("newClient: id '" + DEFAULT_CLIENT_ID + "' is reserved");
+			if (listenerRef != CoronaLua.REFNIL) {
+				CoronaLua.deleteRef(L, listenerRef);
 			}
-		});
-	}
+			return 0;
+		}
 
-	private void dispatchPerOpSubscribedCallback(final int ref, final String topic, final int grantedQos) {
-		CoronaActivity activity = CoronaEnvironment.getCoronaActivity();
-		if (activity == null) return;
-		activity.getRuntimeTaskDispatcher().send(new CoronaRuntimeTask() {
-			@Override
-			public void executeUsing(CoronaRuntime runtime) {
-				LuaState L = runtime.getLuaState();
-				CoronaLua.newEvent(L, EVENT_NAME);
-				L.pushString("subscribed");
-				L.setField(-2, "name");
-				L.pushString(topic);
-				L.setField(-2, "topic");
-				L.pushInteger(grantedQos);
-				L.setField(-2, "grantedQos");
-				try {
-					CoronaLua.dispatchEvent(L, ref, 0);
-				} catch (Exception e) {
-					Log.e(TAG, "dispatchPerOpSubscribedCallback failed", e);
-				}
-				CoronaLua.deleteRef(L, ref);
-			}
-		});
-	}
+		// Re-using an id replaces (and disconnects) the previous client
+		MqttClientHandle previous = clients.get(id);
+		if (previous != null) {
+			previous.release(L);
+		}
 
-	private void dispatchPerOpUnsubscribedCallback(final int ref, final String topic) {
-		CoronaActivity activity = CoronaEnvironment.getCoronaActivity();
-		if (activity == null) return;
-		activity.getRuntimeTaskDispatcher().send(new CoronaRuntimeTask() {
-			@Override
-			public void executeUsing(CoronaRuntime runtime) {
-				LuaState L = runtime.getLuaState();
-				CoronaLua.newEvent(L, EVENT_NAME);
-				L.pushString("unsubscribed");
-				L.setField(-2, "name");
-				L.pushString(topic);
-				L.setField(-2, "topic");
-				try {
-					CoronaLua.dispatchEvent(L, ref, 0);
-				} catch (Exception e) {
-					Log.e(TAG, "dispatchPerOpUnsubscribedCallback failed", e);
-				}
-				CoronaLua.deleteRef(L, ref);
-			}
-		});
+		MqttClientHandle client = new MqttClientHandle(id, listenerRef, CoronaBridge.INSTANCE, EngineOptions.PAHO);
+		clients.put(id, client);
+		client.pushHandle(L);
+		return 1;
 	}
 
-	private void dispatchPerOpPublishedCallback(final int ref, final int mid) {
-		CoronaActivity activity = CoronaEnvironment.getCoronaActivity();
-		if (activity == null) return;
-		activity.getRuntimeTaskDispatcher().send(new CoronaRuntimeTask() {
-			@Override
-			public void executeUsing(CoronaRuntime runtime) {
-				LuaState L = runtime.getLuaState();
-				CoronaLua.newEvent(L, EVENT_NAME);
-				L.pushString("published");
-				L.setField(-2, "name");
-				L.pushInteger(mid);
-				L.setField(-2, "mid");
-				try {
-					CoronaLua.dispatchEvent(L, ref, 0);
-				} catch (Exception e) {
-					Log.e(TAG, "dispatchPerOpPublishedCallback failed", e);
-				}
-				CoronaLua.deleteRef(L, ref);
-			}
-		});
-	}
+	// ========================================================================
+	// Internal helpers
+	// ========================================================================
 
-	private void dispatchPerOpDisconnectCallback(final int ref, final int code, final String message) {
-		CoronaActivity activity = CoronaEnvironment.getCoronaActivity();
-		if (activity == null) return;
-		activity.getRuntimeTaskDispatcher().send(new CoronaRuntimeTask() {
-			@Override
-			public void executeUsing(CoronaRuntime runtime) {
-				LuaState L = runtime.getLuaState();
-				CoronaLua.newEvent(L, EVENT_NAME);
-				L.pushString("disconnected");
-				L.setField(-2, "name");
-				L.pushInteger(code);
-				L.setField(-2, "errorCode");
-				L.pushString(message != null ? message : "");
-				L.setField(-2, "errorMessage");
-				try {
-					CoronaLua.dispatchEvent(L, ref, 0);
-				} catch (Exception e) {
-					Log.e(TAG, "dispatchPerOpDisconnectCallback failed", e);
-				}
-				CoronaLua.deleteRef(L, ref);
+	/** Applies the logLevel field of the options table at index, if present. */
+	static void readLogLevel(LuaState L, int index) {
+		L.getField(index, "logLevel");
+		if (L.isString(-1)) {
+			int level = MqttLog.parseLevel(L.toString(-1));
+			if (level >= 0) {
+				MqttLog.setLevel(level);
+			} else {
+				MqttLog.w("Unknown logLevel '" + L.toString(-1) + "'");
 			}
-		});
+		}
+		L.pop(1);
 	}
 
 	// ========================================================================
@@ -784,4 +261,29 @@ public class LuaLoader implements JavaFunction, CoronaRuntimeListener {
 		@Override public String getName() { return "publish"; }
 		@Override public int invoke(LuaState L) { return publish(L); }
 	}
+
+	private class SubscribeManyWrapper implements NamedJavaFunction {
+		@Override public String getName() { return "subscribeMany"; }
+		@Override public int invoke(LuaState L) { return subscribeMany(L); }
+	}
+
+	private class UnsubscribeManyWrapper implements NamedJavaFunction {
+		@Override public String getName() { return "unsubscribeMany"; }
+		@Override public int invoke(LuaState L) { return unsubscribeMany(L); }
+	}
+
+	private class NewClientWrapper implements NamedJavaFunction {
+		@Override public String getName() { return "newClient"; }
+		@Override public int invoke(LuaState L) { return newClient(L); }
+	}
+
+	private class GetStatsWrapper implements NamedJavaFunction {
+		@Override public String getName() { return "getStats"; }
+		@Override public int invoke(LuaState L) { return getStats(L); }
+	}
+
+	private class GetLastWrapper implements NamedJavaFunction {
+		@Override public String getName() { return "getLast"; }
+		@Override public int invoke(LuaState L) { return getLast(L); }
+	}
 }
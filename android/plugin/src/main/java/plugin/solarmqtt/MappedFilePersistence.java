@@ -0,0 +1,190 @@
+//
+//  MappedFilePersistence.java
+//  SolarMQTT Plugin for Solar2D
+//
+//  Copyright (c) 2026 Platopus Systems. All rights reserved.
+//
+
+package plugin.solarmqtt;
+
+import org.eclipse.paho.client.mqttv3.MqttClientPersistence;
+import org.eclipse.paho.client.mqttv3.MqttPersistable;
+import org.eclipse.paho.client.mqttv3.MqttPersistenceException;
+import org.eclipse.paho.client.mqttv3.internal.MqttPersistentData;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Paho persistence for in-flight QoS 1/2 state, kept in a single
+ * memory-mapped MappedLog instead of one file per message as
+ * MqttDefaultFilePersistence does. Puts and removes are appended as log
+ * records and replayed into an in-memory index on open; the log is rewritten
+ * from the index when it fills up.
+ */
+final class MappedFilePersistence implements MqttClientPersistence {
+	private static final byte OP_PUT = 1;
+	private static final byte OP_REMOVE = 2;
+
+	private final File directory;
+	private final int maxBytes;
+	private MappedLog log;
+	private final LinkedHashMap<String, MqttPersistentData> entries = new LinkedHashMap<String, MqttPersistentData>();
+
+	MappedFilePersistence(File directory, int maxBytes) {
+		this.directory = directory;
+		this.maxBytes = maxBytes;
+	}
+
+	@Override
+	public synchronized void open(String clientId, String serverURI) throws MqttPersistenceException {
+		String name = "inflight-" + sanitize(clientId) + "-" + Integer.toHexString(serverURI.hashCode()) + ".log";
+		try {
+			log = new MappedLog(new File(directory, name), maxBytes);
+		} catch (IOException e) {
+			throw new MqttPersistenceException(e);
+		}
+
+		entries.clear();
+		log.scan(new MappedLog.Visitor() {
+			@Override
+			public void visit(byte[] record) {
+				replay(record);
+			}
+		});
+	}
+
+	@Override
+	public synchronized void close() throws MqttPersistenceException {
+		if (log != null) {
+			log.close();
+			log = null;
+		}
+		entries.clear();
+	}
+
+	@Override
+	public synchronized void put(String key, MqttPersistable persistable) throws MqttPersistenceException {
+		checkOpen();
+		byte[] header = copy(persistable.getHeaderBytes(), persistable.getHeaderOffset(), persistable.getHeaderLength());
+		byte[] payload = copy(persistable.getPayloadBytes(), persistable.getPayloadOffset(), persistable.getPayloadLength());
+		MqttPersistentData data = new MqttPersistentData(key, header, 0, header.length, payload, 0, payload.length);
+		entries.put(key, data);
+		write(encode(OP_PUT, key, header, payload));
+	}
+
+	@Override
+	public synchronized MqttPersistable get(String key) throws MqttPersistenceException {
+		checkOpen();
+		return entries.get(key);
+	}
+
+	@Override
+	public synchronized void remove(String key) throws MqttPersistenceException {
+		checkOpen();
+		if (entries.remove(key) != null) {
+			write(encode(OP_REMOVE, key, null, null));
+		}
+	}
+
+	@Override
+	public synchronized Enumeration<String> keys() throws MqttPersistenceException {
+		checkOpen();
+		return Collections.enumeration(new ArrayList<String>(entries.keySet()));
+	}
+
+	@Override
+	public synchronized void clear() throws MqttPersistenceException {
+		checkOpen();
+		entries.clear();
+		log.reset();
+	}
+
+	@Override
+	public synchronized boolean containsKey(String key) throws MqttPersistenceException {
+		checkOpen();
+		return entries.containsKey(key);
+	}
+
+	// ========================================================================
+	// Internal helpers
+	// ========================================================================
+
+	private void checkOpen() throws MqttPersistenceException {
+		if (log == null) {
+			throw new MqttPersistenceException(MqttPersistenceException.REASON_CODE_CLIENT_EXCEPTION);
+		}
+	}
+
+	/** Appends a record, rewriting the log from the live entries if it is full. */
+	private void write(byte[] record) throws MqttPersistenceException {
+		if (log.append(record)) return;
+
+		List<byte[]> records = new ArrayList<byte[]>(entries.size());
+		for (Map.Entry<String, MqttPersistentData> entry : entries.entrySet()) {
+			MqttPersistentData data = entry.getValue();
+			records.add(encode(OP_PUT, entry.getKey(), data.getHeaderBytes(), data.getPayloadBytes()));
+		}
+		if (!log.rewrite(records)) {
+			throw new MqttPersistenceException(MqttPersistenceException.REASON_CODE_CLIENT_EXCEPTION);
+		}
+	}
+
+	private void replay(byte[] record) {
+		ByteBuffer in = ByteBuffer.wrap(record);
+		byte op = in.get();
+		byte[] keyBytes = new byte[in.getShort() & 0xffff];
+		in.get(keyBytes);
+		String key = new String(keyBytes, InboundMessage.UTF8);
+		if (op == OP_REMOVE) {
+			entries.remove(key);
+			return;
+		}
+		byte[] header = new byte[in.getInt()];
+		in.get(header);
+		byte[] payload = new byte[in.remaining()];
+		in.get(payload);
+		entries.put(key, new MqttPersistentData(key, header, 0, header.length, payload, 0, payload.length));
+	}
+
+	private static byte[] encode(byte op, String key, byte[] header, byte[] payload) {
+		byte[] keyBytes = key.getBytes(InboundMessage.UTF8);
+		int headerLength = header != null ? header.length : 0;
+		int payloadLength = payload != null ? payload.length : 0;
+		ByteBuffer out = ByteBuffer.allocate(1 + 2 + keyBytes.length
+				+ (op == OP_PUT ? 4 + headerLength + payloadLength : 0));
+		out.put(op);
+		out.putShort((short)keyBytes.length);
+		out.put(keyBytes);
+		if (op == OP_PUT) {
+			out.putInt(headerLength);
+			if (header != null) out.put(header);
+			if (payload != null) out.put(payload);
+		}
+		return out.array();
+	}
+
+	private static byte[] copy(byte[] bytes, int offset, int length) {
+		byte[] result = new byte[bytes != null ? length : 0];
+		if (bytes != null) {
+			System.arraycopy(bytes, offset, result, 0, length);
+		}
+		return result;
+	}
+
+	private static String sanitize(String clientId) {
+		StringBuilder sb = new StringBuilder(clientId.length());
+		for (int i = 0; i < clientId.length(); i++) {
+			char c = clientId.charAt(i);
+			sb.append(Character.isLetterOrDigit(c) || c == '-' || c == '_' ? c : '_');
+		}
+		return sb.toString();
+	}
+}
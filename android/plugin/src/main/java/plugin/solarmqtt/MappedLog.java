@@ -0,0 +1,238 @@
+//
+//  MappedLog.java
+//  SolarMQTT Plugin for Solar2D
+//
+//  Copyright (c) 2026 Platopus Systems. All rights reserved.
+//
+
+package plugin.solarmqtt;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+
+/**
+ * A bounded, append-only record log in a memory-mapped file.
+ * Records are length-prefixed byte arrays read back in FIFO order; the read
+ * and write positions live in the file header so the log survives restarts.
+ *
+ * Compaction and rewrite() never move records in place: they write the live
+ * records to a temporary file, flush it and rename it over the log, so a
+ * crash leaves either the old log or the new one.
+ */
+final class MappedLog {
+	private static final int MAGIC = 0x534d514c; // "SMQL"
+	private static final int HEADER_SIZE = 16;
+	private static final int OFFSET_READ = 4;
+	private static final int OFFSET_WRITE = 8;
+	private static final int OFFSET_COUNT = 12;
+
+	private final File path;
+	private final int capacity;
+	private RandomAccessFile file;
+	private FileChannel channel;
+	private MappedByteBuffer buffer;
+	private int readPos;
+	private int writePos;
+	private int count;
+
+	/**
+	 * Opens or creates the log at path. An existing file larger than capacity
+	 * keeps its size, so records queued under a larger limit are not lost.
+	 */
+	MappedLog(File path, int capacity) throws IOException {
+		File dir = path.getParentFile();
+		if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("Cannot create " + dir);
+		}
+		this.path = path;
+		int size = Math.max(HEADER_SIZE + 64, capacity);
+		long existing = path.length();
+		if (existing > size) {
+			MqttLog.w(path.getName() + " is " + existing + " bytes, more than the " + size
+					+ " configured; keeping its size");
+			size = (int)Math.min(existing, Integer.MAX_VALUE);
+		}
+		this.capacity = size;
+		map();
+	}
+
+	/**
+	 * Replaces the unread records with the given ones, atomically. Returns
+	 * false, leaving the log as it was, if they do not fit or cannot be written.
+	 */
+	synchronized boolean rewrite(List<byte[]> records) {
+		int length = 0;
+		for (byte[] record : records) {
+			length += 4 + record.length;
+		}
+		if (HEADER_SIZE + length > capacity) return false;
+		ByteBuffer live = ByteBuffer.allocate(length);
+		for (byte[] record : records) {
+			live.putInt(record.length);
+			live.put(record);
+		}
+		return replace(live.array(), records.size());
+	}
+
+	/** Appends a record, compacting first if needed. Returns false if it does not fit. */
+	synchronized boolean append(byte[] record) {
+		int needed = 4 + record.length;
+		if (writePos + needed > capacity) {
+			compact();
+			if (writePos + needed > capacity) {
+				return false;
+			}
+		}
+		buffer.position(writePos + 4);
+		buffer.put(record);
+		buffer.putInt(writePos, record.length);
+		writePos += needed;
+		count++;
+		buffer.putInt(OFFSET_WRITE, writePos);
+		buffer.putInt(OFFSET_COUNT, count);
+		return true;
+	}
+
+	/** Returns the oldest unread record without consuming it, or null if empty. */
+	synchronized byte[] peek() {
+		if (readPos >= writePos) return null;
+		byte[] record = new byte[buffer.getInt(readPos)];
+		buffer.position(readPos + 4);
+		buffer.get(record);
+		return record;
+	}
+
+	/** Consumes the record returned by the last peek(). */
+	synchronized void advance() {
+		if (readPos >= writePos) return;
+		readPos += 4 + buffer.getInt(readPos);
+		if (readPos >= writePos) {
+			reset();
+		} else {
+			count--;
+			buffer.putInt(OFFSET_READ, readPos);
+			buffer.putInt(OFFSET_COUNT, count);
+		}
+	}
+
+	/** Calls the visitor for every unread record, oldest first, without consuming them. */
+	synchronized void scan(Visitor visitor) {
+		int pos = readPos;
+		while (pos < writePos) {
+			byte[] record = new byte[buffer.getInt(pos)];
+			buffer.position(pos + 4);
+			buffer.get(record);
+			visitor.visit(record);
+			pos += 4 + record.length;
+		}
+	}
+
+	synchronized boolean isEmpty() {
+		return readPos >= writePos;
+	}
+
+	/** Number of unread records. */
+	synchronized int size() {
+		return count;
+	}
+
+	/** Bytes held by unread records, including their length prefixes. */
+	synchronized int pendingBytes() {
+		return writePos - readPos;
+	}
+
+	synchronized void reset() {
+		readPos = HEADER_SIZE;
+		writePos = HEADER_SIZE;
+		count = 0;
+		buffer.putInt(OFFSET_READ, readPos);
+		buffer.putInt(OFFSET_WRITE, writePos);
+		buffer.putInt(OFFSET_COUNT, count);
+	}
+
+	synchronized void close() {
+		buffer.force();
+		closeFile();
+	}
+
+	/** Moves unread records to the start of a new copy of the log, reclaiming consumed space. */
+	private void compact() {
+		if (readPos == HEADER_SIZE) return;
+		byte[] live = new byte[writePos - readPos];
+		buffer.position(readPos);
+		buffer.get(live);
+		replace(live, count);
+	}
+
+	/**
+	 * Writes a header and the length-prefixed records in live to a temporary
+	 * file, flushes it, renames it over the log and maps it. On failure the
+	 * current log stays in use.
+	 */
+	private boolean replace(byte[] live, int records) {
+		File tmp = new File(path.getPath() + ".tmp");
+		try {
+			RandomAccessFile out = new RandomAccessFile(tmp, "rw");
+			try {
+				out.setLength(0);
+				ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+				header.putInt(MAGIC).putInt(HEADER_SIZE).putInt(HEADER_SIZE + live.length).putInt(records);
+				out.write(header.array());
+				out.write(live);
+				out.setLength(capacity);
+				out.getChannel().force(true);
+			} finally {
+				out.close();
+			}
+			if (!tmp.renameTo(path)) {
+				throw new IOException("Cannot rename " + tmp + " to " + path);
+			}
+		} catch (IOException e) {
+			MqttLog.e("MappedLog compaction failed", e);
+			tmp.delete();
+			return false;
+		}
+		// The old mapping is of the replaced file now; it is released once unreachable
+		closeFile();
+		try {
+			map();
+		} catch (IOException e) {
+			MqttLog.e("MappedLog could not reopen " + path, e);
+			throw new IllegalStateException(e);
+		}
+		return true;
+	}
+
+	/** Maps the file at path, resetting it if its header is not valid. */
+	private void map() throws IOException {
+		file = new RandomAccessFile(path, "rw");
+		channel = file.getChannel();
+		buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+
+		readPos = buffer.getInt(OFFSET_READ);
+		writePos = buffer.getInt(OFFSET_WRITE);
+		count = buffer.getInt(OFFSET_COUNT);
+		if (buffer.getInt(0) != MAGIC || readPos < HEADER_SIZE || writePos < readPos || writePos > capacity || count < 0) {
+			buffer.putInt(0, MAGIC);
+			reset();
+		}
+	}
+
+	private void closeFile() {
+		try {
+			channel.close();
+			file.close();
+		} catch (IOException e) {
+			MqttLog.e("MappedLog close failed", e);
+		}
+	}
+
+	interface Visitor {
+		void visit(byte[] record);
+	}
+}
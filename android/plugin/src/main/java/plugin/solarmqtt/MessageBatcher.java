@@ -0,0 +1,148 @@
+//
+//  MessageBatcher.java
+//  SolarMQTT Plugin for Solar2D
+//
+//  Copyright (c) 2026 Platopus Systems. All rights reserved.
+//
+
+package plugin.solarmqtt;
+
+import com.ansca.corona.CoronaLua;
+import com.naef.jnlua.LuaState;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Batched message delivery: inbound messages are queued lock-free on the Paho
+ * thread and handed to Lua as a single "messages" event per runtime task,
+ * instead of one runtime task per message.
+ */
+final class MessageBatcher implements RuntimeTask {
+	private final MqttClientHandle client;
+	private final int maxCount;
+	private final int maxDelayMs;
+
+	private final ConcurrentLinkedQueue<InboundMessage> queue = new ConcurrentLinkedQueue<InboundMessage>();
+	private final AtomicInteger depth = new AtomicInteger();
+	private final AtomicBoolean scheduled = new AtomicBoolean();
+	private final AtomicBoolean flushing = new AtomicBoolean();
+	private ScheduledFuture<?> delayed; // guarded by `this`
+
+	MessageBatcher(MqttClientHandle client, int maxCount, int maxDelayMs) {
+		this.client = client;
+		this.maxCount = Math.max(1, maxCount);
+		this.maxDelayMs = Math.max(0, maxDelayMs);
+	}
+
+	/** Queues a message. Called on the Paho callback thread or a worker lane. */
+	void add(InboundMessage message) {
+		queue.offer(message);
+		int pending = depth.incrementAndGet();
+
+		if (scheduled.compareAndSet(false, true)) {
+			if (maxDelayMs > 0 && pending < maxCount) {
+				scheduleDelayed();
+			} else {
+				flushing.set(true);
+				send();
+			}
+		} else if (pending >= maxCount && flushing.compareAndSet(false, true)) {
+			// A delayed drain is pending but the batch is already full
+			send();
+		}
+	}
+
+	/** Drops queued messages and cancels a pending delayed drain. */
+	synchronized void close() {
+		if (delayed != null) {
+			delayed.cancel(false);
+			delayed = null;
+		}
+		queue.clear();
+		depth.set(0);
+	}
+
+	/** Drains after maxDelayMs on the client's timer. */
+	private synchronized void scheduleDelayed() {
+		delayed = client.schedule(new Runnable() {
+			@Override
+			public void run() {
+				if (flushing.compareAndSet(false, true)) {
+					send();
+				}
+			}
+		}, maxDelayMs);
+		if (delayed == null) {
+			// The client was released
+			scheduled.set(false);
+		}
+	}
+
+	/** Posts the drain task; if no runtime takes it, resets so the next message schedules it again. */
+	private void send() {
+		if (!client.post(this)) {
+			flushing.set(false);
+			scheduled.set(false);
+		}
+	}
+
+	// ========================================================================
+	// Runtime thread
+	// ========================================================================
+
+	@Override
+	public void run(LuaState L) {
+		flushing.set(false);
+		scheduled.set(false);
+
+		int count = Math.min(depth.get(), maxCount);
+		if (count > 0) {
+			ArrayList<InboundMessage> batch = new ArrayList<InboundMessage>(count);
+			int n = 0;
+			InboundMessage message;
+			while (n < count && (message = queue.poll()) != null) {
+				n++;
+				client.recordDelivery(message);
+				// Messages for a subscription with its own onMessage handler bypass the batch
+				if (!client.dispatchToHandlers(L, message)) {
+					batch.add(message);
+				}
+			}
+			int remaining = depth.addAndGet(-n);
+			if (!batch.isEmpty()) {
+				dispatchBatch(L, batch, remaining);
+			}
+		}
+
+		// More arrived than fit in one batch: drain the rest next frame
+		if (depth.get() > 0 && scheduled.compareAndSet(false, true)) {
+			flushing.set(true);
+			send();
+		}
+	}
+
+	private void dispatchBatch(LuaState L, ArrayList<InboundMessage> batch, int remaining) {
+		client.newEvent(L, "messages");
+		L.newTable(batch.size(), 0);
+		for (int i = 0; i < batch.size(); i++) {
+			L.newTable(0, 4);
+			batch.get(i).pushFields(L);
+			L.rawSet(-2, i + 1);
+		}
+		L.setField(-2, "messages");
+
+		L.pushInteger(batch.size());
+		L.setField(-2, "coalesced");
+		L.pushInteger(remaining);
+		L.setField(-2, "queueDepth");
+		try {
+			CoronaLua.dispatchEvent(L, client.getListener(), 0);
+		} catch (Exception e) {
+			MqttLog.e("MessageBatcher dispatch failed", e);
+		}
+	}
+}
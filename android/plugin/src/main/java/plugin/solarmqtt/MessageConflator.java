@@ -0,0 +1,55 @@
+//
+//  MessageConflator.java
+//  SolarMQTT Plugin for Solar2D
+//
+//  Copyright (c) 2026 Platopus Systems. All rights reserved.
+//
+
+package plugin.solarmqtt;
+
+import com.naef.jnlua.LuaState;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Latest-value delivery for subscriptions with conflate=true: the Paho thread
+ * keeps only the newest undelivered message per topic, and one runtime task
+ * per tick hands each of them to Lua. A topic updating faster than the frame
+ * rate costs one Lua call per frame instead of one per message.
+ */
+final class MessageConflator implements RuntimeTask {
+	private final MqttClientHandle client;
+	private final ConcurrentHashMap<String, InboundMessage> latest = new ConcurrentHashMap<String, InboundMessage>();
+	private final AtomicBoolean scheduled = new AtomicBoolean();
+
+	MessageConflator(MqttClientHandle client) {
+		this.client = client;
+	}
+
+	/** Keeps the message as the newest for its topic. Returns true if it replaced an undelivered one. Paho thread or a worker lane. */
+	boolean add(InboundMessage message) {
+		InboundMessage replaced = latest.put(message.topic, message);
+		if (scheduled.compareAndSet(false, true) && !client.post(this)) {
+			// Not taken: leave it to the next message to try again rather than never flushing
+			scheduled.set(false);
+		}
+		return replaced != null;
+	}
+
+	void clear() {
+		latest.clear();
+	}
+
+	@Override
+	public void run(LuaState L) {
+		// Clear first: a message arriving during the flush schedules the next one
+		scheduled.set(false);
+		for (String topic : latest.keySet()) {
+			InboundMessage message = latest.remove(topic);
+			if (message != null) {
+				client.deliver(L, message);
+			}
+		}
+	}
+}
@@ -0,0 +1,101 @@
+//
+//  MessageWorkers.java
+//  SolarMQTT Plugin for Solar2D
+//
+//  Copyright (c) 2026 Platopus Systems. All rights reserved.
+//
+
+package plugin.solarmqtt;
+
+import com.naef.jnlua.LuaState;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Worker lanes for inbound message processing (routing, unpacking,
+ * decompression, JSON parsing), so the Paho receive thread only reads from
+ * the network. A topic always maps to the same single-threaded lane, so
+ * messages on one topic keep their order while different topics are handled
+ * in parallel.
+ *
+ * Each lane's queue is bounded. When it is full the Paho thread waits for
+ * room, pushing back on the broker as a slow callback would, rather than
+ * buffering without limit.
+ */
+final class MessageWorkers {
+	static final int DEFAULT_QUEUE_SIZE = 1024;
+	private static final int MAX_THREADS = 8;
+
+	private final ThreadPoolExecutor[] lanes;
+
+	/** Blocks the submitting thread until the lane has room; drops the task once the lane is shut down. */
+	private static final RejectedExecutionHandler WAIT_FOR_ROOM = new RejectedExecutionHandler() {
+		@Override
+		public void rejectedExecution(Runnable task, ThreadPoolExecutor lane) {
+			if (lane.isShutdown()) return;
+			try {
+				lane.getQueue().put(task);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	};
+
+	MessageWorkers(final String clientId, int threads, int queueSize) {
+		lanes = new ThreadPoolExecutor[Math.max(1, Math.min(MAX_THREADS, threads))];
+		for (int i = 0; i < lanes.length; i++) {
+			lanes[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+					new ArrayBlockingQueue<Runnable>(Math.max(1, queueSize)),
+					MqttClientHandle.daemonThreads("SolarMQTT-" + clientId + "-worker-" + i),
+					WAIT_FOR_ROOM);
+		}
+	}
+
+	/**
+	 * Reads the workers field of the connect options table at index: a thread
+	 * count, or { threads=, queueSize= }. Returns null when messages are
+	 * processed on the Paho thread (the default).
+	 */
+	static MessageWorkers fromLua(LuaState L, int index, String clientId) {
+		int threads = 0;
+		int queueSize = DEFAULT_QUEUE_SIZE;
+		L.getField(index, "workers");
+		if (L.isNumber(-1)) {
+			threads = (int)L.toNumber(-1);
+		} else if (L.isTable(-1)) {
+			L.getField(-1, "threads");
+			threads = L.isNumber(-1) ? (int)L.toNumber(-1) : 1;
+			L.pop(1);
+
+			L.getField(-1, "queueSize");
+			queueSize = L.isNumber(-1) ? (int)L.toNumber(-1) : queueSize;
+			L.pop(1);
+		}
+		L.pop(1);
+		return threads > 0 ? new MessageWorkers(clientId, threads, queueSize) : null;
+	}
+
+	/** Runs a task on the topic's lane. Paho thread. */
+	void execute(String topic, Runnable task) {
+		lanes[(topic.hashCode() & 0x7fffffff) % lanes.length].execute(task);
+	}
+
+	/** Tasks waiting in all lanes. */
+	int pending() {
+		int n = 0;
+		for (ThreadPoolExecutor lane : lanes) {
+			n += lane.getQueue().size();
+		}
+		return n;
+	}
+
+	/** Stops the lanes, dropping tasks that have not started. */
+	void shutdown() {
+		for (ThreadPoolExecutor lane : lanes) {
+			lane.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,2092 @@
+//
+//  MqttClientHandle.java
+//  SolarMQTT Plugin for Solar2D
+//
+//  Copyright (c) 2026 Platopus Systems. All rights reserved.
+//
+
+package plugin.solarmqtt;
+
+import com.ansca.corona.CoronaLua;
+import com.naef.jnlua.JavaFunction;
+import com.naef.jnlua.LuaState;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One MQTT broker connection. Owns its MqttEngine, per-operation
+ * callback refs and subscriptions; every event it dispatches carries its id
+ * in the `client` field.
+ */
+final class MqttClientHandle {
+	final String id;
+	final RuntimeBridge bridge;
+	private final MqttEngine.Factory engines;
+
+	private int listenerRef;
+	private MqttEngine engine;
+	private int connectCallbackRef = CoronaLua.REFNIL;
+	private int disconnectCallbackRef = CoronaLua.REFNIL;
+	private volatile MessageBatcher messageBatcher;
+	private final MessageConflator conflator = new MessageConflator(this);
+	private final EventQueue events = new EventQueue(this);
+	private final TopicRouter subscriptions = new TopicRouter();
+
+	// Offline publish queue, drained on (re)connect
+	private OfflineOutbox outbox;
+	private final Object outboxLock = new Object();
+
+	// Client-side send queue for publishes beyond the in-flight window
+	private final ArrayDeque<PendingPublish> sendQueue = new ArrayDeque<PendingPublish>();
+	private final Object sendLock = new Object();
+	private int maxQueued = DEFAULT_MAX_QUEUED;
+	private boolean drainWanted;
+
+	// One daemon thread for the client's delayed work, created on first use and
+	// shut down by release(); each user cancels its own futures on close
+	private ScheduledExecutorService timer;
+	private final Object timerLock = new Object();
+
+	// Counters and histograms, null unless the `stats` connect option is set
+	private volatile ClientStats stats;
+	private ScheduledFuture<?> statsTask; // guarded by `this`
+
+	// Background handling: the policy from connect, the held messages from
+	// suspend until they are all released after resume (set on the runtime
+	// thread), and the filters kept unsubscribed until resume (guarded by `this`)
+	private SuspendPolicy suspendPolicy;
+	private volatile BackgroundBuffer background;
+	private String[] suspendedFilters;
+
+	// Payload compression, created on first use; written under `this`
+	private volatile PayloadCodec codec;
+	private int compressMinBytes = PayloadCodec.DEFAULT_MIN_BYTES;
+
+	// Coalesces `batch` publishes into envelopes, or null
+	private volatile PublishBatcher publishBatcher;
+
+	// Inbound processing off the Paho thread, or null to process inline
+	private volatile MessageWorkers workers;
+
+	// Newest message per topic for getLast, or null; kept across reconnects
+	private volatile LastValueCache cache;
+
+	// Client id and broker-held filters of a fastStart session, or null
+	private volatile SessionStore session;
+
+	// Fingerprints of recent messages on dedup subscriptions, created on first use; guarded by `this`
+	private DuplicateFilter duplicates;
+
+	// Automatic reconnect state, guarded by `this`
+	private ReconnectPolicy reconnectPolicy;
+	private ScheduledFuture<?> reconnectTask;
+	private long connectionLostAt;
+	private int reconnectAttempts;
+	private volatile boolean sessionPresent;
+
+	/** SUBACK return code for a rejected topic filter. */
+	static final int SUBACK_FAILURE = 0x80;
+	private static final int DEFAULT_MAX_QUEUED = 1000;
+	private static final String STATUS_SENT = "sent";
+	private static final String STATUS_QUEUED = "queued";
+	private static final String STATUS_REJECTED = "rejected";
+	private static final String STATUS_BATCHED = "batched";
+	private static final int DEFAULT_OUTBOX_BYTES = 1024 * 1024;
+	private static final int NO_COMPRESSION = Integer.MIN_VALUE;
+	/** Held messages delivered per frame after resume. */
+	private static final int RESUME_MESSAGES_PER_FRAME = 50;
+
+	MqttClientHandle(String id, int listenerRef, RuntimeBridge bridge, MqttEngine.Factory engines) {
+		this.id = id;
+		this.listenerRef = listenerRef;
+		this.bridge = bridge;
+		this.engines = engines;
+	}
+
+	/** Pushes a Lua table exposing this client's methods, for use with `client:method(...)`. */
+	void pushHandle(LuaState L) {
+		L.newTable(0, 10);
+		L.pushString(id);
+		L.setField(-2, "id");
+		L.pushJavaFunction(new JavaFunction() {
+			@Override public int invoke(LuaState L) { return connect(L, 2); }
+		});
+		L.setField(-2, "connect");
+		L.pushJavaFunction(new JavaFunction() {
+			@Override public int invoke(LuaState L) { return disconnect(L, 2); }
+		});
+		L.setField(-2, "disconnect");
+		L.pushJavaFunction(new JavaFunction() {
+			@Override public int invoke(LuaState L) { return subscribe(L, 2); }
+		});
+		L.setField(-2, "subscribe");
+		L.pushJavaFunction(new JavaFunction() {
+			@Override public int invoke(LuaState L) { return unsubscribe(L, 2); }
+		});
+		L.setField(-2, "unsubscribe");
+		L.pushJavaFunction(new JavaFunction() {
+			@Override public int invoke(LuaState L) { return publish(L, 2); }
+		});
+		L.setField(-2, "publish");
+		L.pushJavaFunction(new JavaFunction() {
+			@Override public int invoke(LuaState L) { return subscribeMany(L, 2); }
+		});
+		L.setField(-2, "subscribeMany");
+		L.pushJavaFunction(new JavaFunction() {
+			@Override public int invoke(LuaState L) { return unsubscribeMany(L, 2); }
+		});
+		L.setField(-2, "unsubscribeMany");
+		L.pushJavaFunction(new JavaFunction() {
+			@Override public int invoke(LuaState L) { return getStats(L, 2); }
+		});
+		L.setField(-2, "getStats");
+		L.pushJavaFunction(new JavaFunction() {
+			@Override public int invoke(LuaState L) { return getLast(L, 2); }
+		});
+		L.setField(-2, "getLast");
+	}
+
+	// ========================================================================
+	// Operations (arguments start at stack index `base`)
+	// ========================================================================
+
+	/** client.connect({ broker=, port=, clientId=, username=, password=, cleanSession=, fastStart=, keepAlive=, maxInflight=, maxQueued=, autoReconnect=, offlineQueue=, persistence=, batchMessages=, publishBatch=, workers=, cache=, background=, stats=, compressMinBytes=, protocolVersion=, sessionExpiry=, receiveMaximum=, topicAliasMaximum=, logLevel= }) */
+	int connect(LuaState L, int base) {
+		if (!bridge.isAvailable()) return 0;
+
+		if (!L.isTable(base)) {
+			MqttLog.e("connect: requires a table argument");
+			return 0;
+		}
+
+		EngineOptions engineOptions = EngineOptions.fromLua(L, base);
+
+		L.getField(base, "maxQueued");
+		int queueLimit = L.isNumber(-1) ? Math.max(0, (int)L.toNumber(-1)) : DEFAULT_MAX_QUEUED;
+		L.pop(1);
+
+		L.getField(base, "fastStart");
+		boolean fastStart = L.isBoolean(-1) && L.toBoolean(-1);
+		L.pop(1);
+
+		L.getField(base, "compressMinBytes");
+		int minCompressBytes = L.isNumber(-1) ? Math.max(0, (int)L.toNumber(-1)) : PayloadCodec.DEFAULT_MIN_BYTES;
+		L.pop(1);
+
+		LuaLoader.readLogLevel(L, base);
+
+		// Read optional onConnect callback
+		L.getField(base, "onConnect");
+		if (L.isFunction(-1)) {
+			connectCallbackRef = CoronaLua.newRef(L, -1);
+		}
+		L.pop(1);
+
+		// Read optional batched delivery settings
+		boolean batchMessages = false;
+		int batchMaxCount = 64;
+		int batchMaxDelayMs = 0;
+
+		L.getField(base, "batchMessages");
+		if (L.isTable(-1)) {
+			batchMessages = true;
+
+			L.getField(-1, "maxCount");
+			batchMaxCount = L.isNumber(-1) ? (int)L.toNumber(-1) : batchMaxCount;
+			L.pop(1);
+
+			L.getField(-1, "maxDelayMs");
+			batchMaxDelayMs = L.isNumber(-1) ? (int)L.toNumber(-1) : batchMaxDelayMs;
+			L.pop(1);
+		} else if (L.isBoolean(-1)) {
+			batchMessages = L.toBoolean(-1);
+		}
+		L.pop(1);
+
+		ReconnectPolicy policy = ReconnectPolicy.fromLua(L, base);
+		ClientStats newStats = ClientStats.fromLua(L, base);
+		SuspendPolicy suspend = SuspendPolicy.fromLua(L, base);
+		PublishBatcher newPublishBatcher = PublishBatcher.fromLua(L, base, this);
+		MessageWorkers newWorkers = MessageWorkers.fromLua(L, base, id);
+		LastValueCache newCache = LastValueCache.fromLua(L, base);
+
+		// Read optional offline queue settings
+		int outboxMaxBytes = 0;
+		L.getField(base, "offlineQueue");
+		if (L.isTable(-1)) {
+			L.getField(-1, "maxBytes");
+			outboxMaxBytes = L.isNumber(-1) ? (int)L.toNumber(-1) : DEFAULT_OUTBOX_BYTES;
+			L.pop(1);
+		} else if (L.isBoolean(-1) && L.toBoolean(-1)) {
+			outboxMaxBytes = DEFAULT_OUTBOX_BYTES;
+		}
+		L.pop(1);
+
+		// Clean up existing client
+		close();
+		if (batchMessages) {
+			messageBatcher = new MessageBatcher(this, batchMaxCount, batchMaxDelayMs);
+		}
+		publishBatcher = newPublishBatcher;
+		workers = newWorkers;
+		final MessageWorkers lanes = newWorkers;
+		cache = newCache;
+		session = null;
+		if (fastStart) {
+			// Resume the same broker session on every launch: stable id, no clean start
+			SessionStore store = SessionStore.open(new File(bridge.storageDir(), "session-" + id + ".properties"),
+					engineOptions.clientId, engineOptions.serverUri(), this);
+			engineOptions.clientId = store.clientId();
+			engineOptions.cleanSession = false;
+			session = store;
+		}
+		synchronized (this) {
+			reconnectPolicy = policy;
+			suspendPolicy = suspend;
+			compressMinBytes = minCompressBytes;
+		}
+		stats = newStats;
+		if (newStats != null && newStats.intervalMs > 0) {
+			startStatsTimer(newStats.intervalMs);
+		}
+		synchronized (sendLock) {
+			maxQueued = queueLimit;
+		}
+
+		if (outboxMaxBytes > 0) {
+			try {
+				OfflineOutbox box = new OfflineOutbox(new File(bridge.storageDir(), "outbox-" + id + ".log"), outboxMaxBytes);
+				synchronized (outboxLock) {
+					outbox = box;
+				}
+			} catch (IOException e) {
+				MqttLog.e("connect: Failed to open offline queue", e);
+				dispatchErrorEvent("Failed to open offline queue: " + e.getMessage());
+			}
+		}
+
+		try {
+			engine = engines.newEngine(engineOptions, bridge.storageDir(), new MqttEngine.Callback() {
+				@Override
+				public void connectComplete(boolean reconnect, String serverURI) {
+					MqttLog.i("Connected to " + serverURI + " (reconnect=" + reconnect + ")");
+					long lostAt;
+					int attempts;
+					synchronized (MqttClientHandle.this) {
+						lostAt = connectionLostAt;
+						attempts = reconnectAttempts;
+						connectionLostAt = 0;
+						reconnectAttempts = 0;
+					}
+					if (lostAt != 0) {
+						restoreSession(lostAt, attempts);
+						drainOutbox();
+						pumpSendQueue();
+						return;
+					}
+					SessionStore store = session;
+					dispatchConnectedEvent(sessionPresent, store != null ? store.size() : -1);
+					// Fire per-op connect callback
+					if (connectCallbackRef != CoronaLua.REFNIL) {
+						final int ref = connectCallbackRef;
+						connectCallbackRef = CoronaLua.REFNIL;
+						dispatchPerOpCallback(ref, "connected", false, null);
+					}
+					drainOutbox();
+					pumpSendQueue();
+				}
+
+				@Override
+				public void connectionLost(String reason) {
+					String msg = reason != null ? reason : "Unknown";
+					MqttLog.w("Connection lost: " + msg);
+					boolean willReconnect;
+					synchronized (MqttClientHandle.this) {
+						willReconnect = reconnectPolicy != null;
+						if (willReconnect) {
+							connectionLostAt = System.nanoTime();
+							reconnectAttempts = 0;
+						}
+					}
+					ClientStats s = stats;
+					if (s != null) {
+						s.connectionsLost.incrementAndGet();
+					}
+					dispatchDisconnectedEvent(1, msg, willReconnect);
+					if (willReconnect) {
+						scheduleReconnect();
+					}
+				}
+
+				@Override
+				public void messageArrived(final String topic, final byte[] payload, final int qos, final boolean retained,
+						final int packetId, final boolean duplicate) {
+					if (MqttLog.isLoggable(MqttLog.DEBUG, MqttLog.MESSAGE)) {
+						MqttLog.d("Message on " + topic + " (" + payload.length + " bytes)");
+					}
+					ClientStats s = stats;
+					if (s != null) {
+						s.messagesReceived.incrementAndGet();
+						s.bytesReceived.addAndGet(payload.length);
+					}
+					final long receivedAt = s != null ? System.nanoTime() : 0;
+					if (lanes == null) {
+						process(topic, payload, qos, retained, packetId, duplicate, receivedAt);
+						return;
+					}
+					lanes.execute(topic, new Runnable() {
+						@Override
+						public void run() {
+							process(topic, payload, qos, retained, packetId, duplicate, receivedAt);
+						}
+					});
+				}
+
+				/** Routes a message and hands it on for delivery. Paho thread, or the topic's worker lane. */
+				private void process(String topic, byte[] payload, int qos, boolean retained, int packetId, boolean duplicate,
+						long receivedAt) {
+					List<Subscription> matches = subscriptions.match(topic);
+					int dedupWindowMs = qos > 0 ? dedupWindowMs(matches) : 0;
+					if (dedupWindowMs > 0
+							&& duplicateFilter().isDuplicate(topic, packetId, payload, duplicate, dedupWindowMs)) {
+						// Already handed to Lua before the connection dropped
+						if (MqttLog.isLoggable(MqttLog.DEBUG, MqttLog.MESSAGE)) {
+							MqttLog.d("Dropped redelivery of message " + packetId + " on " + topic);
+						}
+						return;
+					}
+					List<PublishBatcher.Entry> unpacked = isBatched(matches) ? PublishBatcher.unpack(payload) : null;
+					if (unpacked != null) {
+						// An envelope from a batching publisher: deliver the publishes it carries
+						for (PublishBatcher.Entry entry : unpacked) {
+							deliver(route(entry.topic, entry.payload, qos, retained, matches, receivedAt));
+						}
+					} else {
+						deliver(route(topic, payload, qos, retained, matches, receivedAt));
+					}
+				}
+
+				private void deliver(InboundMessage inbound) {
+					LastValueCache last = cache;
+					if (last != null) {
+						last.put(inbound);
+					}
+					RateLimiter limit = inbound.rateLimit;
+					if (limit != null && !limit.admit(inbound, MqttClientHandle.this)) {
+						// Dropped, or held until the filter has a token again
+						ClientStats s = stats;
+						if (s != null) s.messagesRateLimited.incrementAndGet();
+						return;
+					}
+					handOff(inbound);
+				}
+
+				@Override
+				public void deliveryComplete() {
+					// QoS delivery confirmed; an in-flight slot is free again
+					drainOutbox();
+					pumpSendQueue();
+				}
+			});
+
+			if (engineOptions.willTopic != null) {
+				MqttLog.i("Will set on topic '" + engineOptions.willTopic + "' qos=" + engineOptions.willQos + " retain=" + engineOptions.willRetain);
+			}
+
+			MqttLog.i("Connecting to " + engine.serverUri() + " (protocol level " + engine.protocolVersion() + ")");
+			engine.connect(new MqttEngine.Listener() {
+				@Override
+				public void onSuccess(MqttEngine.Token token) {
+					updateSessionPresent(token.getSessionPresent());
+					// connectComplete callback will fire
+				}
+
+				@Override
+				public void onFailure(Throwable exception) {
+					String msg = exception != null ? exception.getMessage() : "Connection failed";
+					MqttLog.e("Connect failed: " + msg);
+					dispatchErrorEvent(msg);
+					// Fire per-op connect callback with error
+					if (connectCallbackRef != CoronaLua.REFNIL) {
+						final int ref = connectCallbackRef;
+						connectCallbackRef = CoronaLua.REFNIL;
+						dispatchPerOpCallback(ref, "error", true, msg);
+					}
+				}
+			});
+
+		} catch (EngineException e) {
+			MqttLog.e("connect failed", e);
+			dispatchErrorEvent(e.getMessage());
+		}
+
+		return 0;
+	}
+
+	/** client.disconnect( [callback] ) */
+	int disconnect(LuaState L, int base) {
+		// Optional per-operation callback (1st arg)
+		if (L.isFunction(base)) {
+			disconnectCallbackRef = CoronaLua.newRef(L, base);
+		}
+
+		// An explicit disconnect stops any pending automatic reconnect
+		cancelReconnect();
+
+		// Send what is batched before the connection goes
+		PublishBatcher pending = publishBatcher;
+		if (pending != null) {
+			pending.flush();
+		}
+
+		if (engine != null && engine.isConnected()) {
+			final int disconnectRef = disconnectCallbackRef;
+			disconnectCallbackRef = CoronaLua.REFNIL;
+			try {
+				engine.disconnect(new MqttEngine.Listener() {
+					@Override
+					public void onSuccess(MqttEngine.Token token) {
+						MqttLog.i("Disconnected cleanly");
+						dispatchDisconnectedEvent(0, "Clean disconnect", false);
+						// Fire per-op disconnect callback
+						if (disconnectRef != CoronaLua.REFNIL) {
+							dispatchPerOpDisconnectCallback(disconnectRef, 0, "Clean disconnect");
+						}
+					}
+
+					@Override
+					public void onFailure(Throwable exception) {
+						MqttLog.e("Disconnect failed", exception);
+						if (disconnectRef != CoronaLua.REFNIL) {
+							dispatchPerOpDisconnectCallback(disconnectRef, 1, exception != null ? exception.getMessage() : "Disconnect failed");
+						}
+					}
+				});
+			} catch (EngineException e) {
+				MqttLog.e("disconnect failed", e);
+			}
+		}
+		return 0;
+	}
+
+	/** client.subscribe( topic, qos [, { payloadType=, conflate=, priority=, rateLimit=, onMessage=, group= }] [, callback] ) */
+	int subscribe(LuaState L, int base) {
+		if (engine == null || !engine.isConnected()) {
+			MqttLog.w("subscribe: not connected");
+			return 0;
+		}
+
+		final int qos = L.isNumber(base + 1) ? (int)L.toNumber(base + 1) : 0;
+
+		// Optional subscription options (3rd arg), shifting the callback to the 4th
+		int callbackIndex = L.isTable(base + 2) ? base + 3 : base + 2;
+
+		final Subscription subscription = Subscription.fromLua(L, base + 2, L.checkString(base), qos);
+		if (subscription == null) return 0;
+		// With a group, this is the $share/<group>/ filter
+		final String topic = subscription.filter;
+
+		// Optional per-operation callback
+		final int callbackRef = L.isFunction(callbackIndex) ? CoronaLua.newRef(L, callbackIndex) : CoronaLua.REFNIL;
+
+		Subscription previous = subscriptions.put(subscription);
+		if (previous != null) {
+			previous.releaseHandler(L);
+		}
+
+		// The broker already holds this subscription in the resumed session: no SUBSCRIBE needed
+		final SessionStore store = session;
+		if (store != null && store.requestedQosOf(topic) == qos) {
+			if (MqttLog.isLoggable(MqttLog.INFO, MqttLog.SUBSCRIBE)) {
+				MqttLog.i("Subscription to " + topic + " kept by the broker session");
+			}
+			int granted = store.grantedQosOf(topic);
+			if (granted < 0) granted = qos; // the broker reported no session meanwhile
+			dispatchSubscribedEvent(topic, granted);
+			if (callbackRef != CoronaLua.REFNIL) {
+				dispatchPerOpSubscribedCallback(callbackRef, topic, granted);
+			}
+			return 0;
+		}
+
+		try {
+			engine.subscribe(new String[] { topic }, new int[] { qos }, new MqttEngine.Listener() {
+				@Override
+				public void onSuccess(MqttEngine.Token token) {
+					if (MqttLog.isLoggable(MqttLog.INFO, MqttLog.SUBSCRIBE)) {
+						MqttLog.i("Subscribed to " + topic);
+					}
+					if (store != null) {
+						int[] granted = token.getGrantedQos();
+						int[] requested = new int[] { qos };
+						store.put(new String[] { topic }, requested, granted != null && granted.length == 1 ? granted : requested);
+					}
+					dispatchSubscribedEvent(topic, qos);
+					// Fire per-op callback
+					if (callbackRef != CoronaLua.REFNIL) {
+						dispatchPerOpSubscribedCallback(callbackRef, topic, qos);
+					}
+				}
+
+				@Override
+				public void onFailure(Throwable exception) {
+					if (MqttLog.isLoggable(MqttLog.ERROR, MqttLog.SUBSCRIBE)) {
+						MqttLog.e("Subscribe failed for " + topic, exception);
+					}
+					if (subscriptions.remove(subscription)) {
+						releaseHandlersLater(Collections.singletonList(subscription));
+					}
+					dispatchErrorEvent("Subscribe failed: " + (exception != null ? exception.getMessage() : "unknown"));
+					if (callbackRef != CoronaLua.REFNIL) {
+						dispatchPerOpCallback(callbackRef, "error", true, "Subscribe failed");
+					}
+				}
+			});
+		} catch (EngineException e) {
+			MqttLog.e("subscribe failed", e);
+		}
+
+		return 0;
+	}
+
+	/** client.unsubscribe( topic [, callback] ) */
+	int unsubscribe(LuaState L, int base) {
+		if (engine == null || !engine.isConnected()) {
+			MqttLog.w("unsubscribe: not connected");
+			return 0;
+		}
+
+		final String topic = L.checkString(base);
+
+		// Optional per-operation callback (2nd arg)
+		final int callbackRef = L.isFunction(base + 1) ? CoronaLua.newRef(L, base + 1) : CoronaLua.REFNIL;
+
+		Subscription removed = subscriptions.remove(topic);
+		if (removed != null) {
+			removed.releaseHandler(L);
+		}
+
+		try {
+			engine.unsubscribe(new String[] { topic }, new MqttEngine.Listener() {
+				@Override
+				public void onSuccess(MqttEngine.Token token) {
+					if (MqttLog.isLoggable(MqttLog.INFO, MqttLog.SUBSCRIBE)) {
+						MqttLog.i("Unsubscribed from " + topic);
+					}
+					SessionStore store = session;
+					if (store != null) {
+						store.remove(new String[] { topic });
+					}
+					dispatchUnsubscribedEvent(topic);
+					// Fire per-op callback
+					if (callbackRef != CoronaLua.REFNIL) {
+						dispatchPerOpUnsubscribedCallback(callbackRef, topic);
+					}
+				}
+
+				@Override
+				public void onFailure(Throwable exception) {
+					if (MqttLog.isLoggable(MqttLog.ERROR, MqttLog.SUBSCRIBE)) {
+						MqttLog.e("Unsubscribe failed for " + topic, exception);
+					}
+					dispatchErrorEvent("Unsubscribe failed: " + (exception != null ? exception.getMessage() : "unknown"));
+					if (callbackRef != CoronaLua.REFNIL) {
+						dispatchPerOpCallback(callbackRef, "error", true, "Unsubscribe failed");
+					}
+				}
+			});
+		} catch (EngineException e) {
+			MqttLog.e("unsubscribe failed", e);
+		}
+
+		return 0;
+	}
+
+	/** client.subscribeMany( { { topic=, qos= [, payloadType=] }, ... } [, callback] ) */
+	int subscribeMany(LuaState L, int base) {
+		if (engine == null || !engine.isConnected()) {
+			MqttLog.w("subscribeMany: not connected");
+			return 0;
+		}
+		if (!L.isTable(base)) {
+			MqttLog.e("subscribeMany: requires a table argument");
+			return 0;
+		}
+
+		int count = L.length(base);
+		final Subscription[] subs = new Subscription[count];
+		final String[] topics = new String[count];
+		final int[] qos = new int[count];
+		int n = 0;
+		for (int i = 1; i <= count; i++) {
+			L.rawGet(base, i);
+			if (L.isTable(-1)) {
+				L.getField(-1, "topic");
+				String topic = L.isString(-1) ? L.toString(-1) : null;
+				L.pop(1);
+
+				L.getField(-1, "qos");
+				int topicQos = L.isNumber(-1) ? (int)L.toNumber(-1) : 0;
+				L.pop(1);
+
+				Subscription sub = topic != null ? Subscription.fromLua(L, -1, topic, topicQos) : null;
+				if (sub != null) {
+					subs[n] = sub;
+					topics[n] = sub.filter;
+					qos[n] = topicQos;
+					n++;
+				}
+			}
+			L.pop(1);
+		}
+		if (n != count) {
+			MqttLog.e("subscribeMany: every entry needs a topic, and a valid group if it has one");
+			for (int i = 0; i < n; i++) {
+				subs[i].releaseHandler(L);
+			}
+			return 0;
+		}
+		if (count == 0) return 0;
+
+		// Optional per-operation callback (2nd arg)
+		final int callbackRef = L.isFunction(base + 1) ? CoronaLua.newRef(L, base + 1) : CoronaLua.REFNIL;
+
+		for (Subscription sub : subs) {
+			Subscription previous = subscriptions.put(sub);
+			if (previous != null) {
+				previous.releaseHandler(L);
+			}
+		}
+
+		// Skip the SUBSCRIBE if the resumed broker session holds every filter already
+		final SessionStore store = session;
+		if (store != null && heldBySession(store, topics, qos)) {
+			if (MqttLog.isLoggable(MqttLog.INFO, MqttLog.SUBSCRIBE)) {
+				MqttLog.i("Subscriptions to " + topics.length + " topics kept by the broker session");
+			}
+			int[] granted = new int[topics.length];
+			for (int i = 0; i < topics.length; i++) {
+				granted[i] = store.grantedQosOf(topics[i]);
+				if (granted[i] < 0) granted[i] = qos[i]; // the broker reported no session meanwhile
+			}
+			dispatchSubscribedManyEvent(CoronaLua.REFNIL, topics, granted);
+			if (callbackRef != CoronaLua.REFNIL) {
+				dispatchSubscribedManyEvent(callbackRef, topics, granted);
+			}
+			return 0;
+		}
+
+		try {
+			engine.subscribe(topics, qos, new MqttEngine.Listener() {
+				@Override
+				public void onSuccess(MqttEngine.Token token) {
+					int[] granted = token.getGrantedQos();
+					if (granted == null || granted.length != topics.length) {
+						granted = qos;
+					}
+					if (store != null) {
+						store.put(topics, qos, granted);
+					}
+					ArrayList<Subscription> rejected = new ArrayList<Subscription>();
+					for (int i = 0; i < topics.length; i++) {
+						if (granted[i] == SUBACK_FAILURE && subscriptions.remove(subs[i])) {
+							rejected.add(subs[i]);
+						}
+					}
+					releaseHandlersLater(rejected);
+					if (MqttLog.isLoggable(MqttLog.INFO, MqttLog.SUBSCRIBE)) {
+						MqttLog.i("Subscribed to " + topics.length + " topics");
+					}
+					dispatchSubscribedManyEvent(CoronaLua.REFNIL, topics, granted);
+					if (callbackRef != CoronaLua.REFNIL) {
+						dispatchSubscribedManyEvent(callbackRef, topics, granted);
+					}
+				}
+
+				@Override
+				public void onFailure(Throwable exception) {
+					MqttLog.e("subscribeMany failed", exception);
+					ArrayList<Subscription> failed = new ArrayList<Subscription>();
+					for (Subscription sub : subs) {
+						if (subscriptions.remove(sub)) {
+							failed.add(sub);
+						}
+					}
+					releaseHandlersLater(failed);
+					dispatchErrorEvent("Subscribe failed: " + (exception != null ? exception.getMessage() : "unknown"));
+					if (callbackRef != CoronaLua.REFNIL) {
+						dispatchPerOpCallback(callbackRef, "error", true, "Subscribe failed");
+					}
+				}
+			});
+		} catch (EngineException e) {
+			MqttLog.e("subscribeMany failed", e);
+		}
+
+		return 0;
+	}
+
+	/** client.unsubscribeMany( { topic or { topic= [, group=] }, ... } [, callback] ) */
+	int unsubscribeMany(LuaState L, int base) {
+		if (engine == null || !engine.isConnected()) {
+			MqttLog.w("unsubscribeMany: not connected");
+			return 0;
+		}
+		if (!L.isTable(base)) {
+			MqttLog.e("unsubscribeMany: requires a table argument");
+			return 0;
+		}
+
+		int count = L.length(base);
+		final String[] topics = new String[count];
+		int n = 0;
+		for (int i = 1; i <= count; i++) {
+			L.rawGet(base, i);
+			if (L.isString(-1)) {
+				topics[n++] = L.toString(-1);
+			} else if (L.isTable(-1)) {
+				// Entries may also be { topic= [, group=] } tables, as passed to subscribeMany
+				L.getField(-1, "topic");
+				L.getField(-2, "group");
+				if (L.isString(-2)) {
+					topics[n++] = L.isString(-1)
+						? Subscription.SHARE_PREFIX + L.toString(-1) + "/" + L.toString(-2)
+						: L.toString(-2);
+				}
+				L.pop(2);
+			}
+			L.pop(1);
+		}
+		if (n != count) {
+			MqttLog.e("unsubscribeMany: every entry needs a topic");
+			return 0;
+		}
+		if (count == 0) return 0;
+
+		// Optional per-operation callback (2nd arg)
+		final int callbackRef = L.isFunction(base + 1) ? CoronaLua.newRef(L, base + 1) : CoronaLua.REFNIL;
+
+		for (String topic : topics) {
+			Subscription removed = subscriptions.remove(topic);
+			if (removed != null) {
+				removed.releaseHandler(L);
+			}
+		}
+
+		try {
+			engine.unsubscribe(topics, new MqttEngine.Listener() {
+				@Override
+				public void onSuccess(MqttEngine.Token token) {
+					if (MqttLog.isLoggable(MqttLog.INFO, MqttLog.SUBSCRIBE)) {
+						MqttLog.i("Unsubscribed from " + topics.length + " topics");
+					}
+					SessionStore store = session;
+					if (store != null) {
+						store.remove(topics);
+					}
+					dispatchUnsubscribedManyEvent(CoronaLua.REFNIL, topics);
+					if (callbackRef != CoronaLua.REFNIL) {
+						dispatchUnsubscribedManyEvent(callbackRef, topics);
+					}
+				}
+
+				@Override
+				public void onFailure(Throwable exception) {
+					MqttLog.e("unsubscribeMany failed", exception);
+					dispatchErrorEvent("Unsubscribe failed: " + (exception != null ? exception.getMessage() : "unknown"));
+					if (callbackRef != CoronaLua.REFNIL) {
+						dispatchPerOpCallback(callbackRef, "error", true, "Unsubscribe failed");
+					}
+				}
+			});
+		} catch (EngineException e) {
+			MqttLog.e("unsubscribeMany failed", e);
+		}
+
+		return 0;
+	}
+
+	/** client.publish( topic, payload, { qos=, retain=, payloadType=, compress=, messageExpiry=, batch= } [, callback] ) -> status, queueDepth */
+	int publish(LuaState L, int base) {
+		final String topic = L.checkString(base);
+
+		int qos = 0;
+		boolean retain = false;
+		boolean binary = false;
+		long expiry = 0;
+		int compressLevel = NO_COMPRESSION;
+		boolean batch = false;
+
+		if (L.isTable(base + 2)) {
+			L.getField(base + 2, "qos");
+			qos = L.isNumber(-1) ? (int)L.toNumber(-1) : 0;
+			L.pop(1);
+
+			L.getField(base + 2, "retain");
+			retain = L.isBoolean(-1) && L.toBoolean(-1);
+			L.pop(1);
+
+			L.getField(base + 2, "payloadType");
+			binary = L.isString(-1) && "binary".equals(L.toString(-1));
+			L.pop(1);
+
+			// MQTT 5 only: seconds the broker keeps the message for subscribers
+			L.getField(base + 2, "messageExpiry");
+			expiry = L.isNumber(-1) ? Math.max(0, (long)L.toNumber(-1)) : 0;
+			L.pop(1);
+
+			L.getField(base + 2, "compress");
+			if (L.isString(-1)) {
+				compressLevel = "fast".equals(L.toString(-1)) ? PayloadCodec.LEVEL_FAST : PayloadCodec.LEVEL_DEFAULT;
+			} else if (L.isBoolean(-1) && L.toBoolean(-1)) {
+				compressLevel = PayloadCodec.LEVEL_DEFAULT;
+			}
+			L.pop(1);
+
+			L.getField(base + 2, "batch");
+			batch = L.isBoolean(-1) && L.toBoolean(-1);
+			L.pop(1);
+		}
+
+		// Tables are serialized as JSON; binary payloads take the Lua string's bytes without re-encoding
+		byte[] payload;
+		if (L.isTable(base + 1)) {
+			payload = JsonCodec.encode(L, base + 1);
+		} else if (!L.isString(base + 1)) {
+			payload = new byte[0];
+		} else if (binary) {
+			payload = L.toByteArray(base + 1);
+		} else {
+			payload = L.toString(base + 1).getBytes(InboundMessage.UTF8);
+		}
+		if (compressLevel != NO_COMPRESSION) {
+			payload = compress(payload, compressLevel);
+		}
+
+		// Small fire-and-forget publishes can ride in the next batch envelope
+		PublishBatcher batcher = publishBatcher;
+		if (batch && batcher != null && qos == 0 && !retain && expiry == 0 && !L.isFunction(base + 3)
+				&& engine != null && engine.isConnected() && !hasQueuedPublishes()
+				&& batcher.add(topic, payload)) {
+			ClientStats s = stats;
+			if (s != null) s.publishesBatched.incrementAndGet();
+			return pushPublishResult(L, STATUS_BATCHED, batcher.size());
+		}
+
+		if (engine == null || !engine.isConnected() || hasQueuedPublishes()) {
+			ClientStats s = stats;
+			boolean hasOutbox;
+			boolean offered = false;
+			synchronized (outboxLock) {
+				hasOutbox = outbox != null;
+				if (hasOutbox) {
+					// Queue while offline, or behind already-queued publishes to keep their order
+					offered = outbox.offer(topic, payload, qos, retain);
+				}
+			}
+			if (!hasOutbox) {
+				MqttLog.w("publish: not connected");
+				if (s != null) s.publishesRejected.incrementAndGet();
+				return pushPublishResult(L, STATUS_REJECTED, 0);
+			}
+			String status = STATUS_QUEUED;
+			if (!offered) {
+				MqttLog.w("publish: offline queue full, dropping message for " + topic);
+				dispatchErrorEvent("Offline queue full");
+				status = STATUS_REJECTED;
+				if (s != null) s.offlineDropped.incrementAndGet();
+			} else if (s != null) {
+				s.offlineQueued.incrementAndGet();
+			}
+			if (engine != null && engine.isConnected()) {
+				drainOutbox();
+			}
+			int depth;
+			synchronized (outboxLock) {
+				depth = outbox != null ? outbox.size() : 0;
+			}
+			return pushPublishResult(L, status, depth);
+		}
+
+		// Optional per-operation callback (4th arg)
+		int callbackRef = L.isFunction(base + 3) ? CoronaLua.newRef(L, base + 3) : CoronaLua.REFNIL;
+
+		String status;
+		int depth;
+		synchronized (sendLock) {
+			status = sendOrQueue(new PendingPublish(topic, payload, qos, retain, expiry, callbackRef));
+			depth = sendQueue.size();
+		}
+		if (status == STATUS_REJECTED) {
+			if (MqttLog.isLoggable(MqttLog.WARN, MqttLog.PUBLISH)) {
+				MqttLog.w("publish: send queue full, rejecting message for " + topic);
+			}
+			if (callbackRef != CoronaLua.REFNIL) {
+				CoronaLua.deleteRef(L, callbackRef);
+			}
+		}
+		return pushPublishResult(L, status, depth);
+	}
+
+	private static int pushPublishResult(LuaState L, String status, int queueDepth) {
+		L.pushString(status);
+		L.pushInteger(queueDepth);
+		return 2;
+	}
+
+	// ========================================================================
+	// Send queue and in-flight window
+	// ========================================================================
+
+	/** A publish waiting for room in the in-flight window. */
+	private static final class PendingPublish {
+		final String topic;
+		final byte[] payload;
+		final int qos;
+		final boolean retain;
+		final long expiry;
+		final int callbackRef;
+		final long createdAt = System.nanoTime();
+
+		PendingPublish(String topic, byte[] payload, int qos, boolean retain, long expiry, int callbackRef) {
+			this.topic = topic;
+			this.payload = payload;
+			this.qos = qos;
+			this.retain = retain;
+			this.expiry = expiry;
+			this.callbackRef = callbackRef;
+		}
+	}
+
+	/** Sends now if nothing is queued and the window has room, else queues. Holds sendLock. */
+	private String sendOrQueue(PendingPublish publish) {
+		if (sendQueue.isEmpty() && trySend(publish)) {
+			return STATUS_SENT;
+		}
+		drainWanted = true;
+		ClientStats s = stats;
+		if (sendQueue.size() >= maxQueued) {
+			if (s != null) s.publishesRejected.incrementAndGet();
+			return STATUS_REJECTED;
+		}
+		sendQueue.addLast(publish);
+		if (s != null) s.publishesQueued.incrementAndGet();
+		return STATUS_QUEUED;
+	}
+
+	/**
+	 * Hands a publish to the engine. Returns false only when the in-flight window
+	 * is full; other failures are reported and count as handled.
+	 */
+	private boolean trySend(PendingPublish publish) {
+		MqttEngine client = engine;
+		if (client == null || !client.isConnected()) return false;
+		try {
+			client.publish(publish.topic, publish.payload, publish.qos, publish.retain, publish.expiry, null,
+					newPublishListener(publish.topic, publish.callbackRef, publish.createdAt));
+			countSent(publish.payload.length);
+			return true;
+		} catch (EngineException e) {
+			if (e.windowFull) {
+				return false;
+			}
+			MqttLog.e("publish failed", e);
+			ClientStats s = stats;
+			if (s != null) s.publishesFailed.incrementAndGet();
+			dispatchErrorEvent("Publish failed: " + e.getMessage());
+			if (publish.callbackRef != CoronaLua.REFNIL) {
+				dispatchPerOpCallback(publish.callbackRef, "error", true, "Publish failed");
+			}
+			return true;
+		}
+	}
+
+	/** Sends queued publishes while the window has room; fires `drain` once the backlog clears. */
+	private void pumpSendQueue() {
+		boolean drained = false;
+		synchronized (sendLock) {
+			PendingPublish next;
+			while ((next = sendQueue.peekFirst()) != null && trySend(next)) {
+				sendQueue.pollFirst();
+			}
+			if (sendQueue.isEmpty() && drainWanted) {
+				drainWanted = false;
+				drained = true;
+			}
+		}
+		if (drained) {
+			dispatchDrainEvent();
+		}
+	}
+
+	/** Listener for a publish made at createdAt (System.nanoTime). */
+	private MqttEngine.Listener newPublishListener(final String topic, final int callbackRef, final long createdAt) {
+		return new MqttEngine.Listener() {
+			@Override
+			public void onSuccess(MqttEngine.Token token) {
+				int mid = token.getMessageId();
+				if (MqttLog.isLoggable(MqttLog.DEBUG, MqttLog.PUBLISH)) {
+					MqttLog.d("Published to " + topic + " mid=" + mid);
+				}
+				long latency = System.nanoTime() - createdAt;
+				countAcked(latency);
+				double latencyMs = latency / 1e6;
+				dispatchPublishedEvent(mid, latencyMs);
+				// Fire per-op callback
+				if (callbackRef != CoronaLua.REFNIL) {
+					dispatchPerOpPublishedCallback(callbackRef, mid, latencyMs);
+				}
+			}
+
+			@Override
+			public void onFailure(Throwable exception) {
+				if (MqttLog.isLoggable(MqttLog.ERROR, MqttLog.PUBLISH)) {
+					MqttLog.e("Publish failed for " + topic, exception);
+				}
+				ClientStats s = stats;
+				if (s != null) s.publishesFailed.incrementAndGet();
+				dispatchErrorEvent("Publish failed: " + (exception != null ? exception.getMessage() : "unknown"));
+				if (callbackRef != CoronaLua.REFNIL) {
+					dispatchPerOpCallback(callbackRef, "error", true, "Publish failed");
+				}
+			}
+		};
+	}
+
+	// ========================================================================
+	// Internal helpers
+	// ========================================================================
+
+	/**
+	 * Applies the subscriptions matching an inbound topic, picking up the
+	 * payload type and any onMessage handlers, and decompresses and parses the
+	 * payload if a matching subscription asks for it. Called on the Paho thread,
+	 * or on the topic's worker lane with the `workers` option.
+	 */
+	private InboundMessage route(String topic, byte[] payload, int qos, boolean retained,
+			List<Subscription> matches, long receivedAt) {
+		ClientStats s = stats;
+		boolean binary = false;
+		boolean conflate = false;
+		boolean compressed = false;
+		boolean json = false;
+		boolean highPriority = false;
+		RateLimiter rateLimit = null;
+		List<Subscription> handlers = null;
+		if (matches != null) {
+			for (Subscription sub : matches) {
+				binary |= sub.binary;
+				conflate |= sub.conflate;
+				compressed |= sub.compressed;
+				json |= sub.json;
+				highPriority |= sub.highPriority;
+				if (rateLimit == null) {
+					rateLimit = sub.rateLimit;
+				}
+				if (sub.group != null && s != null) {
+					s.countGroup(sub.group, payload.length);
+				}
+				if (sub.handlerRef != CoronaLua.REFNIL) {
+					if (handlers == null) {
+						handlers = new ArrayList<Subscription>(matches.size());
+					}
+					handlers.add(sub);
+				}
+			}
+		}
+		if (compressed) {
+			payload = codec().decode(payload);
+		}
+		Object decoded = null;
+		String decodeError = null;
+		if (json) {
+			try {
+				decoded = JsonCodec.parse(payload);
+			} catch (ParseException e) {
+				decodeError = e.getMessage() + " at offset " + e.getErrorOffset();
+				if (MqttLog.isLoggable(MqttLog.WARN, MqttLog.MESSAGE)) {
+					MqttLog.w("Could not decode JSON payload on " + topic + ": " + decodeError);
+				}
+			}
+		}
+		return new InboundMessage(topic, payload, qos, retained, binary, conflate, handlers, receivedAt, decoded, decodeError,
+				highPriority, rateLimit);
+	}
+
+	/** The longest dedup window of the matching subscriptions, or 0 if none has dedup. */
+	private static int dedupWindowMs(List<Subscription> matches) {
+		int windowMs = 0;
+		if (matches != null) {
+			for (Subscription sub : matches) {
+				windowMs = Math.max(windowMs, sub.dedupWindowMs);
+			}
+		}
+		return windowMs;
+	}
+
+	private synchronized DuplicateFilter duplicateFilter() {
+		if (duplicates == null) {
+			duplicates = new DuplicateFilter();
+		}
+		return duplicates;
+	}
+
+	/** Whether any of the matching subscriptions takes PublishBatcher envelopes. */
+	private static boolean isBatched(List<Subscription> matches) {
+		if (matches == null) return false;
+		for (Subscription sub : matches) {
+			if (sub.batched) return true;
+		}
+		return false;
+	}
+
+	/** Sends a PublishBatcher envelope as one QoS 0 publish. Called with the batcher's lock held. */
+	void sendBatch(String topic, byte[] envelope, int count) {
+		ClientStats s = stats;
+		if (s != null) s.batchesSent.incrementAndGet();
+		String status;
+		synchronized (sendLock) {
+			status = sendOrQueue(new PendingPublish(topic, envelope, 0, false, 0, CoronaLua.REFNIL));
+		}
+		if (status == STATUS_REJECTED) {
+			MqttLog.w("publish: send queue full, dropping a batch of " + count + " publishes");
+		}
+	}
+
+	private PayloadCodec codec() {
+		PayloadCodec c = codec;
+		if (c != null) return c;
+		synchronized (this) {
+			if (codec == null) {
+				codec = new PayloadCodec(compressMinBytes);
+			}
+			return codec;
+		}
+	}
+
+	/** Frames a payload with the codec, counting what compression saved. */
+	private byte[] compress(byte[] payload, int level) {
+		byte[] frame = codec().encode(payload, level);
+		ClientStats s = stats;
+		if (s != null && frame.length < payload.length) {
+			s.publishesCompressed.incrementAndGet();
+			s.bytesSavedByCompression.addAndGet(payload.length - frame.length);
+		}
+		return frame;
+	}
+
+	/** Deletes onMessage handler refs on the runtime thread, after any message tasks already queued for them. */
+	private void releaseHandlersLater(final List<Subscription> released) {
+		if (released.isEmpty()) return;
+		post(new RuntimeTask() {
+			@Override
+			public void run(LuaState L) {
+				for (Subscription sub : released) {
+					sub.releaseHandler(L);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Queues a routed message for Lua: held while suspended, conflated, batched
+	 * or posted as a message event. Paho thread, a worker lane, or the client
+	 * timer for messages a rate limit held back.
+	 */
+	void handOff(InboundMessage inbound) {
+		BackgroundBuffer held = background;
+		if (held != null && held.add(inbound)) {
+			return; // delivered on resume
+		}
+		MessageBatcher batcher = messageBatcher;
+		if (inbound.conflate) {
+			ClientStats s = stats;
+			if (conflator.add(inbound) && s != null) {
+				s.messagesConflated.incrementAndGet();
+			}
+		} else if (batcher != null && !inbound.highPriority) {
+			batcher.add(inbound);
+		} else {
+			dispatchMessageEvent(inbound);
+		}
+	}
+
+	/** Runs limiter.release() after delayMs on the client's timer. */
+	ScheduledFuture<?> scheduleRateLimitRelease(final RateLimiter limiter, long delayMs) {
+		return schedule(new Runnable() {
+			@Override
+			public void run() {
+				limiter.release(MqttClientHandle.this);
+			}
+		}, delayMs);
+	}
+
+	// ========================================================================
+	// Timer
+	// ========================================================================
+
+	/** Runs task after delayMs on the client's timer thread. Returns null once the client is released. */
+	ScheduledFuture<?> schedule(Runnable task, long delayMs) {
+		try {
+			return timer().schedule(task, delayMs, TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException e) {
+			return null;
+		}
+	}
+
+	/** Runs task every periodMs on the client's timer thread. Returns null once the client is released. */
+	ScheduledFuture<?> scheduleAtFixedRate(Runnable task, long periodMs) {
+		try {
+			return timer().scheduleAtFixedRate(task, periodMs, periodMs, TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException e) {
+			return null;
+		}
+	}
+
+	private ScheduledExecutorService timer() {
+		synchronized (timerLock) {
+			if (timer == null) {
+				timer = Executors.newSingleThreadScheduledExecutor(daemonThreads("SolarMQTT-" + id + "-timer"));
+			}
+			return timer;
+		}
+	}
+
+	/** Names the plugin's threads and makes them daemons, so they never keep the app process alive. */
+	static ThreadFactory daemonThreads(final String name) {
+		return new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, name);
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+	}
+
+	/** Stops the timer thread for good; later schedule() calls are refused. */
+	private void stopTimer() {
+		synchronized (timerLock) {
+			timer().shutdownNow();
+		}
+	}
+
+	/** Disconnects and closes the engine and drops per-connection state. */
+	void close() {
+		cancelReconnect();
+		stopStatsTimer();
+		PublishBatcher pending = publishBatcher;
+		if (pending != null) {
+			publishBatcher = null;
+			pending.close();
+		}
+		if (engine != null) {
+			try {
+				engine.close();
+			} catch (EngineException e) {
+				MqttLog.e("close: Failed to clean up MQTT client", e);
+			}
+			engine = null;
+		}
+		MessageWorkers lanes = workers;
+		if (lanes != null) {
+			workers = null;
+			lanes.shutdown();
+		}
+		if (messageBatcher != null) {
+			messageBatcher.close();
+			messageBatcher = null;
+		}
+		conflator.clear();
+		synchronized (this) {
+			if (codec != null) {
+				codec.close();
+				codec = null;
+			}
+		}
+		BackgroundBuffer held = background;
+		background = null;
+		if (held != null) {
+			held.drain();
+		}
+		synchronized (this) {
+			suspendedFilters = null;
+		}
+		synchronized (outboxLock) {
+			if (outbox != null) {
+				outbox.close();
+				outbox = null;
+			}
+		}
+		ArrayList<PendingPublish> unsent;
+		synchronized (sendLock) {
+			unsent = new ArrayList<PendingPublish>(sendQueue);
+			sendQueue.clear();
+			drainWanted = false;
+		}
+		// Publishes still waiting for the window will never be sent; tell their callbacks, which releases the refs
+		for (PendingPublish publish : unsent) {
+			if (publish.callbackRef != CoronaLua.REFNIL) {
+				dispatchPerOpCallback(publish.callbackRef, "error", true, "Client closed");
+			}
+		}
+		SessionStore store = session;
+		if (store != null) {
+			store.flush();
+		}
+		List<Subscription> released = subscriptions.clear();
+		// Stop the rate limits handing on held messages now, not when the handlers are released
+		for (Subscription sub : released) {
+			if (sub.rateLimit != null) {
+				sub.rateLimit.clear();
+			}
+		}
+		releaseHandlersLater(released);
+	}
+
+	// ========================================================================
+	// Stats
+	// ========================================================================
+
+	/** client.getStats() -> table of counters, queue depths and latency histograms, or nil if stats are off */
+	int getStats(LuaState L, int base) {
+		ClientStats s = stats;
+		if (s == null) {
+			L.pushNil();
+			return 1;
+		}
+		L.newTable(0, 20);
+		pushStatsFields(L, s);
+		return 1;
+	}
+
+	/** client.getLast( topicOrFilter ) -> cached message table (or nil) for a topic, array of them for a filter */
+	int getLast(LuaState L, int base) {
+		String topicOrFilter = L.checkString(base);
+		LastValueCache last = cache;
+		if (last == null) {
+			MqttLog.w("getLast: the cache connect option is not set");
+			L.pushNil();
+			return 1;
+		}
+		last.push(L, topicOrFilter);
+		return 1;
+	}
+
+	/**
+	 * Posts a task to the runtime thread, timing its wait in the queue when
+	 * stats are on. Returns false if there was no runtime to take it.
+	 */
+	boolean post(RuntimeTask task) {
+		ClientStats s = stats;
+		if (s == null) {
+			return bridge.send(task);
+		}
+		if (!bridge.send(s.timed(task))) {
+			s.tasksPending.decrementAndGet();
+			return false;
+		}
+		return true;
+	}
+
+	/** Records the arrival-to-dispatch time of a message. Runtime thread. */
+	void recordDelivery(InboundMessage message) {
+		ClientStats s = stats;
+		if (s != null && message.receivedAt != 0) {
+			s.deliveryLatency.record(System.nanoTime() - message.receivedAt);
+		}
+	}
+
+	private void countSent(int bytes) {
+		ClientStats s = stats;
+		if (s != null) {
+			s.publishesSent.incrementAndGet();
+			s.bytesPublished.addAndGet(bytes);
+		}
+	}
+
+	private void countAcked(long latencyNanos) {
+		ClientStats s = stats;
+		if (s != null) {
+			s.publishesAcked.incrementAndGet();
+			s.ackLatency.record(latencyNanos);
+		}
+	}
+
+	private void pushStatsFields(LuaState L, ClientStats s) {
+		s.pushFields(L, events.size());
+		int sendQueueDepth;
+		synchronized (sendLock) {
+			sendQueueDepth = sendQueue.size();
+		}
+		L.pushInteger(sendQueueDepth);
+		L.setField(-2, "sendQueueDepth");
+		int offlineQueueDepth = 0;
+		synchronized (outboxLock) {
+			if (outbox != null) {
+				offlineQueueDepth = outbox.size();
+			}
+		}
+		L.pushInteger(offlineQueueDepth);
+		L.setField(-2, "offlineQueueDepth");
+		MessageWorkers lanes = workers;
+		L.pushInteger(lanes != null ? lanes.pending() : 0);
+		L.setField(-2, "workerQueueDepth");
+		DuplicateFilter dedup;
+		synchronized (this) {
+			dedup = duplicates;
+		}
+		L.pushNumber(dedup != null ? dedup.suppressed() : 0);
+		L.setField(-2, "duplicatesSuppressed");
+		LastValueCache last = cache;
+		if (last != null) {
+			last.pushStats(L, "cache");
+		}
+		pushRateLimitStats(L);
+	}
+
+	/** Sets a rateLimits table of the limiter counters, keyed by filter, if any subscription has a rateLimit. */
+	private void pushRateLimitStats(LuaState L) {
+		boolean any = false;
+		for (Subscription sub : subscriptions.snapshot()) {
+			if (sub.rateLimit == null) continue;
+			if (!any) {
+				L.newTable();
+				any = true;
+			}
+			sub.rateLimit.pushStats(L, sub.filter);
+		}
+		if (any) {
+			L.setField(-2, "rateLimits");
+		}
+	}
+
+	private synchronized void startStatsTimer(long intervalMs) {
+		statsTask = scheduleAtFixedRate(new Runnable() {
+			@Override
+			public void run() {
+				dispatchStatsEvent();
+			}
+		}, intervalMs);
+	}
+
+	private synchronized void stopStatsTimer() {
+		if (statsTask != null) {
+			statsTask.cancel(false);
+			statsTask = null;
+		}
+	}
+
+	// ========================================================================
+	// App lifecycle (runtime thread)
+	// ========================================================================
+
+	/** The app went to the background: hold inbound messages and drop high-rate subscriptions, per the policy. */
+	void suspend() {
+		SuspendPolicy policy;
+		synchronized (this) {
+			policy = suspendPolicy;
+		}
+		if (policy == null || background != null) return;
+		background = new BackgroundBuffer(policy);
+
+		if (policy.unsubscribe.length == 0) return;
+		ArrayList<String> filters = new ArrayList<String>();
+		for (String filter : policy.unsubscribe) {
+			if (subscriptions.get(filter) != null) {
+				filters.add(filter);
+			}
+		}
+		if (filters.isEmpty()) return;
+
+		String[] topics = filters.toArray(new String[filters.size()]);
+		synchronized (this) {
+			// Also keeps them out of a reconnect's resubscribe until resume
+			suspendedFilters = topics;
+		}
+		MqttEngine client = engine;
+		if (client == null || !client.isConnected()) return;
+		try {
+			client.unsubscribe(topics, null);
+			// If the app is killed in the background, the next launch must subscribe to these again
+			SessionStore store = session;
+			if (store != null) {
+				store.remove(topics);
+			}
+			MqttLog.i("Suspended " + topics.length + " subscriptions while in the background");
+		} catch (EngineException e) {
+			MqttLog.w("suspend: unsubscribe failed: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * The app is back: restore suspended subscriptions, then send one `resumed`
+	 * summary event followed by the held messages, RESUME_MESSAGES_PER_FRAME
+	 * per frame so a long backlog does not stall the first frames.
+	 */
+	void resume() {
+		final BackgroundBuffer held = background;
+		if (held == null || !held.startRelease()) return;
+
+		final int resubscribed = restoreSuspendedFilters();
+		final long backgroundMs = (System.nanoTime() - held.suspendedAt) / 1000000L;
+		final int received = held.received();
+		final int dropped = held.dropped();
+		final int delivered = held.size();
+
+		boolean posted = post(new RuntimeTask() {
+			@Override
+			public void run(LuaState L) {
+				newEvent(L, "resumed");
+				L.pushNumber(backgroundMs);
+				L.setField(-2, "backgroundMs");
+				L.pushInteger(received);
+				L.setField(-2, "received");
+				L.pushInteger(dropped);
+				L.setField(-2, "dropped");
+				L.pushInteger(delivered);
+				L.setField(-2, "delivered");
+				L.pushInteger(resubscribed);
+				L.setField(-2, "resubscribed");
+				try {
+					CoronaLua.dispatchEvent(L, getListener(), 0);
+				} catch (Exception e) {
+					MqttLog.e("dispatchResumedEvent failed", e);
+				}
+				releaseHeld(L, held);
+			}
+		});
+		if (!posted) {
+			background = null;
+			held.drain();
+		}
+	}
+
+	/**
+	 * Delivers the next slice of held messages and posts the rest for the next
+	 * frame. New messages keep queueing behind them until the buffer empties,
+	 * then go straight to Lua again. Runtime thread.
+	 */
+	private void releaseHeld(LuaState L, final BackgroundBuffer held) {
+		for (InboundMessage message : held.take(RESUME_MESSAGES_PER_FRAME)) {
+			deliver(L, message);
+		}
+		if (held.isClosed()) {
+			if (background == held) {
+				background = null;
+			}
+			return;
+		}
+		boolean posted = post(new RuntimeTask() {
+			@Override
+			public void run(LuaState L) {
+				releaseHeld(L, held);
+			}
+		});
+		if (!posted) {
+			// No later frame will run: hand over what is left now
+			for (InboundMessage message : held.drain()) {
+				deliver(L, message);
+			}
+			if (background == held) {
+				background = null;
+			}
+		}
+	}
+
+	/** Re-subscribes the filters dropped by suspend() in a single SUBSCRIBE; returns how many. */
+	private int restoreSuspendedFilters() {
+		String[] filters;
+		synchronized (this) {
+			filters = suspendedFilters;
+			suspendedFilters = null;
+		}
+		MqttEngine client = engine;
+		if (filters == null || client == null || !client.isConnected()) return 0;
+
+		ArrayList<Subscription> subs = new ArrayList<Subscription>(filters.length);
+		for (String filter : filters) {
+			Subscription sub = subscriptions.get(filter);
+			if (sub != null) {
+				subs.add(sub); // still wanted: not unsubscribed while in the background
+			}
+		}
+		if (subs.isEmpty()) return 0;
+
+		String[] topics = new String[subs.size()];
+		int[] qos = new int[subs.size()];
+		for (int i = 0; i < topics.length; i++) {
+			topics[i] = subs.get(i).filter;
+			qos[i] = subs.get(i).qos;
+		}
+		final String[] restoring = topics;
+		final int[] restoringQos = qos;
+		try {
+			client.subscribe(topics, qos, new MqttEngine.Listener() {
+				@Override
+				public void onSuccess(MqttEngine.Token token) {
+					recordSubscribed(restoring, restoringQos, token);
+				}
+
+				@Override
+				public void onFailure(Throwable exception) {
+					MqttLog.e("Restoring suspended subscriptions failed", exception);
+					dispatchErrorEvent("Resubscribe failed: " + (exception != null ? exception.getMessage() : "unknown"));
+				}
+			});
+		} catch (EngineException e) {
+			MqttLog.e("resume failed", e);
+			return 0;
+		}
+		return topics.length;
+	}
+
+	// ========================================================================
+	// Automatic reconnect
+	// ========================================================================
+
+	private synchronized void cancelReconnect() {
+		connectionLostAt = 0;
+		reconnectAttempts = 0;
+		if (reconnectTask != null) {
+			reconnectTask.cancel(false);
+			reconnectTask = null;
+		}
+	}
+
+	/** Schedules the next reconnect attempt using the backoff policy. */
+	private synchronized void scheduleReconnect() {
+		if (reconnectPolicy == null || connectionLostAt == 0 || engine == null) return;
+
+		final int attempt = reconnectAttempts;
+		if (!reconnectPolicy.allows(attempt)) {
+			connectionLostAt = 0;
+			reconnectAttempts = 0;
+			MqttLog.w("Giving up reconnect after " + attempt + " attempts");
+			dispatchErrorEvent("Reconnect failed after " + attempt + " attempts");
+			return;
+		}
+		reconnectAttempts = attempt + 1;
+
+		long delayMs = reconnectPolicy.delayFor(attempt);
+		MqttLog.i("Reconnecting in " + delayMs + " ms (attempt " + (attempt + 1) + ")");
+		reconnectTask = schedule(new Runnable() {
+			@Override
+			public void run() {
+				attemptReconnect();
+			}
+		}, delayMs);
+	}
+
+	private void attemptReconnect() {
+		MqttEngine client;
+		synchronized (this) {
+			if (connectionLostAt == 0) return;
+			client = engine;
+		}
+		if (client == null || client.isConnected()) return;
+
+		try {
+			client.connect(new MqttEngine.Listener() {
+				@Override
+				public void onSuccess(MqttEngine.Token token) {
+					updateSessionPresent(token.getSessionPresent());
+					// connectComplete callback will restore the session
+				}
+
+				@Override
+				public void onFailure(Throwable exception) {
+					MqttLog.w("Reconnect attempt failed: " + (exception != null ? exception.getMessage() : "unknown"));
+					scheduleReconnect();
+				}
+			});
+		} catch (EngineException e) {
+			MqttLog.w("Reconnect attempt failed: " + e.getMessage());
+			scheduleReconnect();
+		}
+	}
+
+	/**
+	 * Re-subscribes every registered topic filter in a single SUBSCRIBE
+	 * (unless the broker kept the session) and reports a `reconnected` event.
+	 */
+	private void restoreSession(long lostAt, final int attempts) {
+		final long downtimeMs = (System.nanoTime() - lostAt) / 1000000L;
+		ClientStats s = stats;
+		if (s != null) s.reconnects.incrementAndGet();
+		MqttEngine client = engine;
+		if (client == null) return;
+
+		List<Subscription> subs = subscriptions.snapshot();
+		String[] deferred;
+		synchronized (this) {
+			deferred = suspendedFilters;
+		}
+		if (deferred != null) {
+			// Suspended: the filters the background policy dropped wait for resume()
+			List<String> skip = Arrays.asList(deferred);
+			ArrayList<Subscription> wanted = new ArrayList<Subscription>(subs.size());
+			for (Subscription sub : subs) {
+				if (!skip.contains(sub.filter)) {
+					wanted.add(sub);
+				}
+			}
+			subs = wanted;
+		}
+		if (sessionPresent || subs.isEmpty()) {
+			dispatchReconnectedEvent(downtimeMs, attempts, 0, 0);
+			return;
+		}
+
+		final int restored = subs.size();
+		final String[] topics = new String[restored];
+		final int[] qos = new int[restored];
+		for (int i = 0; i < restored; i++) {
+			topics[i] = subs.get(i).filter;
+			qos[i] = subs.get(i).qos;
+		}
+		final long resubscribeStart = System.nanoTime();
+
+		try {
+			client.subscribe(topics, qos, new MqttEngine.Listener() {
+				@Override
+				public void onSuccess(MqttEngine.Token token) {
+					recordSubscribed(topics, qos, token);
+					long resubscribeMs = (System.nanoTime() - resubscribeStart) / 1000000L;
+					dispatchReconnectedEvent(downtimeMs, attempts, restored, resubscribeMs);
+				}
+
+				@Override
+				public void onFailure(Throwable exception) {
+					MqttLog.e("Resubscribe after reconnect failed", exception);
+					dispatchErrorEvent("Resubscribe failed: " + (exception != null ? exception.getMessage() : "unknown"));
+					dispatchReconnectedEvent(downtimeMs, attempts, 0, 0);
+				}
+			});
+		} catch (EngineException e) {
+			MqttLog.e("restoreSession failed", e);
+			dispatchErrorEvent("Resubscribe failed: " + e.getMessage());
+			dispatchReconnectedEvent(downtimeMs, attempts, 0, 0);
+		}
+	}
+
+	/**
+	 * Applies the session-present flag of a CONNACK. Without a session the
+	 * broker holds no subscriptions, so the fastStart registry is emptied
+	 * before any subscribe() can trust it.
+	 */
+	private void updateSessionPresent(boolean present) {
+		sessionPresent = present;
+		SessionStore store = session;
+		if (!present && store != null) {
+			store.clearFilters();
+		}
+	}
+
+	/** Records filters acknowledged by a SUBSCRIBE the app did not make itself in the fastStart registry. */
+	private void recordSubscribed(String[] topics, int[] qos, MqttEngine.Token token) {
+		SessionStore store = session;
+		if (store == null) return;
+		int[] granted = token.getGrantedQos();
+		store.put(topics, qos, granted != null && granted.length == topics.length ? granted : qos);
+	}
+
+	private static boolean heldBySession(SessionStore store, String[] topics, int[] qos) {
+		for (int i = 0; i < topics.length; i++) {
+			if (store.requestedQosOf(topics[i]) != qos[i]) return false;
+		}
+		return true;
+	}
+
+	// ========================================================================
+	// Offline queue
+	// ========================================================================
+
+	private boolean hasQueuedPublishes() {
+		synchronized (outboxLock) {
+			return outbox != null && !outbox.isEmpty();
+		}
+	}
+
+	/**
+	 * Hands queued publishes to the engine back-to-back without waiting for acks,
+	 * stopping when the in-flight window is full; deliveryComplete resumes it.
+	 */
+	private void drainOutbox() {
+		synchronized (outboxLock) {
+			MqttEngine client = engine;
+			if (outbox == null || client == null) return;
+
+			OfflineOutbox.Entry entry;
+			while (client.isConnected() && (entry = outbox.peek()) != null) {
+				try {
+					client.publish(entry.topic, entry.payload, entry.qos, entry.retain, 0, Long.valueOf(System.nanoTime()), outboxPublishListener);
+					outbox.remove();
+					countSent(entry.payload.length);
+				} catch (EngineException e) {
+					if (!e.windowFull) {
+						MqttLog.e("drainOutbox failed", e);
+					}
+					break;
+				}
+			}
+		}
+	}
+
+	private final MqttEngine.Listener outboxPublishListener = new MqttEngine.Listener() {
+		@Override
+		public void onSuccess(MqttEngine.Token token) {
+			// The user context holds the time the queued message was handed to the client
+			long sentAt = (Long)token.getUserContext();
+			long latency = System.nanoTime() - sentAt;
+			countAcked(latency);
+			dispatchPublishedEvent(token.getMessageId(), latency / 1e6);
+		}
+
+		@Override
+		public void onFailure(Throwable exception) {
+			MqttLog.e("Queued publish failed", exception);
+			ClientStats s = stats;
+			if (s != null) s.publishesFailed.incrementAndGet();
+			dispatchErrorEvent("Publish failed: " + (exception != null ? exception.getMessage() : "unknown"));
+		}
+	};
+
+	/** Releases the Lua references held by this client. Runtime thread only. */
+	void release(LuaState L) {
+		close();
+		stopTimer();
+		if (listenerRef != CoronaLua.REFNIL) {
+			CoronaLua.deleteRef(L, listenerRef);
+			listenerRef = CoronaLua.REFNIL;
+		}
+	}
+
+	// ========================================================================
+	// Event dispatch helpers
+	// ========================================================================
+
+	/** Pushes a new plugin event named `name`, tagged with this client's id. */
+	void newEvent(LuaState L, String name) {
+		CoronaLua.newEvent(L, LuaLoader.EVENT_NAME);
+		L.pushString(name);
+		L.setField(-2, "name");
+		L.pushString(id);
+		L.setField(-2, "client");
+	}
+
+	/** The client's own listener, falling back to the one passed to init(). */
+	int getListener() {
+		return listenerRef != CoronaLua.REFNIL ? listenerRef : LuaLoader.fListener;
+	}
+
+	/**
+	 * Sends a `message` event to the onMessage handler of every matching
+	 * subscription. Returns false when none has one, so the caller falls back
+	 * to the client listener. Runtime thread only.
+	 */
+	boolean dispatchToHandlers(LuaState L, InboundMessage message) {
+		if (message.handlers == null) return false;
+		boolean handled = false;
+		for (Subscription sub : message.handlers) {
+			int ref = sub.handlerRef;
+			if (ref == CoronaLua.REFNIL) continue; // released since the message was routed
+			newEvent(L, "message");
+			message.pushFields(L);
+			try {
+				CoronaLua.dispatchEvent(L, ref, 0);
+			} catch (Exception e) {
+				MqttLog.e("onMessage handler failed for " + sub.filter, e);
+			}
+			handled = true;
+		}
+		return handled;
+	}
+
+	/** Hands one message to its onMessage handlers or the client listener. Runtime thread only. */
+	void deliver(LuaState L, InboundMessage message) {
+		recordDelivery(message);
+		if (dispatchToHandlers(L, message)) return;
+		newEvent(L, "message");
+		message.pushFields(L);
+		try {
+			CoronaLua.dispatchEvent(L, getListener(), 0);
+		} catch (Exception e) {
+			MqttLog.e("dispatchMessageEvent failed", e);
+		}
+	}
+
+	/** Dispatches one queued event. Runtime thread only, called by EventQueue. */
+	void dispatch(LuaState L, EventRecord record) {
+		ClientStats s = stats;
+		if (s != null && record.postedAt != 0) {
+			s.dispatchWait.record(System.nanoTime() - record.postedAt);
+		}
+		if (record.kind == EventRecord.KIND_MESSAGE) {
+			deliver(L, (InboundMessage)record.object);
+			return;
+		}
+		newEvent(L, record.name);
+		record.pushFields(L);
+		try {
+			CoronaLua.dispatchEvent(L, record.ref != CoronaLua.REFNIL ? record.ref : getListener(), 0);
+		} catch (Exception e) {
+			MqttLog.e("Dispatching " + record.name + " event failed", e);
+		}
+		if (record.releaseRef) {
+			CoronaLua.deleteRef(L, record.ref);
+		}
+	}
+
+	/** Claims a queued event for the client listener; fill in its fields, then publish() it. */
+	private EventRecord event(String name) {
+		return claim(EventRecord.KIND_FIELDS, name, CoronaLua.REFNIL, false);
+	}
+
+	/** Claims a queued event for a one-shot per-operation callback, released after dispatch. */
+	private EventRecord callbackEvent(int ref, String name) {
+		return claim(EventRecord.KIND_FIELDS, name, ref, true);
+	}
+
+	private EventRecord claim(byte kind, String name, int ref, boolean releaseRef) {
+		EventRecord record = events.claim(kind, name, ref, releaseRef);
+		record.postedAt = stats != null ? System.nanoTime() : 0;
+		return record;
+	}
+
+	private void publish(EventRecord record) {
+		events.publish(record);
+	}
+
+	/** restoredSubscriptions is the number of fastStart filters the broker kept, or -1 without fastStart. */
+	private void dispatchConnectedEvent(boolean present, int restoredSubscriptions) {
+		EventRecord record = event("connected").bool("sessionPresent", present);
+		if (restoredSubscriptions >= 0) {
+			record.integer("restoredSubscriptions", restoredSubscriptions);
+		}
+		publish(record);
+	}
+
+	private void dispatchDisconnectedEvent(int code, String message, boolean willReconnect) {
+		publish(event("disconnected")
+			.integer("errorCode", code)
+			.string("errorMessage", message != null ? message : "")
+			.bool("willReconnect", willReconnect));
+	}
+
+	private void dispatchReconnectedEvent(long downtimeMs, int attempts, int resubscribed, long resubscribeMs) {
+		publish(event("reconnected")
+			.bool("sessionPresent", sessionPresent)
+			.number("downtimeMs", downtimeMs)
+			.integer("attempts", attempts)
+			.integer("resubscribed", resubscribed)
+			.number("resubscribeMs", resubscribeMs));
+	}
+
+	private void dispatchMessageEvent(InboundMessage message) {
+		EventRecord record;
+		if (message.highPriority) {
+			record = events.claimUrgent(EventRecord.KIND_MESSAGE, "message", CoronaLua.REFNIL, false);
+			record.postedAt = stats != null ? System.nanoTime() : 0;
+			ClientStats s = stats;
+			if (s != null) s.messagesPrioritized.incrementAndGet();
+		} else {
+			record = claim(EventRecord.KIND_MESSAGE, "message", CoronaLua.REFNIL, false);
+		}
+		record.object = message;
+		publish(record);
+	}
+
+	private void dispatchSubscribedEvent(String topic, int grantedQos) {
+		publish(event("subscribed").string("topic", topic).integer("grantedQos", grantedQos));
+	}
+
+	private void dispatchErrorEvent(String errorMessage) {
+		publish(event("error").string("errorMessage", errorMessage != null ? errorMessage : "Unknown error"));
+	}
+
+	private void dispatchPublishedEvent(int mid, double latencyMs) {
+		publish(event("published").integer("mid", mid).number("latencyMs", latencyMs));
+	}
+
+	private void dispatchStatsEvent() {
+		final ClientStats s = stats;
+		if (s == null) return;
+		post(new RuntimeTask() {
+			@Override
+			public void run(LuaState L) {
+				newEvent(L, "stats");
+				pushStatsFields(L, s);
+				try {
+					CoronaLua.dispatchEvent(L, getListener(), 0);
+				} catch (Exception e) {
+					MqttLog.e("dispatchStatsEvent failed", e);
+				}
+			}
+		});
+	}
+
+	private void dispatchDrainEvent() {
+		publish(event("drain"));
+	}
+
+	private void dispatchUnsubscribedEvent(String topic) {
+		publish(event("unsubscribed").string("topic", topic));
+	}
+
+	/** Aggregated SUBACK result; `ref` is a per-op callback, or REFNIL for the client listener. */
+	private void dispatchSubscribedManyEvent(int ref, String[] topics, int[] grantedQos) {
+		EventRecord record = claim(EventRecord.KIND_SUBSCRIBED_MANY, "subscribedMany", ref, ref != CoronaLua.REFNIL);
+		record.object = topics;
+		record.grantedQos = grantedQos;
+		publish(record);
+	}
+
+	/** Aggregated UNSUBACK result; `ref` is a per-op callback, or REFNIL for the client listener. */
+	private void dispatchUnsubscribedManyEvent(int ref, String[] topics) {
+		EventRecord record = claim(EventRecord.KIND_UNSUBSCRIBED_MANY, "unsubscribedMany", ref, ref != CoronaLua.REFNIL);
+		record.object = topics;
+		publish(record);
+	}
+
+	// Per-operation callback dispatchers
+
+	private void dispatchPerOpCallback(int ref, String eventName, boolean isError, String errorMessage) {
+		EventRecord record = callbackEvent(ref, eventName).bool("isError", isError);
+		if (errorMessage != null) {
+			record.string("errorMessage", errorMessage);
+		}
+		publish(record);
+	}
+
+	private void dispatchPerOpSubscribedCallback(int ref, String topic, int grantedQos) {
+		publish(callbackEvent(ref, "subscribed").string("topic", topic).integer("grantedQos", grantedQos));
+	}
+
+	private void dispatchPerOpUnsubscribedCallback(int ref, String topic) {
+		publish(callbackEvent(ref, "unsubscribed").string("topic", topic));
+	}
+
+	private void dispatchPerOpPublishedCallback(int ref, int mid, double latencyMs) {
+		publish(callbackEvent(ref, "published").integer("mid", mid).number("latencyMs", latencyMs));
+	}
+
+	private void dispatchPerOpDisconnectCallback(int ref, int code, String message) {
+		publish(callbackEvent(ref, "disconnected")
+			.integer("errorCode", code)
+			.string("errorMessage", message != null ? message : ""));
+	}
+}
@@ -0,0 +1,86 @@
+//
+//  MqttEngine.java
+//  SolarMQTT Plugin for Solar2D
+//
+//  Copyright (c) 2026 Platopus Systems. All rights reserved.
+//
+
+package plugin.solarmqtt;
+
+import java.io.File;
+
+/**
+ * Transport boundary: the MQTT client library behind one connection.
+ * MqttClientHandle only talks to this interface, so the protocol version is
+ * picked per connection (PahoV3Engine for MQTT 3.1/3.1.1, PahoV5Engine for
+ * MQTT 5) without the queueing, routing and event code knowing which.
+ *
+ * Listeners and callbacks run on the engine's own threads.
+ */
+interface MqttEngine {
+	/** Creates the engine of a connection: EngineOptions.PAHO in apps, a stub engine in benchmarks. */
+	interface Factory {
+		MqttEngine newEngine(EngineOptions options, File storageDir, Callback callback) throws EngineException;
+	}
+
+	/** Connection-level events. */
+	interface Callback {
+		void connectComplete(boolean reconnect, String serverUri);
+
+		/** The connection dropped without a disconnect() call; reason may be null. */
+		void connectionLost(String reason);
+
+		/** packetId is 0 for QoS 0; duplicate is the DUP flag of a redelivery. */
+		void messageArrived(String topic, byte[] payload, int qos, boolean retained, int packetId, boolean duplicate);
+
+		/** A QoS 1/2 publish completed, so an in-flight slot is free again. */
+		void deliveryComplete();
+	}
+
+	/** Completion of one asynchronous operation. */
+	interface Listener {
+		void onSuccess(Token token);
+
+		void onFailure(Throwable exception);
+	}
+
+	/** Result of a completed operation. */
+	interface Token {
+		int getMessageId();
+
+		/** One SUBACK result per filter; every failure code is reported as SUBACK_FAILURE. */
+		int[] getGrantedQos();
+
+		boolean getSessionPresent();
+
+		/** The context passed to publish(). */
+		Object getUserContext();
+	}
+
+	/** 3 (MQTT 3.1), 4 (MQTT 3.1.1) or 5. */
+	int protocolVersion();
+
+	String serverUri();
+
+	boolean isConnected();
+
+	/** Connects, or reconnects, with the options the engine was created with. */
+	void connect(Listener listener) throws EngineException;
+
+	void disconnect(Listener listener) throws EngineException;
+
+	void subscribe(String[] filters, int[] qos, Listener listener) throws EngineException;
+
+	/** listener may be null. */
+	void unsubscribe(String[] filters, Listener listener) throws EngineException;
+
+	/**
+	 * Hands a message to the client. expirySeconds is the MQTT 5 message
+	 * expiry interval (0 for none, ignored before MQTT 5). Throws with
+	 * windowFull set when the in-flight window has no room.
+	 */
+	void publish(String topic, byte[] payload, int qos, boolean retain, long expirySeconds, Object context, Listener listener) throws EngineException;
+
+	/** Disconnects if needed and releases the client. */
+	void close() throws EngineException;
+}
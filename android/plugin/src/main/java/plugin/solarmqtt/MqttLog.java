@@ -0,0 +1,114 @@
+//
+//  MqttLog.java
+//  SolarMQTT Plugin for Solar2D
+//
+//  Copyright (c) 2026 Platopus Systems. All rights reserved.
+//
+
+package plugin.solarmqtt;
+
+import android.util.Log;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Leveled logging for the plugin. Hot-path call sites check isLoggable()
+ * before building their message, and per-channel rate limits keep a
+ * message storm from flooding logcat.
+ */
+final class MqttLog {
+	private static final String TAG = "SolarMQTT";
+
+	static final int DEBUG = Log.DEBUG;
+	static final int INFO = Log.INFO;
+	static final int WARN = Log.WARN;
+	static final int ERROR = Log.ERROR;
+	static final int NONE = Log.ERROR + 1;
+
+	/** Per-message traffic: inbound messages and publish acks. */
+	static final Channel MESSAGE = new Channel("message", 10);
+	static final Channel PUBLISH = new Channel("publish", 10);
+	/** Subscribe/unsubscribe acks and failures. */
+	static final Channel SUBSCRIBE = new Channel("subscribe", 20);
+
+	private static volatile int level = INFO;
+
+	private MqttLog() { }
+
+	/** Parses "debug", "info", "warn", "error" or "none"; returns -1 if unknown. */
+	static int parseLevel(String name) {
+		if ("debug".equals(name)) return DEBUG;
+		if ("info".equals(name)) return INFO;
+		if ("warn".equals(name)) return WARN;
+		if ("error".equals(name)) return ERROR;
+		if ("none".equals(name)) return NONE;
+		return -1;
+	}
+
+	static void setLevel(int newLevel) {
+		level = newLevel;
+	}
+
+	static boolean isLoggable(int priority) {
+		return priority >= level;
+	}
+
+	/** True if the level is enabled and the channel has not used up its per-second budget. */
+	static boolean isLoggable(int priority, Channel channel) {
+		return priority >= level && channel.acquire();
+	}
+
+	static void d(String msg) {
+		if (isLoggable(DEBUG)) Log.d(TAG, msg);
+	}
+
+	static void i(String msg) {
+		if (isLoggable(INFO)) Log.i(TAG, msg);
+	}
+
+	static void w(String msg) {
+		if (isLoggable(WARN)) Log.w(TAG, msg);
+	}
+
+	static void e(String msg) {
+		if (isLoggable(ERROR)) Log.e(TAG, msg);
+	}
+
+	static void e(String msg, Throwable t) {
+		if (isLoggable(ERROR)) Log.e(TAG, msg, t);
+	}
+
+	/** A named log category with a fixed lines-per-second budget. */
+	static final class Channel {
+		private static final long WINDOW_NS = 1000000000L;
+
+		private final String name;
+		private final int maxPerSecond;
+		private final AtomicLong windowStart = new AtomicLong();
+		private final AtomicInteger count = new AtomicInteger();
+		private final AtomicInteger suppressed = new AtomicInteger();
+
+		Channel(String name, int maxPerSecond) {
+			this.name = name;
+			this.maxPerSecond = maxPerSecond;
+		}
+
+		boolean acquire() {
+			long now = System.nanoTime();
+			long start = windowStart.get();
+			if (now - start >= WINDOW_NS && windowStart.compareAndSet(start, now)) {
+				count.set(0);
+				int dropped = suppressed.getAndSet(0);
+				if (dropped > 0) {
+					Log.w(TAG, dropped + " " + name + " log lines suppressed");
+				}
+			}
+			if (count.incrementAndGet() <= maxPerSecond) {
+				return true;
+			}
+			suppressed.incrementAndGet();
+			return false;
+		}
+	}
+}
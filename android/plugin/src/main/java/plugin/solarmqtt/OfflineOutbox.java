@@ -0,0 +1,86 @@
+//
+//  OfflineOutbox.java
+//  SolarMQTT Plugin for Solar2D
+//
+//  Copyright (c) 2026 Platopus Systems. All rights reserved.
+//
+
+package plugin.solarmqtt;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Publishes made while disconnected, stored in a MappedLog until the
+ * connection is back.
+ */
+final class OfflineOutbox {
+	private final MappedLog log;
+
+	/** A queued publish. */
+	static final class Entry {
+		final String topic;
+		final byte[] payload;
+		final int qos;
+		final boolean retain;
+
+		Entry(String topic, byte[] payload, int qos, boolean retain) {
+			this.topic = topic;
+			this.payload = payload;
+			this.qos = qos;
+			this.retain = retain;
+		}
+	}
+
+	OfflineOutbox(File path, int maxBytes) throws IOException {
+		log = new MappedLog(path, maxBytes);
+	}
+
+	/** Queues a publish; returns false if the outbox is full. */
+	boolean offer(String topic, byte[] payload, int qos, boolean retain) {
+		byte[] topicBytes = topic.getBytes(InboundMessage.UTF8);
+		ByteBuffer record = ByteBuffer.allocate(2 + topicBytes.length + 2 + payload.length);
+		record.putShort((short)topicBytes.length);
+		record.put(topicBytes);
+		record.put((byte)qos);
+		record.put((byte)(retain ? 1 : 0));
+		record.put(payload);
+		return log.append(record.array());
+	}
+
+	/** The oldest queued publish, or null if empty. Call remove() once it is handed to the client. */
+	Entry peek() {
+		byte[] record = log.peek();
+		if (record == null) return null;
+		ByteBuffer in = ByteBuffer.wrap(record);
+		int topicLength = in.getShort() & 0xffff;
+		String topic = new String(record, 2, topicLength, InboundMessage.UTF8);
+		in.position(2 + topicLength);
+		int qos = in.get();
+		boolean retain = in.get() != 0;
+		byte[] payload = new byte[in.remaining()];
+		in.get(payload);
+		return new Entry(topic, payload, qos, retain);
+	}
+
+	void remove() {
+		log.advance();
+	}
+
+	boolean isEmpty() {
+		return log.isEmpty();
+	}
+
+	int size() {
+		return log.size();
+	}
+
+	int pendingBytes() {
+		return log.pendingBytes();
+	}
+
+	void close() {
+		log.close();
+	}
+}
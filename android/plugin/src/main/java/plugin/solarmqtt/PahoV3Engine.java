@@ -0,0 +1,213 @@
+//
+//  PahoV3Engine.java
+//  SolarMQTT Plugin for Solar2D
+//
+//  Copyright (c) 2026 Platopus Systems. All rights reserved.
+//
+
+package plugin.solarmqtt;
+
+import org.eclipse.paho.client.mqttv3.IMqttActionListener;
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.IMqttToken;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttCallbackExtended;
+import org.eclipse.paho.client.mqttv3.MqttClientPersistence;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+
+import java.io.File;
+
+/**
+ * MQTT 3.1 / 3.1.1 engine on the Paho mqttv3 async client.
+ */
+final class PahoV3Engine implements MqttEngine {
+	private final MqttAsyncClient client;
+	private final MqttConnectOptions options;
+	private final int protocolVersion;
+
+	PahoV3Engine(EngineOptions o, File storageDir, final Callback callback) throws EngineException {
+		protocolVersion = o.protocolVersion == 3 ? 3 : 4;
+		try {
+			MqttClientPersistence persistence = o.filePersistence
+				? new MappedFilePersistence(storageDir, EngineOptions.PERSISTENCE_BYTES)
+				: new MemoryPersistence();
+			String clientId = o.clientId != null ? o.clientId : MqttAsyncClient.generateClientId();
+			client = new MqttAsyncClient(o.serverUri(), clientId, persistence);
+		} catch (MqttException e) {
+			throw wrap(e);
+		}
+
+		client.setCallback(new MqttCallbackExtended() {
+			@Override
+			public void connectComplete(boolean reconnect, String serverURI) {
+				callback.connectComplete(reconnect, serverURI);
+			}
+
+			@Override
+			public void connectionLost(Throwable cause) {
+				callback.connectionLost(cause != null ? cause.getMessage() : null);
+			}
+
+			@Override
+			public void messageArrived(String topic, MqttMessage message) {
+				callback.messageArrived(topic, message.getPayload(), message.getQos(), message.isRetained(),
+						message.getId(), message.isDuplicate());
+			}
+
+			@Override
+			public void deliveryComplete(IMqttDeliveryToken token) {
+				callback.deliveryComplete();
+			}
+		});
+
+		options = new MqttConnectOptions();
+		if (o.protocolVersion == 3 || o.protocolVersion == 4) {
+			options.setMqttVersion(o.protocolVersion);
+		}
+		options.setCleanSession(o.cleanSession);
+		options.setKeepAliveInterval(o.keepAlive);
+		options.setAutomaticReconnect(false);
+		options.setMaxInflight(o.maxInflight);
+		options.setSocketFactory(NoDelaySocketFactory.create(o.useTLS));
+		if (o.username != null) {
+			options.setUserName(o.username);
+			if (o.password != null) {
+				options.setPassword(o.password.toCharArray());
+			}
+		}
+		if (o.willTopic != null) {
+			options.setWill(o.willTopic, o.willPayload.getBytes(), o.willQos, o.willRetain);
+		}
+	}
+
+	@Override
+	public int protocolVersion() {
+		return protocolVersion;
+	}
+
+	@Override
+	public String serverUri() {
+		return client.getServerURI();
+	}
+
+	@Override
+	public boolean isConnected() {
+		return client.isConnected();
+	}
+
+	@Override
+	public void connect(Listener listener) throws EngineException {
+		try {
+			client.connect(options, null, adapt(listener));
+		} catch (MqttException e) {
+			throw wrap(e);
+		}
+	}
+
+	@Override
+	public void disconnect(Listener listener) throws EngineException {
+		try {
+			client.disconnect(null, adapt(listener));
+		} catch (MqttException e) {
+			throw wrap(e);
+		}
+	}
+
+	@Override
+	public void subscribe(String[] filters, int[] qos, Listener listener) throws EngineException {
+		try {
+			client.subscribe(filters, qos, null, adapt(listener));
+		} catch (MqttException e) {
+			throw wrap(e);
+		}
+	}
+
+	@Override
+	public void unsubscribe(String[] filters, Listener listener) throws EngineException {
+		try {
+			client.unsubscribe(filters, null, adapt(listener));
+		} catch (MqttException e) {
+			throw wrap(e);
+		}
+	}
+
+	@Override
+	public void publish(String topic, byte[] payload, int qos, boolean retain, long expirySeconds, Object context, Listener listener) throws EngineException {
+		MqttMessage message = new MqttMessage(payload);
+		message.setQos(qos);
+		message.setRetained(retain);
+		try {
+			client.publish(topic, message, context, adapt(listener));
+		} catch (MqttException e) {
+			throw wrap(e);
+		}
+	}
+
+	@Override
+	public void close() throws EngineException {
+		try {
+			if (client.isConnected()) {
+				client.disconnect();
+			}
+			client.close();
+		} catch (MqttException e) {
+			throw wrap(e);
+		}
+	}
+
+	// ========================================================================
+	// Internal helpers
+	// ========================================================================
+
+	private static EngineException wrap(MqttException e) {
+		return new EngineException(e, e.getReasonCode() == MqttException.REASON_CODE_MAX_INFLIGHT);
+	}
+
+	private static IMqttActionListener adapt(Listener listener) {
+		return listener != null ? new Action(listener) : null;
+	}
+
+	/** Forwards one operation's completion; doubles as its Token. */
+	private static final class Action implements IMqttActionListener, Token {
+		private final Listener listener;
+		private IMqttToken token;
+
+		Action(Listener listener) {
+			this.listener = listener;
+		}
+
+		@Override
+		public void onSuccess(IMqttToken asyncActionToken) {
+			token = asyncActionToken;
+			listener.onSuccess(this);
+		}
+
+		@Override
+		public void onFailure(IMqttToken asyncActionToken, Throwable exception) {
+			listener.onFailure(exception);
+		}
+
+		@Override
+		public int getMessageId() {
+			return token.getMessageId();
+		}
+
+		@Override
+		public int[] getGrantedQos() {
+			return token.getGrantedQos();
+		}
+
+		@Override
+		public boolean getSessionPresent() {
+			return token.getSessionPresent();
+		}
+
+		@Override
+		public Object getUserContext() {
+			return token.getUserContext();
+		}
+	}
+}
@@ -0,0 +1,399 @@
+//
+//  PahoV5Engine.java
+//  SolarMQTT Plugin for Solar2D
+//
+//  Copyright (c) 2026 Platopus Systems. All rights reserved.
+//
+
+package plugin.solarmqtt;
+
+import org.eclipse.paho.mqttv5.client.IMqttToken;
+import org.eclipse.paho.mqttv5.client.MqttActionListener;
+import org.eclipse.paho.mqttv5.client.MqttAsyncClient;
+import org.eclipse.paho.mqttv5.client.MqttCallback;
+import org.eclipse.paho.mqttv5.client.MqttClientException;
+import org.eclipse.paho.mqttv5.client.MqttClientPersistence;
+import org.eclipse.paho.mqttv5.client.MqttConnectionOptions;
+import org.eclipse.paho.mqttv5.client.MqttDisconnectResponse;
+import org.eclipse.paho.mqttv5.client.internal.MqttPersistentData;
+import org.eclipse.paho.mqttv5.client.persist.MemoryPersistence;
+import org.eclipse.paho.mqttv5.common.MqttException;
+import org.eclipse.paho.mqttv5.common.MqttMessage;
+import org.eclipse.paho.mqttv5.common.MqttPersistable;
+import org.eclipse.paho.mqttv5.common.MqttPersistenceException;
+import org.eclipse.paho.mqttv5.common.packet.MqttProperties;
+
+import java.io.File;
+import java.util.Enumeration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * MQTT 5 engine on the Paho mqttv5 async client.
+ *
+ * Paho assigns topic aliases to outgoing publishes on its own once the broker
+ * allows them in CONNACK, and limits messages in flight to the broker's
+ * receive maximum. The v5 client has no setting of its own for that window,
+ * so maxInflight is enforced here by counting QoS 1/2 publishes until their
+ * listener completes; the effective window is the smaller of the two, and
+ * either limit surfaces as windowFull, like the v3 maxInflight limit. The
+ * connect options add the receive maximum and topic alias maximum we grant
+ * the broker, and the session expiry.
+ */
+final class PahoV5Engine implements MqttEngine {
+	/** Session expiry meaning "never", matching a 3.1.1 persistent session. */
+	private static final long SESSION_NEVER_EXPIRES = 0xFFFFFFFFL;
+
+	private final MqttAsyncClient client;
+	private final MqttConnectionOptions options;
+	private final Callback callback;
+	private final int maxInflight;
+	private final AtomicInteger inflight = new AtomicInteger();
+
+	PahoV5Engine(EngineOptions o, File storageDir, final Callback callback) throws EngineException {
+		String serverUri = o.serverUri();
+		this.callback = callback;
+		maxInflight = o.maxInflight;
+		try {
+			MqttClientPersistence persistence = o.filePersistence
+				? new FilePersistence(new MappedFilePersistence(storageDir, EngineOptions.PERSISTENCE_BYTES), serverUri)
+				: new MemoryPersistence();
+			String clientId = o.clientId != null ? o.clientId : "paho" + System.nanoTime();
+			client = new MqttAsyncClient(serverUri, clientId, persistence);
+		} catch (MqttException e) {
+			throw wrap(e);
+		}
+
+		client.setCallback(new MqttCallback() {
+			@Override
+			public void connectComplete(boolean reconnect, String serverURI) {
+				callback.connectComplete(reconnect, serverURI);
+			}
+
+			@Override
+			public void disconnected(MqttDisconnectResponse response) {
+				String reason = response.getReasonString();
+				if (reason == null && response.getException() != null) {
+					reason = response.getException().getMessage();
+				}
+				callback.connectionLost(reason);
+			}
+
+			@Override
+			public void mqttErrorOccurred(MqttException exception) {
+				MqttLog.w("MQTT 5 protocol error: " + exception.getMessage());
+			}
+
+			@Override
+			public void messageArrived(String topic, MqttMessage message) {
+				callback.messageArrived(topic, message.getPayload(), message.getQos(), message.isRetained(),
+						message.getId(), message.isDuplicate());
+			}
+
+			@Override
+			public void deliveryComplete(IMqttToken token) {
+				callback.deliveryComplete();
+			}
+
+			@Override
+			public void authPacketArrived(int reasonCode, MqttProperties properties) {
+			}
+		});
+
+		options = new MqttConnectionOptions();
+		options.setCleanStart(o.cleanSession);
+		options.setKeepAliveInterval(o.keepAlive);
+		options.setAutomaticReconnect(false);
+		options.setSocketFactory(NoDelaySocketFactory.create(o.useTLS));
+		if (o.sessionExpiry >= 0) {
+			options.setSessionExpiryInterval(Long.valueOf(o.sessionExpiry));
+		} else if (!o.cleanSession) {
+			options.setSessionExpiryInterval(Long.valueOf(SESSION_NEVER_EXPIRES));
+		}
+		if (o.receiveMaximum > 0) {
+			options.setReceiveMaximum(Integer.valueOf(Math.min(65535, o.receiveMaximum)));
+		}
+		if (o.topicAliasMaximum > 0) {
+			options.setTopicAliasMaximum(Integer.valueOf(Math.min(65535, o.topicAliasMaximum)));
+		}
+		if (o.username != null) {
+			options.setUserName(o.username);
+			if (o.password != null) {
+				options.setPassword(o.password.getBytes(InboundMessage.UTF8));
+			}
+		}
+		if (o.willTopic != null) {
+			MqttMessage will = new MqttMessage(o.willPayload.getBytes());
+			will.setQos(o.willQos);
+			will.setRetained(o.willRetain);
+			options.setWill(o.willTopic, will);
+		}
+	}
+
+	@Override
+	public int protocolVersion() {
+		return 5;
+	}
+
+	@Override
+	public String serverUri() {
+		return client.getServerURI();
+	}
+
+	@Override
+	public boolean isConnected() {
+		return client.isConnected();
+	}
+
+	@Override
+	public void connect(Listener listener) throws EngineException {
+		try {
+			client.connect(options, null, adapt(listener));
+		} catch (MqttException e) {
+			throw wrap(e);
+		}
+	}
+
+	@Override
+	public void disconnect(Listener listener) throws EngineException {
+		try {
+			client.disconnect(null, adapt(listener));
+		} catch (MqttException e) {
+			throw wrap(e);
+		}
+	}
+
+	@Override
+	public void subscribe(String[] filters, int[] qos, Listener listener) throws EngineException {
+		try {
+			client.subscribe(filters, qos, null, adapt(listener));
+		} catch (MqttException e) {
+			throw wrap(e);
+		}
+	}
+
+	@Override
+	public void unsubscribe(String[] filters, Listener listener) throws EngineException {
+		try {
+			client.unsubscribe(filters, null, adapt(listener), new MqttProperties());
+		} catch (MqttException e) {
+			throw wrap(e);
+		}
+	}
+
+	@Override
+	public void publish(String topic, byte[] payload, int qos, boolean retain, long expirySeconds, Object context, Listener listener) throws EngineException {
+		MqttMessage message = new MqttMessage(payload);
+		message.setQos(qos);
+		message.setRetained(retain);
+		if (expirySeconds > 0) {
+			MqttProperties properties = new MqttProperties();
+			properties.setMessageExpiryInterval(Long.valueOf(expirySeconds));
+			message.setProperties(properties);
+		}
+		if (qos == 0) {
+			try {
+				client.publish(topic, message, context, adapt(listener));
+			} catch (MqttException e) {
+				throw wrap(e);
+			}
+			return;
+		}
+		if (inflight.incrementAndGet() > maxInflight) {
+			inflight.decrementAndGet();
+			throw new EngineException(new IllegalStateException("Too many publishes in progress"), true);
+		}
+		try {
+			client.publish(topic, message, context, new InflightAction(listener));
+		} catch (MqttException e) {
+			inflight.decrementAndGet();
+			throw wrap(e);
+		}
+	}
+
+	@Override
+	public void close() throws EngineException {
+		try {
+			if (client.isConnected()) {
+				client.disconnect();
+			}
+			client.close();
+		} catch (MqttException e) {
+			throw wrap(e);
+		}
+	}
+
+	// ========================================================================
+	// Internal helpers
+	// ========================================================================
+
+	private static EngineException wrap(MqttException e) {
+		return new EngineException(e, e.getReasonCode() == MqttClientException.REASON_CODE_MAX_INFLIGHT);
+	}
+
+	private static MqttActionListener adapt(Listener listener) {
+		return listener != null ? new Action(listener) : null;
+	}
+
+	/**
+	 * A QoS 1/2 publish's Action that frees its maxInflight slot when the
+	 * publish completes either way. Paho reports deliveryComplete before the
+	 * action, while the slot is still taken, so the freed slot is announced
+	 * again here for queued publishes to use it.
+	 */
+	private final class InflightAction extends Action {
+		InflightAction(Listener listener) {
+			super(listener);
+		}
+
+		@Override
+		public void onSuccess(IMqttToken asyncActionToken) {
+			inflight.decrementAndGet();
+			super.onSuccess(asyncActionToken);
+			callback.deliveryComplete();
+		}
+
+		@Override
+		public void onFailure(IMqttToken asyncActionToken, Throwable exception) {
+			inflight.decrementAndGet();
+			super.onFailure(asyncActionToken, exception);
+			callback.deliveryComplete();
+		}
+	}
+
+	/** Forwards one operation's completion; doubles as its Token. */
+	private static class Action implements MqttActionListener, Token {
+		private final Listener listener;
+		private IMqttToken token;
+
+		Action(Listener listener) {
+			this.listener = listener;
+		}
+
+		@Override
+		public void onSuccess(IMqttToken asyncActionToken) {
+			token = asyncActionToken;
+			if (listener != null) listener.onSuccess(this);
+		}
+
+		@Override
+		public void onFailure(IMqttToken asyncActionToken, Throwable exception) {
+			if (listener != null) listener.onFailure(exception);
+		}
+
+		@Override
+		public int getMessageId() {
+			return token.getMessageId();
+		}
+
+		@Override
+		public int[] getGrantedQos() {
+			// MQTT 5 SUBACKs carry reason codes: 0-2 grant a QoS, anything from 0x80 is a failure
+			int[] codes = token.getGrantedQos();
+			if (codes == null) return null;
+			int[] granted = new int[codes.length];
+			for (int i = 0; i < codes.length; i++) {
+				granted[i] = codes[i] >= MqttClientHandle.SUBACK_FAILURE ? MqttClientHandle.SUBACK_FAILURE : codes[i];
+			}
+			return granted;
+		}
+
+		@Override
+		public boolean getSessionPresent() {
+			return token.getSessionPresent();
+		}
+
+		@Override
+		public Object getUserContext() {
+			return token.getUserContext();
+		}
+	}
+
+	/** Adapts MappedFilePersistence, written against the v3 persistence API, to the v5 one. */
+	private static final class FilePersistence implements MqttClientPersistence {
+		private final MappedFilePersistence log;
+		private final String serverUri;
+
+		FilePersistence(MappedFilePersistence log, String serverUri) {
+			this.log = log;
+			this.serverUri = serverUri;
+		}
+
+		@Override
+		public void open(String clientId) throws MqttPersistenceException {
+			try {
+				log.open(clientId, serverUri);
+			} catch (org.eclipse.paho.client.mqttv3.MqttPersistenceException e) {
+				throw new MqttPersistenceException(e);
+			}
+		}
+
+		@Override
+		public void close() throws MqttPersistenceException {
+			try {
+				log.close();
+			} catch (org.eclipse.paho.client.mqttv3.MqttPersistenceException e) {
+				throw new MqttPersistenceException(e);
+			}
+		}
+
+		@Override
+		public void put(String key, MqttPersistable persistable) throws MqttPersistenceException {
+			try {
+				log.put(key, new org.eclipse.paho.client.mqttv3.internal.MqttPersistentData(key,
+						persistable.getHeaderBytes(), persistable.getHeaderOffset(), persistable.getHeaderLength(),
+						persistable.getPayloadBytes(), persistable.getPayloadOffset(), persistable.getPayloadLength()));
+			} catch (org.eclipse.paho.client.mqttv3.MqttPersistenceException e) {
+				throw new MqttPersistenceException(e);
+			}
+		}
+
+		@Override
+		public MqttPersistable get(String key) throws MqttPersistenceException {
+			try {
+				org.eclipse.paho.client.mqttv3.MqttPersistable data = log.get(key);
+				if (data == null) return null;
+				return new MqttPersistentData(key,
+						data.getHeaderBytes(), data.getHeaderOffset(), data.getHeaderLength(),
+						data.getPayloadBytes(), data.getPayloadOffset(), data.getPayloadLength());
+			} catch (org.eclipse.paho.client.mqttv3.MqttPersistenceException e) {
+				throw new MqttPersistenceException(e);
+			}
+		}
+
+		@Override
+		public void remove(String key) throws MqttPersistenceException {
+			try {
+				log.remove(key);
+			} catch (org.eclipse.paho.client.mqttv3.MqttPersistenceException e) {
+				throw new MqttPersistenceException(e);
+			}
+		}
+
+		@Override
+		public Enumeration<String> keys() throws MqttPersistenceException {
+			try {
+				return log.keys();
+			} catch (org.eclipse.paho.client.mqttv3.MqttPersistenceException e) {
+				throw new MqttPersistenceException(e);
+			}
+		}
+
+		@Override
+		public void clear() throws MqttPersistenceException {
+			try {
+				log.clear();
+			} catch (org.eclipse.paho.client.mqttv3.MqttPersistenceException e) {
+				throw new MqttPersistenceException(e);
+			}
+		}
+
+		@Override
+		public boolean containsKey(String key) throws MqttPersistenceException {
+			try {
+				return log.containsKey(key);
+			} catch (org.eclipse.paho.client.mqttv3.MqttPersistenceException e) {
+				throw new MqttPersistenceException(e);
+			}
+		}
+	}
+}
@@ -0,0 +1,224 @@
+//
+//  PayloadCodec.java
+//  SolarMQTT Plugin for Solar2D
+//
+//  Copyright (c) 2026 Platopus Systems. All rights reserved.
+//
+
+package plugin.solarmqtt;
+
+import java.util.ArrayList;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Optional payload compression for one client. A compressed payload is
+ * framed as a four byte magic, a method byte, the original length as a
+ * varint, then a raw deflate stream:
+ *
+ *   F5 'M' 'Q' 'Z' | 0x01 | length | deflate data
+ *
+ * Payloads below the size threshold, or that do not shrink, are sent as they
+ * are. If such a payload happens to start with the magic it is framed with
+ * the 0x00 "stored" method instead, so a subscriber decoding the filter never
+ * mistakes it for a deflate frame. 0xF5 never occurs in UTF-8, so text and
+ * JSON from plain publishers pass through a decoding subscriber unchanged;
+ * a binary payload from another publisher could only be misread if it began
+ * with the same five bytes and inflated to exactly the claimed length.
+ * Compressed filters are still meant for payloads this codec framed.
+ *
+ * The Deflater (used by publish on the runtime thread) is kept and reset per
+ * message. Each thread that decodes (the Paho thread or a worker lane) gets
+ * its own Inflater, so lanes never wait on each other to decompress.
+ */
+final class PayloadCodec {
+	static final int DEFAULT_MIN_BYTES = 256;
+	static final int LEVEL_FAST = Deflater.BEST_SPEED;
+	static final int LEVEL_DEFAULT = Deflater.DEFAULT_COMPRESSION;
+
+	private static final byte[] MAGIC = { (byte)0xF5, 'M', 'Q', 'Z' };
+	private static final byte METHOD_STORED = 0x00;
+	private static final byte METHOD_DEFLATE = 0x01;
+	private static final int PREFIX_LENGTH = MAGIC.length + 1;
+	/** Refuse frames claiming more than this, rather than allocating it. */
+	private static final int MAX_DECODED_BYTES = 64 * 1024 * 1024;
+
+	final int minBytes;
+
+	// Guarded by itself
+	private final Deflater deflater = new Deflater(LEVEL_DEFAULT, true);
+	private byte[] scratch = new byte[1024];
+
+	// One Inflater per decoding thread; each is locked only by its own thread and close()
+	private final ArrayList<Inflater> inflaters = new ArrayList<Inflater>();
+	private final ThreadLocal<Inflater> inflater = new ThreadLocal<Inflater>() {
+		@Override
+		protected Inflater initialValue() {
+			Inflater created = new Inflater(true);
+			synchronized (inflaters) {
+				if (closed) {
+					created.end(); // decode() sees closed and never uses it
+				} else {
+					inflaters.add(created);
+				}
+			}
+			return created;
+		}
+	};
+	private volatile boolean closed;
+
+	PayloadCodec(int minBytes) {
+		this.minBytes = Math.max(0, minBytes);
+	}
+
+	/** Compresses a payload for publishing at a Deflater level, or frames it as stored. */
+	byte[] encode(byte[] payload, int level) {
+		if (payload.length >= minBytes && payload.length > 0) {
+			synchronized (deflater) {
+				if (!closed) {
+					byte[] frame = deflate(payload, level);
+					if (frame != null) return frame;
+				}
+			}
+		}
+		return stored(payload);
+	}
+
+	/**
+	 * Unwraps a payload from a filter that may carry compressed frames.
+	 * Payloads without the magic pass through unchanged, as do corrupt
+	 * frames, which are logged.
+	 */
+	byte[] decode(byte[] payload) {
+		if (closed || !hasMagic(payload) || payload.length == MAGIC.length) return payload;
+		if (payload[MAGIC.length] == METHOD_STORED) {
+			byte[] out = new byte[payload.length - PREFIX_LENGTH];
+			System.arraycopy(payload, PREFIX_LENGTH, out, 0, out.length);
+			return out;
+		}
+		if (payload[MAGIC.length] != METHOD_DEFLATE) return payload;
+
+		int length = 0;
+		int shift = 0;
+		int i = PREFIX_LENGTH;
+		while (i < payload.length && shift < 35) {
+			byte b = payload[i++];
+			length |= (b & 0x7f) << shift;
+			if ((b & 0x80) == 0) break;
+			shift += 7;
+		}
+		if (length < 0 || length > MAX_DECODED_BYTES) {
+			MqttLog.w("Ignoring compressed payload with invalid length " + length);
+			return payload;
+		}
+
+		Inflater in = inflater.get();
+		byte[] out = new byte[length];
+		synchronized (in) {
+			if (closed) return payload;
+			in.reset();
+			in.setInput(payload, i, payload.length - i);
+			try {
+				int n = 0;
+				while (n < length && !in.finished()) {
+					int read = in.inflate(out, n, length - n);
+					if (read == 0 && (in.needsInput() || in.needsDictionary())) break;
+					n += read;
+				}
+				if (n != length) {
+					MqttLog.w("Compressed payload is truncated; delivering it undecoded");
+					return payload;
+				}
+			} catch (DataFormatException e) {
+				MqttLog.w("Compressed payload is corrupt; delivering it undecoded: " + e.getMessage());
+				return payload;
+			}
+		}
+		return out;
+	}
+
+	/** Frees the native zlib state; later calls pass payloads through. */
+	void close() {
+		synchronized (deflater) {
+			if (closed) return;
+			closed = true;
+			deflater.end();
+		}
+		ArrayList<Inflater> all;
+		synchronized (inflaters) {
+			all = new ArrayList<Inflater>(inflaters);
+			inflaters.clear();
+		}
+		for (Inflater in : all) {
+			synchronized (in) {
+				in.end();
+			}
+		}
+	}
+
+	// ========================================================================
+	// Internal helpers
+	// ========================================================================
+
+	/** The deflate frame of payload, or null if it would not be smaller. Called with the deflater's lock held. */
+	private byte[] deflate(byte[] payload, int level) {
+		int headerLength = PREFIX_LENGTH + varintLength(payload.length);
+		deflater.reset();
+		deflater.setLevel(level);
+		deflater.setInput(payload);
+		deflater.finish();
+		int limit = payload.length; // only worth it if the frame is smaller than the original
+		ensureScratch(limit);
+		int n = headerLength;
+		while (!deflater.finished() && n < limit) {
+			n += deflater.deflate(scratch, n, limit - n);
+		}
+		if (!deflater.finished() || n >= limit) return null;
+		System.arraycopy(MAGIC, 0, scratch, 0, MAGIC.length);
+		scratch[MAGIC.length] = METHOD_DEFLATE;
+		writeVarint(scratch, PREFIX_LENGTH, payload.length);
+		byte[] frame = new byte[n];
+		System.arraycopy(scratch, 0, frame, 0, n);
+		return frame;
+	}
+
+	private static byte[] stored(byte[] payload) {
+		if (!hasMagic(payload)) {
+			return payload;
+		}
+		byte[] out = new byte[payload.length + PREFIX_LENGTH];
+		System.arraycopy(MAGIC, 0, out, 0, MAGIC.length);
+		out[MAGIC.length] = METHOD_STORED;
+		System.arraycopy(payload, 0, out, PREFIX_LENGTH, payload.length);
+		return out;
+	}
+
+	private static boolean hasMagic(byte[] payload) {
+		if (payload.length < MAGIC.length) return false;
+		for (int i = 0; i < MAGIC.length; i++) {
+			if (payload[i] != MAGIC[i]) return false;
+		}
+		return true;
+	}
+
+	private void ensureScratch(int size) {
+		if (scratch.length < size) {
+			scratch = new byte[Math.max(size, scratch.length * 2)];
+		}
+	}
+
+	private static int varintLength(int value) {
+		int n = 1;
+		while ((value >>>= 7) != 0) n++;
+		return n;
+	}
+
+	private static void writeVarint(byte[] out, int offset, int value) {
+		while ((value & ~0x7f) != 0) {
+			out[offset++] = (byte)((value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		out[offset] = (byte)value;
+	}
+}
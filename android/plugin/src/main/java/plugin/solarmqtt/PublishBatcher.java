@@ -0,0 +1,230 @@
+//
+//  PublishBatcher.java
+//  SolarMQTT Plugin for Solar2D
+//
+//  Copyright (c) 2026 Platopus Systems. All rights reserved.
+//
+
+package plugin.solarmqtt;
+
+import com.naef.jnlua.LuaState;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * Coalesces small QoS 0 publishes into one envelope message on an aggregate
+ * topic, sent when the batch would outgrow its byte budget or when the flush
+ * interval after its first publish runs out. An envelope is:
+ *
+ *   "SMQB" | version 1 | (topic length, topic, payload length, payload)...
+ *
+ * with lengths as varints. Subscribers to the aggregate topic with the
+ * `batched` option get the publishes back one by one via unpack().
+ */
+final class PublishBatcher {
+	static final int DEFAULT_INTERVAL_MS = 20;
+	static final int DEFAULT_MAX_BYTES = 4096;
+
+	private static final byte[] MAGIC = { 'S', 'M', 'Q', 'B' };
+	private static final byte VERSION = 1;
+	private static final int HEADER_BYTES = MAGIC.length + 1;
+
+	/** A publish carried in an envelope. */
+	static final class Entry {
+		final String topic;
+		final byte[] payload;
+
+		Entry(String topic, byte[] payload) {
+			this.topic = topic;
+			this.payload = payload;
+		}
+	}
+
+	final String topic;
+	final int intervalMs;
+	final int maxBytes;
+
+	private final MqttClientHandle client;
+	private final byte[] buffer;
+	private int length;
+	private int count;
+	private ScheduledFuture<?> flushTask; // on the client's timer, or null
+	private boolean closed;
+
+	PublishBatcher(String topic, int intervalMs, int maxBytes, MqttClientHandle client) {
+		this.topic = topic;
+		this.intervalMs = Math.max(1, intervalMs);
+		this.maxBytes = Math.max(HEADER_BYTES + 2, maxBytes);
+		this.client = client;
+		this.buffer = new byte[this.maxBytes];
+	}
+
+	/**
+	 * Reads the publishBatch field of the connect options table at index:
+	 * { topic=, intervalMs=, maxBytes= }. Returns null when batching is off
+	 * or no aggregate topic is given.
+	 */
+	static PublishBatcher fromLua(LuaState L, int index, MqttClientHandle client) {
+		PublishBatcher batcher = null;
+		L.getField(index, "publishBatch");
+		if (L.isTable(-1)) {
+			L.getField(-1, "topic");
+			String topic = L.isString(-1) ? L.toString(-1) : null;
+			L.pop(1);
+
+			L.getField(-1, "intervalMs");
+			int intervalMs = L.isNumber(-1) ? (int)L.toNumber(-1) : DEFAULT_INTERVAL_MS;
+			L.pop(1);
+
+			L.getField(-1, "maxBytes");
+			int maxBytes = L.isNumber(-1) ? (int)L.toNumber(-1) : DEFAULT_MAX_BYTES;
+			L.pop(1);
+
+			if (topic == null || topic.length() == 0) {
+				MqttLog.e("connect: publishBatch requires a topic");
+			} else {
+				batcher = new PublishBatcher(topic, intervalMs, maxBytes, client);
+			}
+		}
+		L.pop(1);
+		return batcher;
+	}
+
+	/**
+	 * Appends a publish to the current batch, sending the batch first if the
+	 * publish would not fit. Returns false, leaving the batch alone, if the
+	 * publish is too large to batch at all.
+	 */
+	synchronized boolean add(String publishTopic, byte[] payload) {
+		if (closed) return false;
+		byte[] topicBytes = publishTopic.getBytes(InboundMessage.UTF8);
+		int entryBytes = varintLength(topicBytes.length) + topicBytes.length
+				+ varintLength(payload.length) + payload.length;
+		if (HEADER_BYTES + entryBytes > maxBytes) return false;
+
+		if (length + entryBytes > maxBytes) {
+			flushLocked();
+		}
+		if (length == 0) {
+			System.arraycopy(MAGIC, 0, buffer, 0, MAGIC.length);
+			buffer[MAGIC.length] = VERSION;
+			length = HEADER_BYTES;
+		}
+		length = writeVarint(buffer, length, topicBytes.length);
+		System.arraycopy(topicBytes, 0, buffer, length, topicBytes.length);
+		length += topicBytes.length;
+		length = writeVarint(buffer, length, payload.length);
+		System.arraycopy(payload, 0, buffer, length, payload.length);
+		length += payload.length;
+		count++;
+
+		if (flushTask == null) {
+			flushTask = client.schedule(new Runnable() {
+				@Override
+				public void run() {
+					flush();
+				}
+			}, intervalMs);
+		}
+		return true;
+	}
+
+	/** Publishes in the current batch. */
+	synchronized int size() {
+		return count;
+	}
+
+	/** Sends the current batch now, if it has anything in it. */
+	synchronized void flush() {
+		flushLocked();
+	}
+
+	/** Sends what is batched; later publishes are not batched. */
+	synchronized void close() {
+		if (closed) return;
+		flushLocked();
+		closed = true;
+	}
+
+	private void flushLocked() {
+		if (flushTask != null) {
+			flushTask.cancel(false);
+			flushTask = null;
+		}
+		if (count == 0) return;
+		byte[] envelope = new byte[length];
+		System.arraycopy(buffer, 0, envelope, 0, length);
+		int sent = count;
+		length = 0;
+		count = 0;
+		client.sendBatch(topic, envelope, sent);
+	}
+
+	// ========================================================================
+	// Unpacking
+	// ========================================================================
+
+	/** Whether a payload starts like an envelope. */
+	static boolean isEnvelope(byte[] payload) {
+		if (payload.length < HEADER_BYTES) return false;
+		for (int i = 0; i < MAGIC.length; i++) {
+			if (payload[i] != MAGIC[i]) return false;
+		}
+		return payload[MAGIC.length] == VERSION;
+	}
+
+	/** Splits an envelope into its publishes, or returns null if it is malformed. */
+	static List<Entry> unpack(byte[] envelope) {
+		if (!isEnvelope(envelope)) return null;
+		ArrayList<Entry> entries = new ArrayList<Entry>();
+		int[] pos = { HEADER_BYTES };
+		while (pos[0] < envelope.length) {
+			int topicLength = readVarint(envelope, pos);
+			if (topicLength < 0 || topicLength > envelope.length - pos[0]) return null;
+			String entryTopic = new String(envelope, pos[0], topicLength, InboundMessage.UTF8);
+			pos[0] += topicLength;
+
+			int payloadLength = readVarint(envelope, pos);
+			if (payloadLength < 0 || payloadLength > envelope.length - pos[0]) return null;
+			byte[] payload = new byte[payloadLength];
+			System.arraycopy(envelope, pos[0], payload, 0, payloadLength);
+			pos[0] += payloadLength;
+
+			entries.add(new Entry(entryTopic, payload));
+		}
+		return entries;
+	}
+
+	// ========================================================================
+	// Internal helpers
+	// ========================================================================
+
+	private static int varintLength(int value) {
+		int n = 1;
+		while ((value >>>= 7) != 0) n++;
+		return n;
+	}
+
+	private static int writeVarint(byte[] out, int offset, int value) {
+		while ((value & ~0x7f) != 0) {
+			out[offset++] = (byte)((value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		out[offset++] = (byte)value;
+		return offset;
+	}
+
+	/** Reads a varint at pos[0], advancing it; -1 if truncated or too long. */
+	private static int readVarint(byte[] in, int[] pos) {
+		int value = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			if (pos[0] >= in.length) return -1;
+			byte b = in[pos[0]++];
+			value |= (b & 0x7f) << shift;
+			if ((b & 0x80) == 0) return value;
+		}
+		return -1;
+	}
+}
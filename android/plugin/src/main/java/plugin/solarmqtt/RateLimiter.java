@@ -0,0 +1,163 @@
+//
+//  RateLimiter.java
+//  SolarMQTT Plugin for Solar2D
+//
+//  Copyright (c) 2026 Platopus Systems. All rights reserved.
+//
+
+package plugin.solarmqtt;
+
+import com.naef.jnlua.LuaState;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * Token bucket for the messages of one subscription filter, applied before
+ * they are queued for Lua. A message without a token is either dropped or,
+ * with the conflate overflow policy, held as the newest for its topic and
+ * handed on once a token is due, so a burst costs at most `rate` Lua calls a
+ * second.
+ *
+ * Checked on the Paho thread (or a worker lane); held messages are released
+ * on the client's timer.
+ */
+final class RateLimiter {
+	final double rate; // tokens per second
+	final double burst;
+	final boolean conflate;
+
+	// Guarded by `this`
+	private double tokens;
+	private long refilledAt = System.nanoTime();
+	private final LinkedHashMap<String, InboundMessage> held = new LinkedHashMap<String, InboundMessage>();
+	private ScheduledFuture<?> releaseTask;
+	private long dropped;
+	private long conflated;
+
+	RateLimiter(double rate, double burst, boolean conflate) {
+		this.rate = rate;
+		this.burst = Math.max(1, burst);
+		this.conflate = conflate;
+		this.tokens = this.burst;
+	}
+
+	/**
+	 * Reads the rateLimit field of the subscription options table at index:
+	 * messages per second, or { rate=, burst=, overflow = "drop" | "conflate" }.
+	 * Returns null when the filter is not limited.
+	 */
+	static RateLimiter fromLua(LuaState L, int index) {
+		RateLimiter limiter = null;
+		L.getField(index, "rateLimit");
+		if (L.isNumber(-1)) {
+			double rate = L.toNumber(-1);
+			if (rate > 0) {
+				limiter = new RateLimiter(rate, rate, false);
+			}
+		} else if (L.isTable(-1)) {
+			L.getField(-1, "rate");
+			double rate = L.isNumber(-1) ? L.toNumber(-1) : 0;
+			L.pop(1);
+
+			L.getField(-1, "burst");
+			double burst = L.isNumber(-1) ? L.toNumber(-1) : rate;
+			L.pop(1);
+
+			L.getField(-1, "overflow");
+			String overflow = L.isString(-1) ? L.toString(-1) : "drop";
+			L.pop(1);
+
+			if (!"drop".equals(overflow) && !"conflate".equals(overflow)) {
+				MqttLog.w("Unknown rateLimit overflow '" + overflow + "', using drop");
+				overflow = "drop";
+			}
+			if (rate > 0) {
+				limiter = new RateLimiter(rate, burst, "conflate".equals(overflow));
+			} else {
+				MqttLog.e("subscribe: rateLimit requires a rate above 0");
+			}
+		}
+		L.pop(1);
+		return limiter;
+	}
+
+	/**
+	 * Takes a token for the message. Returns false if it has none, having
+	 * dropped the message or held it for the client to release later.
+	 */
+	synchronized boolean admit(InboundMessage message, MqttClientHandle client) {
+		refill(System.nanoTime());
+		// Once anything is held, later messages queue behind it to keep each topic in order
+		if (held.isEmpty() && tokens >= 1) {
+			tokens -= 1;
+			return true;
+		}
+		if (!conflate) {
+			dropped++;
+			return false;
+		}
+		if (held.put(message.topic, message) != null) {
+			conflated++;
+		}
+		if (releaseTask == null) {
+			releaseTask = client.scheduleRateLimitRelease(this, delayMs());
+		}
+		return false;
+	}
+
+	/** Hands on the held messages there are tokens for, oldest first. Client timer. */
+	synchronized void release(MqttClientHandle client) {
+		refill(System.nanoTime());
+		Iterator<InboundMessage> it = held.values().iterator();
+		while (tokens >= 1 && it.hasNext()) {
+			InboundMessage message = it.next();
+			it.remove();
+			tokens -= 1;
+			client.handOff(message);
+		}
+		releaseTask = held.isEmpty() ? null : client.scheduleRateLimitRelease(this, delayMs());
+	}
+
+	/** Forgets the held messages; the filter was unsubscribed or the client closed. */
+	synchronized void clear() {
+		held.clear();
+		if (releaseTask != null) {
+			releaseTask.cancel(false);
+			releaseTask = null;
+		}
+	}
+
+	/** Sets a table of the limiter counters at the given field of the table at the top of the stack. */
+	void pushStats(LuaState L, String field) {
+		long droppedCount;
+		long conflatedCount;
+		int heldCount;
+		synchronized (this) {
+			droppedCount = dropped;
+			conflatedCount = conflated;
+			heldCount = held.size();
+		}
+		L.newTable(0, 4);
+		L.pushNumber(rate);
+		L.setField(-2, "rate");
+		L.pushNumber(droppedCount);
+		L.setField(-2, "dropped");
+		L.pushNumber(conflatedCount);
+		L.setField(-2, "conflated");
+		L.pushInteger(heldCount);
+		L.setField(-2, "held");
+		L.setField(-2, field);
+	}
+
+	private void refill(long now) {
+		tokens = Math.min(burst, tokens + (now - refilledAt) * rate / 1e9);
+		refilledAt = now;
+	}
+
+	/** Milliseconds until the next token, at least 1. */
+	private long delayMs() {
+		return Math.max(1, (long)Math.ceil((1 - tokens) * 1000 / rate));
+	}
+}
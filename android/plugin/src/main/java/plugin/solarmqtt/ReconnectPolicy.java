@@ -0,0 +1,86 @@
+//
+//  ReconnectPolicy.java
+//  SolarMQTT Plugin for Solar2D
+//
+//  Copyright (c) 2026 Platopus Systems. All rights reserved.
+//
+
+package plugin.solarmqtt;
+
+import com.naef.jnlua.LuaState;
+
+import java.util.Random;
+
+/**
+ * Exponential backoff with jitter for automatic reconnects.
+ */
+final class ReconnectPolicy {
+	final long minDelayMs;
+	final long maxDelayMs;
+	final double jitter;
+	final int maxAttempts;
+
+	private final Random random = new Random();
+
+	ReconnectPolicy(long minDelayMs, long maxDelayMs, double jitter, int maxAttempts) {
+		this.minDelayMs = Math.max(1, minDelayMs);
+		this.maxDelayMs = Math.max(this.minDelayMs, maxDelayMs);
+		this.jitter = Math.min(1.0, Math.max(0.0, jitter));
+		this.maxAttempts = Math.max(0, maxAttempts);
+	}
+
+	/**
+	 * Reads the autoReconnect field of the options table at index.
+	 * Returns null when automatic reconnect is not enabled.
+	 */
+	static ReconnectPolicy fromLua(LuaState L, int index) {
+		ReconnectPolicy policy = null;
+		L.getField(index, "autoReconnect");
+		if (L.isTable(-1)) {
+			long minDelayMs = 1000;
+			long maxDelayMs = 60000;
+			double jitter = 0.2;
+			int maxAttempts = 0;
+
+			L.getField(-1, "minDelayMs");
+			minDelayMs = L.isNumber(-1) ? (long)L.toNumber(-1) : minDelayMs;
+			L.pop(1);
+
+			L.getField(-1, "maxDelayMs");
+			maxDelayMs = L.isNumber(-1) ? (long)L.toNumber(-1) : maxDelayMs;
+			L.pop(1);
+
+			L.getField(-1, "jitter");
+			jitter = L.isNumber(-1) ? L.toNumber(-1) : jitter;
+			L.pop(1);
+
+			L.getField(-1, "maxAttempts");
+			maxAttempts = L.isNumber(-1) ? (int)L.toNumber(-1) : maxAttempts;
+			L.pop(1);
+
+			policy = new ReconnectPolicy(minDelayMs, maxDelayMs, jitter, maxAttempts);
+		} else if (L.isBoolean(-1) && L.toBoolean(-1)) {
+			policy = new ReconnectPolicy(1000, 60000, 0.2, 0);
+		}
+		L.pop(1);
+		return policy;
+	}
+
+	/** Whether another attempt is allowed after `attempts` failed ones. */
+	boolean allows(int attempts) {
+		return maxAttempts == 0 || attempts < maxAttempts;
+	}
+
+	/** Delay before the given zero-based attempt: min * 2^attempt, capped at max, +/- jitter. */
+	long delayFor(int attempt) {
+		long delay = maxDelayMs;
+		if (attempt < 31) {
+			delay = Math.min(maxDelayMs, minDelayMs << attempt);
+		}
+		if (jitter > 0) {
+			double spread = delay * jitter;
+			delay += (long)((random.nextDouble() * 2 - 1) * spread);
+		}
+		return Math.max(0, delay);
+	}
+}
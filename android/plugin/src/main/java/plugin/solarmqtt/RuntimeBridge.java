@@ -0,0 +1,27 @@
+//
+//  RuntimeBridge.java
+//  SolarMQTT Plugin for Solar2D
+//
+//  Copyright (c) 2026 Platopus Systems. All rights reserved.
+//
+
+package plugin.solarmqtt;
+
+import java.io.File;
+
+/**
+ * Everything the MQTT side needs from the host runtime: handing tasks to the
+ * Lua thread and a place to keep files. Clients only see this interface, so
+ * Paho callbacks, queueing and event construction can be driven by a stub
+ * bridge on a plain JVM. CoronaBridge is the implementation used in apps.
+ */
+interface RuntimeBridge {
+	/** Whether a runtime is available to run tasks. */
+	boolean isAvailable();
+
+	/** Queues a task for the Lua runtime thread. Returns false if there is no runtime to run it. */
+	boolean send(RuntimeTask task);
+
+	/** Directory for the plugin's own files (offline queue, persistence). */
+	File storageDir();
+}
@@ -0,0 +1,19 @@
+//
+//  RuntimeTask.java
+//  SolarMQTT Plugin for Solar2D
+//
+//  Copyright (c) 2026 Platopus Systems. All rights reserved.
+//
+
+package plugin.solarmqtt;
+
+import com.naef.jnlua.LuaState;
+
+/**
+ * Work for the Lua runtime thread. The plugin's own task type, so queueing
+ * and dispatch do not depend on Corona's: CoronaBridge runs these on the
+ * Corona dispatcher, and a stub bridge can run them on a plain JVM.
+ */
+interface RuntimeTask {
+	void run(LuaState L);
+}
@@ -0,0 +1,252 @@
+//
+//  SessionStore.java
+//  SolarMQTT Plugin for Solar2D
+//
+//  Copyright (c) 2026 Platopus Systems. All rights reserved.
+//
+
+package plugin.solarmqtt;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.SecureRandom;
+import java.util.Properties;
+
+/**
+ * What a persistent broker session holds for this client, kept in a small
+ * file so it survives app restarts: a stable client id, the server it
+ * belongs to, and the topic filters the broker acknowledged, with the QoS
+ * the app asked for.
+ *
+ * With it, a cold start can connect with cleanSession=false under the same
+ * id and, when the broker reports the session as present, skip SUBSCRIBEs
+ * the broker still holds. The filters are cleared whenever the broker
+ * reports no session, as they no longer reflect the broker's state.
+ *
+ * Changes made from MQTT callbacks are written on the client's timer a
+ * moment later, so a burst of SUBACKs costs one file write and the Paho
+ * thread never waits on the disk.
+ */
+final class SessionStore {
+	private static final String KEY_CLIENT_ID = "clientId";
+	private static final String KEY_SERVER = "server";
+	private static final String SUB_PREFIX = "sub.";
+	private static final long SAVE_DELAY_MS = 200;
+
+	private final File file;
+	private final MqttClientHandle client;
+	private final Properties values = new Properties();
+	private boolean saveScheduled; // guarded by `this`
+
+	// Serializes file writes; a write copies the values first, so it never holds `this`
+	private final Object fileLock = new Object();
+
+	private SessionStore(File file, MqttClientHandle client) {
+		this.file = file;
+		this.client = client;
+	}
+
+	/**
+	 * Loads the store for a client, generating and saving a client id if none
+	 * is given or stored. A different client id or server than last time
+	 * starts with no filters, since the broker session they described is not
+	 * the one being resumed.
+	 */
+	static SessionStore open(File file, String clientId, String serverUri, MqttClientHandle client) {
+		SessionStore store = new SessionStore(file, client);
+		store.load();
+		synchronized (store) {
+			String storedId = store.values.getProperty(KEY_CLIENT_ID);
+			String id = clientId != null ? clientId : storedId;
+			if (id == null) {
+				id = generateClientId();
+			}
+			if (!id.equals(storedId) || !serverUri.equals(store.values.getProperty(KEY_SERVER))) {
+				store.values.clear();
+				store.values.setProperty(KEY_CLIENT_ID, id);
+				store.values.setProperty(KEY_SERVER, serverUri);
+				store.save();
+			}
+		}
+		return store;
+	}
+
+	synchronized String clientId() {
+		return values.getProperty(KEY_CLIENT_ID);
+	}
+
+	/** The QoS the app requested for a filter the broker holds in this session, or -1 if it does not hold it. */
+	synchronized int requestedQosOf(String filter) {
+		return qosField(filter, 0);
+	}
+
+	/** The QoS the broker granted a filter it holds in this session, or -1 if it does not hold it. */
+	synchronized int grantedQosOf(String filter) {
+		return qosField(filter, 1);
+	}
+
+	/** Filters held in the session. */
+	synchronized int size() {
+		int n = 0;
+		for (String key : values.stringPropertyNames()) {
+			if (key.startsWith(SUB_PREFIX)) n++;
+		}
+		return n;
+	}
+
+	/**
+	 * Records filters the broker acknowledged under the QoS the app requested,
+	 * which is what a later subscribe() compares; entries with a failed grant
+	 * are skipped.
+	 */
+	synchronized void put(String[] filters, int[] requestedQos, int[] grantedQos) {
+		for (int i = 0; i < filters.length; i++) {
+			if (grantedQos[i] >= 0 && grantedQos[i] <= 2) {
+				values.setProperty(SUB_PREFIX + filters[i], requestedQos[i] + "," + grantedQos[i]);
+			}
+		}
+		saveLater();
+	}
+
+	synchronized void remove(String[] filters) {
+		for (String filter : filters) {
+			values.remove(SUB_PREFIX + filter);
+		}
+		saveLater();
+	}
+
+	/** Forgets every filter: the broker has no session for us. */
+	synchronized void clearFilters() {
+		String clientId = values.getProperty(KEY_CLIENT_ID);
+		String server = values.getProperty(KEY_SERVER);
+		if (values.size() <= 2) return;
+		values.clear();
+		values.setProperty(KEY_CLIENT_ID, clientId);
+		values.setProperty(KEY_SERVER, server);
+		saveLater();
+	}
+
+	/** Writes a pending change now; the client is closing. */
+	void flush() {
+		boolean pending;
+		synchronized (this) {
+			pending = saveScheduled;
+		}
+		if (pending) {
+			save();
+		}
+	}
+
+	// ========================================================================
+	// Internal helpers
+	// ========================================================================
+
+	private synchronized void load() {
+		if (!file.isFile()) return;
+		InputStream in = null;
+		try {
+			in = new FileInputStream(file);
+			values.load(in);
+		} catch (IOException e) {
+			MqttLog.w("Could not read session state, starting fresh: " + e.getMessage());
+			values.clear();
+		} finally {
+			closeQuietly(in);
+		}
+	}
+
+	/** Field 0 (requested) or 1 (granted) of a filter's "requested,granted" entry, or -1. */
+	private int qosField(String filter, int field) {
+		String entry = values.getProperty(SUB_PREFIX + filter);
+		if (entry == null) return -1;
+		String[] parts = entry.split(",");
+		if (parts.length != 2) return -1;
+		try {
+			return Integer.parseInt(parts[field]);
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/** Schedules a write of the current values, unless one is pending. Called with `this` held. */
+	private void saveLater() {
+		if (saveScheduled) return;
+		saveScheduled = true;
+		Runnable write = new Runnable() {
+			@Override
+			public void run() {
+				save();
+			}
+		};
+		if (client.schedule(write, SAVE_DELAY_MS) == null) {
+			// The client is released and has no timer; write the change before it is lost
+			saveScheduled = false;
+			write(copyValues());
+		}
+	}
+
+	/** Writes the current values to the file. */
+	private void save() {
+		Properties snapshot;
+		synchronized (this) {
+			saveScheduled = false;
+			snapshot = copyValues();
+		}
+		write(snapshot);
+	}
+
+	private Properties copyValues() {
+		Properties copy = new Properties();
+		copy.putAll(values);
+		return copy;
+	}
+
+	/** Writes to a temporary file and renames it over the old one, so a crash never leaves half a file. */
+	private void write(Properties snapshot) {
+		synchronized (fileLock) {
+			File dir = file.getParentFile();
+			if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+				MqttLog.w("Could not create " + dir);
+				return;
+			}
+			File tmp = new File(file.getPath() + ".tmp");
+			OutputStream out = null;
+			try {
+				out = new FileOutputStream(tmp);
+				snapshot.store(out, null);
+				out.close();
+				out = null;
+				if (!tmp.renameTo(file)) {
+					MqttLog.w("Could not save session state to " + file);
+				}
+			} catch (IOException e) {
+				MqttLog.w("Could not save session state: " + e.getMessage());
+			} finally {
+				closeQuietly(out);
+			}
+		}
+	}
+
+	private static void closeQuietly(Closeable c) {
+		if (c == null) return;
+		try {
+			c.close();
+		} catch (IOException ignored) {
+		}
+	}
+
+	/** A random id of 21 characters, within the 23 every MQTT 3.1.1 broker must accept. */
+	private static String generateClientId() {
+		StringBuilder sb = new StringBuilder("solar");
+		SecureRandom random = new SecureRandom();
+		for (int i = 0; i < 16; i++) {
+			sb.append(Character.forDigit(random.nextInt(16), 16));
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,165 @@
+//
+//  Subscription.java
+//  SolarMQTT Plugin for Solar2D
+//
+//  Copyright (c) 2026 Platopus Systems. All rights reserved.
+//
+
+package plugin.solarmqtt;
+
+import com.ansca.corona.CoronaLua;
+import com.naef.jnlua.LuaState;
+
+/**
+ * Per-subscription delivery options, keyed by topic filter.
+ */
+final class Subscription {
+	static final String SHARE_PREFIX = "$share/";
+
+	/** The filter as sent to the broker, including any $share/<group>/ prefix. */
+	final String filter;
+	/** The filter inbound topics are matched against: `filter` without the share prefix. */
+	final String topicFilter;
+	/** Shared subscription group, or null. */
+	final String group;
+	final int qos;
+	final boolean binary;
+	final boolean conflate;
+	/** Payloads may be PayloadCodec frames and are decoded before delivery. */
+	final boolean compressed;
+	/** Payloads are parsed as JSON on the Paho thread and delivered as Lua tables. */
+	final boolean json;
+	/** Payloads may be PublishBatcher envelopes and are delivered as the publishes inside them. */
+	final boolean batched;
+	/** How long a QoS 1/2 message is remembered to drop its redeliveries, or 0 to deliver them. */
+	final int dedupWindowMs;
+	/** Messages are dispatched to Lua ahead of queued normal-priority events. */
+	final boolean highPriority;
+	/** Token bucket for messages matching this filter, or null. */
+	final RateLimiter rateLimit;
+
+	// Lua ref of the onMessage handler, REFNIL for the client listener.
+	// Read when dispatching and cleared on release, both on the runtime thread.
+	volatile int handlerRef;
+
+	Subscription(String filter, int qos, boolean binary, boolean conflate, boolean compressed, boolean json, boolean batched,
+			int dedupWindowMs, boolean highPriority, RateLimiter rateLimit, int handlerRef) {
+		this.filter = filter;
+		this.group = groupOf(filter);
+		this.topicFilter = stripShare(filter, group);
+		this.qos = qos;
+		this.binary = binary;
+		this.conflate = conflate;
+		this.compressed = compressed;
+		this.json = json;
+		this.batched = batched;
+		this.dedupWindowMs = dedupWindowMs;
+		this.highPriority = highPriority;
+		this.rateLimit = rateLimit;
+		this.handlerRef = handlerRef;
+	}
+
+	/**
+	 * Reads per-subscription options (payloadType=, conflate=, compressed=,
+	 * decode=, batched=, dedup=, priority=, rateLimit=, onMessage=, group=)
+	 * from the table at index. A group turns the filter into a shared
+	 * subscription. Returns null, without taking any refs, if the group is invalid.
+	 */
+	static Subscription fromLua(LuaState L, int index, String filter, int qos) {
+		boolean binary = false;
+		boolean conflate = false;
+		boolean compressed = false;
+		boolean json = false;
+		boolean batched = false;
+		int dedupWindowMs = 0;
+		boolean highPriority = false;
+		RateLimiter rateLimit = null;
+		int handlerRef = CoronaLua.REFNIL;
+		if (L.isTable(index)) {
+			L.getField(index, "group");
+			if (L.isString(-1)) {
+				String group = L.toString(-1);
+				if (!isValidGroup(group) || groupOf(filter) != null) {
+					MqttLog.e("Invalid shared subscription group '" + group + "' for " + filter);
+					L.pop(1);
+					return null;
+				}
+				filter = SHARE_PREFIX + group + "/" + filter;
+			}
+			L.pop(1);
+
+			L.getField(index, "payloadType");
+			binary = L.isString(-1) && "binary".equals(L.toString(-1));
+			L.pop(1);
+
+			L.getField(index, "conflate");
+			conflate = L.isBoolean(-1) && L.toBoolean(-1);
+			L.pop(1);
+
+			L.getField(index, "compressed");
+			compressed = L.isBoolean(-1) && L.toBoolean(-1);
+			L.pop(1);
+
+			L.getField(index, "decode");
+			json = L.isString(-1) && "json".equals(L.toString(-1));
+			L.pop(1);
+
+			L.getField(index, "batched");
+			batched = L.isBoolean(-1) && L.toBoolean(-1);
+			L.pop(1);
+
+			// true, or the window in milliseconds
+			L.getField(index, "dedup");
+			if (L.isNumber(-1)) {
+				dedupWindowMs = Math.max(0, (int)L.toNumber(-1));
+			} else if (L.isBoolean(-1) && L.toBoolean(-1)) {
+				dedupWindowMs = DuplicateFilter.DEFAULT_WINDOW_MS;
+			}
+			L.pop(1);
+
+			L.getField(index, "priority");
+			highPriority = L.isString(-1) && "high".equals(L.toString(-1));
+			L.pop(1);
+
+			rateLimit = RateLimiter.fromLua(L, index);
+
+			L.getField(index, "onMessage");
+			if (L.isFunction(-1)) {
+				handlerRef = CoronaLua.newRef(L, -1);
+			}
+			L.pop(1);
+		}
+		return new Subscription(filter, qos, binary, conflate, compressed, json, batched, dedupWindowMs, highPriority, rateLimit, handlerRef);
+	}
+
+	/** The group of a $share/<group>/<filter> filter, or null if it is not a shared subscription. */
+	static String groupOf(String filter) {
+		if (!filter.startsWith(SHARE_PREFIX)) return null;
+		int end = filter.indexOf('/', SHARE_PREFIX.length());
+		if (end < 0 || end == filter.length() - 1) return null;
+		String group = filter.substring(SHARE_PREFIX.length(), end);
+		return isValidGroup(group) ? group : null;
+	}
+
+	/** The filter without its $share/<group>/ prefix; group is the filter's groupOf(). */
+	static String stripShare(String filter, String group) {
+		return group != null ? filter.substring(SHARE_PREFIX.length() + group.length() + 1) : filter;
+	}
+
+	/** Share names are a single non-empty topic level with no wildcards. */
+	private static boolean isValidGroup(String group) {
+		return group.length() > 0 && group.indexOf('/') < 0 && group.indexOf('+') < 0 && group.indexOf('#') < 0;
+	}
+
+	/** Deletes the onMessage handler ref and drops messages held by the rate limit. Runtime thread only. */
+	void releaseHandler(LuaState L) {
+		if (rateLimit != null) {
+			rateLimit.clear();
+		}
+		int ref = handlerRef;
+		if (ref != CoronaLua.REFNIL) {
+			handlerRef = CoronaLua.REFNIL;
+			CoronaLua.deleteRef(L, ref);
+		}
+	}
+}
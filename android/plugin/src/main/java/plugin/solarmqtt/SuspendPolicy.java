@@ -0,0 +1,72 @@
+//
+//  SuspendPolicy.java
+//  SolarMQTT Plugin for Solar2D
+//
+//  Copyright (c) 2026 Platopus Systems. All rights reserved.
+//
+
+package plugin.solarmqtt;
+
+import com.naef.jnlua.LuaState;
+
+import java.util.ArrayList;
+
+/**
+ * What a client does with inbound traffic while the app is suspended.
+ */
+final class SuspendPolicy {
+	private static final int DEFAULT_MAX_MESSAGES = 500;
+
+	/** Keep only the newest message per topic, rather than the newest messages overall. */
+	final boolean conflate;
+	final int maxMessages;
+	/** Filters to unsubscribe from while suspended and restore on resume. */
+	final String[] unsubscribe;
+
+	SuspendPolicy(boolean conflate, int maxMessages, String[] unsubscribe) {
+		this.conflate = conflate;
+		this.maxMessages = Math.max(1, maxMessages);
+		this.unsubscribe = unsubscribe;
+	}
+
+	/**
+	 * Reads the background field of the options table at index:
+	 * { mode = "conflate" | "buffer", maxMessages=, unsubscribe = { filter, ... } }.
+	 * Returns null when messages should keep being delivered as usual.
+	 */
+	static SuspendPolicy fromLua(LuaState L, int index) {
+		SuspendPolicy policy = null;
+		L.getField(index, "background");
+		if (L.isTable(-1)) {
+			L.getField(-1, "mode");
+			String mode = L.isString(-1) ? L.toString(-1) : "conflate";
+			L.pop(1);
+			if (!"conflate".equals(mode) && !"buffer".equals(mode)) {
+				MqttLog.w("Unknown background mode '" + mode + "', using conflate");
+				mode = "conflate";
+			}
+
+			L.getField(-1, "maxMessages");
+			int maxMessages = L.isNumber(-1) ? (int)L.toNumber(-1) : DEFAULT_MAX_MESSAGES;
+			L.pop(1);
+
+			ArrayList<String> filters = new ArrayList<String>();
+			L.getField(-1, "unsubscribe");
+			if (L.isTable(-1)) {
+				int count = L.length(-1);
+				for (int i = 1; i <= count; i++) {
+					L.rawGet(-1, i);
+					if (L.isString(-1)) {
+						filters.add(L.toString(-1));
+					}
+					L.pop(1);
+				}
+			}
+			L.pop(1);
+
+			policy = new SuspendPolicy("conflate".equals(mode), maxMessages, filters.toArray(new String[filters.size()]));
+		}
+		L.pop(1);
+		return policy;
+	}
+}
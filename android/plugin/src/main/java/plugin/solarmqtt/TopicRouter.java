@@ -0,0 +1,263 @@
+//
+//  TopicRouter.java
+//  SolarMQTT Plugin for Solar2D
+//
+//  Copyright (c) 2026 Platopus Systems. All rights reserved.
+//
+
+package plugin.solarmqtt;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Registry of active subscriptions, stored as a trie of topic levels so an
+ * inbound topic is matched against every filter in one walk, instead of
+ * testing each filter in turn. Handles the '+' and '#' wildcards.
+ *
+ * Shared subscriptions ($share/<group>/<filter>) are stored under their
+ * filter without the prefix, since the broker delivers them with the plain
+ * topic; a node keeps one plain subscription and one per share group.
+ */
+final class TopicRouter {
+	private static final String SINGLE_LEVEL = "+";
+	private static final String MULTI_LEVEL = "#";
+
+	private final Node root = new Node();
+	private int size;
+
+	private static final class Node {
+		HashMap<String, Node> children;
+		Subscription subscription;
+		HashMap<String, Subscription> shared;
+
+		Node child(String level) {
+			return children != null ? children.get(level) : null;
+		}
+
+		Subscription get(String group) {
+			if (group == null) return subscription;
+			return shared != null ? shared.get(group) : null;
+		}
+
+		Subscription put(String group, Subscription sub) {
+			if (group == null) {
+				Subscription previous = subscription;
+				subscription = sub;
+				return previous;
+			}
+			if (shared == null) {
+				shared = new HashMap<String, Subscription>(2);
+			}
+			return shared.put(group, sub);
+		}
+
+		Subscription remove(String group) {
+			if (group == null) {
+				Subscription removed = subscription;
+				subscription = null;
+				return removed;
+			}
+			return shared != null ? shared.remove(group) : null;
+		}
+
+		boolean isEmpty() {
+			return subscription == null && (shared == null || shared.isEmpty())
+				&& (children == null || children.isEmpty());
+		}
+	}
+
+	/** Registers a subscription, returning the one it replaced for the same filter, if any. */
+	synchronized Subscription put(Subscription subscription) {
+		String filter = subscription.topicFilter;
+		Node node = root;
+		int start = 0;
+		while (start <= filter.length()) {
+			int end = levelEnd(filter, start);
+			String level = filter.substring(start, end);
+			Node child = node.child(level);
+			if (child == null) {
+				if (node.children == null) {
+					node.children = new HashMap<String, Node>();
+				}
+				child = new Node();
+				node.children.put(level, child);
+			}
+			node = child;
+			start = end + 1;
+		}
+		Subscription previous = node.put(subscription.group, subscription);
+		if (previous == null) size++;
+		return previous;
+	}
+
+	/** The subscription for a filter as sent to the broker, including any share prefix. */
+	synchronized Subscription get(String filter) {
+		String group = Subscription.groupOf(filter);
+		String topicFilter = Subscription.stripShare(filter, group);
+		Node node = root;
+		int start = 0;
+		while (node != null && start <= topicFilter.length()) {
+			int end = levelEnd(topicFilter, start);
+			node = node.child(topicFilter.substring(start, end));
+			start = end + 1;
+		}
+		return node != null ? node.get(group) : null;
+	}
+
+	/** Removes the subscription for a filter, returning it, or null if there was none. */
+	synchronized Subscription remove(String filter) {
+		String group = Subscription.groupOf(filter);
+		Subscription removed = remove(root, Subscription.stripShare(filter, group), 0, group);
+		if (removed != null) size--;
+		return removed;
+	}
+
+	/** Removes a subscription only if it is still the one registered for its filter. */
+	synchronized boolean remove(Subscription subscription) {
+		if (get(subscription.filter) != subscription) return false;
+		remove(subscription.filter);
+		return true;
+	}
+
+	synchronized boolean isEmpty() {
+		return size == 0;
+	}
+
+	/** Every registered subscription. */
+	synchronized List<Subscription> snapshot() {
+		List<Subscription> out = new ArrayList<Subscription>(size);
+		collect(root, out);
+		return out;
+	}
+
+	/** Removes every subscription, returning them. */
+	synchronized List<Subscription> clear() {
+		List<Subscription> removed = snapshot();
+		root.children = null;
+		root.subscription = null;
+		root.shared = null;
+		size = 0;
+		return removed;
+	}
+
+	/** Subscriptions whose filter matches the topic, or null if none does. Called on the Paho thread or a worker lane. */
+	synchronized List<Subscription> match(String topic) {
+		if (size == 0) return null;
+		// Wildcards at the first level never match topics starting with '$'
+		boolean system = topic.length() > 0 && topic.charAt(0) == '$';
+		return match(root, topic, 0, system, null);
+	}
+
+	/** Whether a topic filter matches a topic, by the same rules as match(). */
+	static boolean matches(String filter, String topic) {
+		if (topic.length() > 0 && topic.charAt(0) == '$'
+				&& filter.length() > 0 && (filter.charAt(0) == '+' || filter.charAt(0) == '#')) {
+			return false;
+		}
+		int f = 0;
+		int t = 0;
+		while (true) {
+			int fEnd = levelEnd(filter, f);
+			String level = filter.substring(f, fEnd);
+			if (level.equals(MULTI_LEVEL)) {
+				return true;
+			}
+			if (t > topic.length()) {
+				return false;
+			}
+			int tEnd = levelEnd(topic, t);
+			if (!level.equals(SINGLE_LEVEL) && !filter.regionMatches(f, topic, t, Math.max(fEnd - f, tEnd - t))) {
+				return false;
+			}
+			f = fEnd + 1;
+			t = tEnd + 1;
+			if (f > filter.length()) {
+				return t > topic.length();
+			}
+		}
+	}
+
+	// ========================================================================
+	// Internal helpers
+	// ========================================================================
+
+	private List<Subscription> match(Node node, String topic, int start, boolean system, List<Subscription> out) {
+		boolean wildcards = !(system && node == root);
+
+		// '#' matches the remaining levels, and also the parent level itself ("a/#" matches "a")
+		Node multi = wildcards ? node.child(MULTI_LEVEL) : null;
+		if (multi != null) {
+			out = addAll(out, multi);
+		}
+
+		if (start > topic.length()) {
+			return addAll(out, node);
+		}
+
+		int end = levelEnd(topic, start);
+		Node exact = node.child(topic.substring(start, end));
+		if (exact != null) {
+			out = match(exact, topic, end + 1, system, out);
+		}
+		Node single = wildcards ? node.child(SINGLE_LEVEL) : null;
+		if (single != null) {
+			out = match(single, topic, end + 1, system, out);
+		}
+		return out;
+	}
+
+	private Subscription remove(Node node, String filter, int start, String group) {
+		if (start > filter.length()) {
+			return node.remove(group);
+		}
+		int end = levelEnd(filter, start);
+		String level = filter.substring(start, end);
+		Node child = node.child(level);
+		if (child == null) return null;
+
+		Subscription removed = remove(child, filter, end + 1, group);
+		// Prune branches that no longer lead to a subscription
+		if (child.isEmpty()) {
+			node.children.remove(level);
+		}
+		return removed;
+	}
+
+	private static void collect(Node node, List<Subscription> out) {
+		if (node.subscription != null) {
+			out.add(node.subscription);
+		}
+		if (node.shared != null) {
+			out.addAll(node.shared.values());
+		}
+		if (node.children != null) {
+			for (Node child : node.children.values()) {
+				collect(child, out);
+			}
+		}
+	}
+
+	/** Adds every subscription held at a node. */
+	private static List<Subscription> addAll(List<Subscription> out, Node node) {
+		if (node.subscription == null && (node.shared == null || node.shared.isEmpty())) {
+			return out;
+		}
+		if (out == null) {
+			out = new ArrayList<Subscription>(2);
+		}
+		if (node.subscription != null) {
+			out.add(node.subscription);
+		}
+		if (node.shared != null) {
+			out.addAll(node.shared.values());
+		}
+		return out;
+	}
+
+	private static int levelEnd(String s, int start) {
+		int end = s.indexOf('/', start);
+		return end >= 0 ? end : s.length();
+	}
+}